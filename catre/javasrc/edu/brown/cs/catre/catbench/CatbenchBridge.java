@@ -0,0 +1,146 @@
+/********************************************************************************/
+/*										*/
+/*		CatbenchBridge.java						*/
+/*										*/
+/*	Stand-in bridge for benchmark devices					*/
+/*										*/
+/********************************************************************************/
+/* Copyright 2023 Brown University -- Steven P. Reiss, Molly E. McHenry         */
+/*********************************************************************************
+ *  Copyright 2023, Brown University, Providence, RI.				 *
+ *										 *
+ *			  All Rights Reserved					 *
+ *										 *
+ *  Permission to use, copy, modify, and distribute this software and its	 *
+ *  documentation for any purpose other than its incorporation into a		 *
+ *  commercial product is hereby granted without fee, provided that the 	 *
+ *  above copyright notice appear in all copies and that both that		 *
+ *  copyright notice and this permission notice appear in supporting		 *
+ *  documentation, and that the name of Brown University not be used in 	 *
+ *  advertising or publicity pertaining to distribution of the software 	 *
+ *  without specific, written prior permission. 				 *
+ *										 *
+ *  BROWN UNIVERSITY DISCLAIMS ALL WARRANTIES WITH REGARD TO THIS		 *
+ *  SOFTWARE, INCLUDING ALL IMPLIED WARRANTIES OF MERCHANTABILITY AND		 *
+ *  FITNESS FOR ANY PARTICULAR PURPOSE.  IN NO EVENT SHALL BROWN UNIVERSITY	 *
+ *  BE LIABLE FOR ANY SPECIAL, INDIRECT OR CONSEQUENTIAL DAMAGES OR ANY 	 *
+ *  DAMAGES WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS,		 *
+ *  WHETHER IN AN ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS		 *
+ *  ACTION, ARISING OUT OF OR IN CONNECTION WITH THE USE OR PERFORMANCE 	 *
+ *  OF THIS SOFTWARE.								 *
+ *										 *
+ ********************************************************************************/
+
+
+
+
+
+
+
+
+package edu.brown.cs.catre.catbench;
+
+import java.util.Collection;
+import java.util.Map;
+
+import org.json.JSONObject;
+
+import edu.brown.cs.catre.catre.CatreBridge;
+import edu.brown.cs.catre.catre.CatreDevice;
+import edu.brown.cs.catre.catre.CatreStore;
+import edu.brown.cs.catre.catre.CatreTransition;
+import edu.brown.cs.catre.catre.CatreUniverse;
+
+/**
+ *	Bridge that owns the benchmark devices.  It never reports devices
+ *	(the benchmarks add them directly), recreates them when a universe
+ *	is reloaded, and accepts every transition without doing anything.
+ **/
+
+class CatbenchBridge implements CatreBridge
+{
+
+
+/********************************************************************************/
+/*										*/
+/*	Private Storage 							*/
+/*										*/
+/********************************************************************************/
+
+private CatreUniverse	for_universe;
+
+
+
+/********************************************************************************/
+/*										*/
+/*	Constructors								*/
+/*										*/
+/********************************************************************************/
+
+CatbenchBridge(CatreUniverse cu)
+{
+   for_universe = cu;
+}
+
+
+
+/********************************************************************************/
+/*										*/
+/*	Access methods								*/
+/*										*/
+/********************************************************************************/
+
+@Override public String getName()			{ return "catbench"; }
+
+@Override public String getBridgeId()			{ return "catbench"; }
+
+CatreUniverse getUniverse()				{ return for_universe; }
+
+@Override public JSONObject getBridgeInfo()
+{
+   JSONObject rslt = new JSONObject();
+   rslt.put("NAME",getName());
+   return rslt;
+}
+
+
+
+/********************************************************************************/
+/*										*/
+/*	Device methods								*/
+/*										*/
+/********************************************************************************/
+
+@Override public Collection<CatreDevice> findDevices()
+{
+   return null;
+}
+
+
+@Override public CatreDevice createDevice(CatreStore cs,Map<String,Object> map)
+{
+   return new CatbenchDevice(this,cs,map);
+}
+
+
+@Override public CatreTransition createTransition(CatreDevice device,CatreStore cs,
+      Map<String,Object> map)
+{
+   return null;
+}
+
+
+@Override public void applyTransition(CatreDevice device,CatreTransition t,
+      Map<String,Object> vals)
+{
+   // benchmark devices accept every transition
+}
+
+
+
+}	// end of class CatbenchBridge
+
+
+
+
+/* end of CatbenchBridge.java */
@@ -0,0 +1,67 @@
+/********************************************************************************/
+/*										*/
+/*		CatbenchConstants.java						*/
+/*										*/
+/*	Constants for the CATRE benchmarks					*/
+/*										*/
+/********************************************************************************/
+/* Copyright 2023 Brown University -- Steven P. Reiss, Molly E. McHenry         */
+/*********************************************************************************
+ *  Copyright 2023, Brown University, Providence, RI.				 *
+ *										 *
+ *			  All Rights Reserved					 *
+ *										 *
+ *  Permission to use, copy, modify, and distribute this software and its	 *
+ *  documentation for any purpose other than its incorporation into a		 *
+ *  commercial product is hereby granted without fee, provided that the 	 *
+ *  above copyright notice appear in all copies and that both that		 *
+ *  copyright notice and this permission notice appear in supporting		 *
+ *  documentation, and that the name of Brown University not be used in 	 *
+ *  advertising or publicity pertaining to distribution of the software 	 *
+ *  without specific, written prior permission. 				 *
+ *										 *
+ *  BROWN UNIVERSITY DISCLAIMS ALL WARRANTIES WITH REGARD TO THIS		 *
+ *  SOFTWARE, INCLUDING ALL IMPLIED WARRANTIES OF MERCHANTABILITY AND		 *
+ *  FITNESS FOR ANY PARTICULAR PURPOSE.  IN NO EVENT SHALL BROWN UNIVERSITY	 *
+ *  BE LIABLE FOR ANY SPECIAL, INDIRECT OR CONSEQUENTIAL DAMAGES OR ANY 	 *
+ *  DAMAGES WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS,		 *
+ *  WHETHER IN AN ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS		 *
+ *  ACTION, ARISING OUT OF OR IN CONNECTION WITH THE USE OR PERFORMANCE 	 *
+ *  OF THIS SOFTWARE.								 *
+ *										 *
+ ********************************************************************************/
+
+
+
+
+package edu.brown.cs.catre.catbench;
+
+
+
+public interface CatbenchConstants
+{
+
+
+/********************************************************************************/
+/*										*/
+/*	Harness defaults							*/
+/*										*/
+/********************************************************************************/
+
+int	WARMUP_ITERATIONS = 3;
+int	MEASURE_ITERATIONS = 5;
+long	ITERATION_TIME = 1000;			// ms per iteration
+long	WARMUP_TIME = 500;			// ms per warmup iteration
+
+int []	RULE_COUNTS = { 10, 100, 1000 };
+
+int	RULES_PER_DEVICE = 5;			// rules per synthetic device
+
+
+
+}	// end of interface CatbenchConstants
+
+
+
+
+/* end of CatbenchConstants.java */
@@ -0,0 +1,247 @@
+/********************************************************************************/
+/*										*/
+/*		CatbenchController.java						*/
+/*										*/
+/*	In-process controller for benchmarks					*/
+/*										*/
+/********************************************************************************/
+/* Copyright 2023 Brown University -- Steven P. Reiss, Molly E. McHenry         */
+/*********************************************************************************
+ *  Copyright 2023, Brown University, Providence, RI.				 *
+ *										 *
+ *			  All Rights Reserved					 *
+ *										 *
+ *  Permission to use, copy, modify, and distribute this software and its	 *
+ *  documentation for any purpose other than its incorporation into a		 *
+ *  commercial product is hereby granted without fee, provided that the 	 *
+ *  above copyright notice appear in all copies and that both that		 *
+ *  copyright notice and this permission notice appear in supporting		 *
+ *  documentation, and that the name of Brown University not be used in 	 *
+ *  advertising or publicity pertaining to distribution of the software 	 *
+ *  without specific, written prior permission. 				 *
+ *										 *
+ *  BROWN UNIVERSITY DISCLAIMS ALL WARRANTIES WITH REGARD TO THIS		 *
+ *  SOFTWARE, INCLUDING ALL IMPLIED WARRANTIES OF MERCHANTABILITY AND		 *
+ *  FITNESS FOR ANY PARTICULAR PURPOSE.  IN NO EVENT SHALL BROWN UNIVERSITY	 *
+ *  BE LIABLE FOR ANY SPECIAL, INDIRECT OR CONSEQUENTIAL DAMAGES OR ANY 	 *
+ *  DAMAGES WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS,		 *
+ *  WHETHER IN AN ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS		 *
+ *  ACTION, ARISING OUT OF OR IN CONNECTION WITH THE USE OR PERFORMANCE 	 *
+ *  OF THIS SOFTWARE.								 *
+ *										 *
+ ********************************************************************************/
+
+
+
+
+package edu.brown.cs.catre.catbench;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import edu.brown.cs.catre.catmodel.CatmodelFactory;
+import edu.brown.cs.catre.catre.CatreBridge;
+import edu.brown.cs.catre.catre.CatreController;
+import edu.brown.cs.catre.catre.CatreMetrics;
+import edu.brown.cs.catre.catre.CatreStore;
+import edu.brown.cs.catre.catre.CatreTable;
+import edu.brown.cs.catre.catre.CatreTimer;
+import edu.brown.cs.catre.catre.CatreUniverse;
+import edu.brown.cs.catre.catre.CatreUser;
+import edu.brown.cs.catre.catstore.CatstoreFactory;
+
+/**
+ *	Controller used by the benchmarks.  It has only the benchmark bridge,
+ *	no web server, and keeps everything in the in-memory store.
+ **/
+
+class CatbenchController implements CatreController
+{
+
+
+/********************************************************************************/
+/*										*/
+/*	Private Storage 							*/
+/*										*/
+/********************************************************************************/
+
+private ScheduledThreadPoolExecutor thread_pool;
+private CatreStore	data_store;
+private Map<String,CatreTable> known_tables;
+private CatmodelFactory model_factory;
+
+
+
+/********************************************************************************/
+/*										*/
+/*	Constructors								*/
+/*										*/
+/********************************************************************************/
+
+CatbenchController()
+{
+   thread_pool = new ScheduledThreadPoolExecutor(2,(r) -> {
+      Thread t = new Thread(r,"CatbenchExec");
+      t.setDaemon(true);
+      return t;
+    });
+   thread_pool.setRemoveOnCancelPolicy(true);
+
+   known_tables = new ConcurrentHashMap<>();
+   data_store = new CatstoreFactory(this,"memory").getStore();
+   model_factory = new CatmodelFactory(this);
+}
+
+
+
+/********************************************************************************/
+/*										*/
+/*	Thread methods								*/
+/*										*/
+/********************************************************************************/
+
+@Override public ScheduledFuture<?> schedule(Runnable task,long delay)
+{
+   return thread_pool.schedule(task,delay,TimeUnit.MILLISECONDS);
+}
+
+
+@Override public ScheduledFuture<?> schedule(Runnable task,long delay,long period)
+{
+   return thread_pool.scheduleAtFixedRate(task,delay,period,TimeUnit.MILLISECONDS);
+}
+
+
+@Override public CatreTimer scheduleTimer(Runnable task,long delay)
+{
+   return new BenchTimer(schedule(task,delay));
+}
+
+
+@Override public int getPendingTimerCount()
+{
+   return thread_pool.getQueue().size();
+}
+
+
+@Override public void addMetrics(CatreMetrics m)
+{
+   m.addGauge("catre_timers_pending","Timers waiting to fire",getPendingTimerCount());
+}
+
+
+@Override public Future<?> submit(Runnable task)
+{
+   return thread_pool.submit(task);
+}
+
+
+@Override public <T> Future<T> submit(Runnable task,T result)
+{
+   return thread_pool.submit(task,result);
+}
+
+
+@Override public <T> Future<T> submit(Callable<T> task)
+{
+   return thread_pool.submit(task);
+}
+
+
+
+/********************************************************************************/
+/*										*/
+/*	Access methods								*/
+/*										*/
+/********************************************************************************/
+
+@Override public CatreStore getDatabase()		{ return data_store; }
+
+@Override public void register(CatreTable tbl)
+{
+   known_tables.put(tbl.getTablePrefix(),tbl);
+   data_store.register(tbl);
+}
+
+
+CatreTable findTable(String uid)
+{
+   for (CatreTable tbl : known_tables.values()) {
+      if (uid.startsWith(tbl.getTablePrefix())) return tbl;
+    }
+   return null;
+}
+
+
+@Override public Collection<CatreBridge> getAllBridges(CatreUniverse cu)
+{
+   List<CatreBridge> rslt = new ArrayList<>();
+   rslt.add(new CatbenchBridge(cu));
+   return rslt;
+}
+
+
+@Override public CatreBridge createBridge(String name,CatreUniverse cu)
+{
+   return null;
+}
+
+
+@Override public CatreUniverse createUniverse(String name,CatreUser cu)
+{
+   CatreUniverse universe = model_factory.createUniverse(this,name,cu);
+   cu.setUniverse(universe);
+   return universe;
+}
+
+
+@Override public void activateUniverse(CatreUniverse cu)
+{
+   cu.start();
+}
+
+
+@Override public File findBaseDirectory()
+{
+   return new File(System.getProperty("user.dir"));
+}
+
+
+
+/********************************************************************************/
+/*										*/
+/*	Timer handle								*/
+/*										*/
+/********************************************************************************/
+
+private static class BenchTimer implements CatreTimer {
+
+   private ScheduledFuture<?> for_future;
+
+   BenchTimer(ScheduledFuture<?> f) {
+      for_future = f;
+    }
+
+   @Override public boolean cancel()		{ return for_future.cancel(false); }
+
+   @Override public boolean isPending() 	{ return !for_future.isDone(); }
+
+}	// end of inner class BenchTimer
+
+
+
+}	// end of class CatbenchController
+
+
+
+
+/* end of CatbenchController.java */
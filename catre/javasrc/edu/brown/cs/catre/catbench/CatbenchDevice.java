@@ -0,0 +1,98 @@
+/********************************************************************************/
+/*										*/
+/*		CatbenchDevice.java						*/
+/*										*/
+/*	Synthetic device for benchmarks						*/
+/*										*/
+/********************************************************************************/
+/* Copyright 2023 Brown University -- Steven P. Reiss, Molly E. McHenry         */
+/*********************************************************************************
+ *  Copyright 2023, Brown University, Providence, RI.				 *
+ *										 *
+ *			  All Rights Reserved					 *
+ *										 *
+ *  Permission to use, copy, modify, and distribute this software and its	 *
+ *  documentation for any purpose other than its incorporation into a		 *
+ *  commercial product is hereby granted without fee, provided that the 	 *
+ *  above copyright notice appear in all copies and that both that		 *
+ *  copyright notice and this permission notice appear in supporting		 *
+ *  documentation, and that the name of Brown University not be used in 	 *
+ *  advertising or publicity pertaining to distribution of the software 	 *
+ *  without specific, written prior permission. 				 *
+ *										 *
+ *  BROWN UNIVERSITY DISCLAIMS ALL WARRANTIES WITH REGARD TO THIS		 *
+ *  SOFTWARE, INCLUDING ALL IMPLIED WARRANTIES OF MERCHANTABILITY AND		 *
+ *  FITNESS FOR ANY PARTICULAR PURPOSE.  IN NO EVENT SHALL BROWN UNIVERSITY	 *
+ *  BE LIABLE FOR ANY SPECIAL, INDIRECT OR CONSEQUENTIAL DAMAGES OR ANY 	 *
+ *  DAMAGES WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS,		 *
+ *  WHETHER IN AN ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS		 *
+ *  ACTION, ARISING OUT OF OR IN CONNECTION WITH THE USE OR PERFORMANCE 	 *
+ *  OF THIS SOFTWARE.								 *
+ *										 *
+ ********************************************************************************/
+
+
+
+
+package edu.brown.cs.catre.catbench;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import edu.brown.cs.catre.catdev.CatdevDevice;
+import edu.brown.cs.catre.catre.CatreStore;
+import edu.brown.cs.catre.catre.CatreUniverse;
+
+/**
+ *	Device with a few sensor parameters on the benchmark bridge.  Values
+ *	are set directly by the benchmarks.
+ **/
+
+class CatbenchDevice extends CatdevDevice
+{
+
+
+/********************************************************************************/
+/*										*/
+/*	Constructors								*/
+/*										*/
+/********************************************************************************/
+
+CatbenchDevice(CatbenchBridge bridge,int idx)
+{
+   super(bridge.getUniverse(),bridge);
+
+   CatreUniverse uu = bridge.getUniverse();
+
+   setName("BenchDevice_" + idx);
+   setLabel("Benchmark device " + idx);
+   setDeviceId("BENCH_" + idx);
+
+   addParameter(uu.createIntParameter("level",0,100));
+   addParameter(uu.createBooleanParameter("power",true,"Power"));
+   addParameter(uu.createEnumParameter("mode",new String [] { "OFF", "LOW", "HIGH" }));
+
+   Map<String,Object> tmap = new HashMap<>();
+   tmap.put("NAME","setMode");
+   tmap.put("LABEL","Set mode");
+   tmap.put("TYPE","STATE_CHANGE");
+   tmap.put("DEFAULTS",new HashMap<String,Object>());
+   addTransition(createTransition(uu.getCatre().getDatabase(),tmap));
+}
+
+
+CatbenchDevice(CatbenchBridge bridge,CatreStore cs,Map<String,Object> map)
+{
+   super(bridge.getUniverse(),bridge);
+
+   fromJson(cs,map);
+}
+
+
+
+}	// end of class CatbenchDevice
+
+
+
+
+/* end of CatbenchDevice.java */
@@ -0,0 +1,146 @@
+/********************************************************************************/
+/*										*/
+/*		CatbenchExchange.java						*/
+/*										*/
+/*	Minimal in-memory HttpExchange for dispatch benchmarks			*/
+/*										*/
+/********************************************************************************/
+/* Copyright 2023 Brown University -- Steven P. Reiss, Molly E. McHenry         */
+/*********************************************************************************
+ *  Copyright 2023, Brown University, Providence, RI.				 *
+ *										 *
+ *			  All Rights Reserved					 *
+ *										 *
+ *  Permission to use, copy, modify, and distribute this software and its	 *
+ *  documentation for any purpose other than its incorporation into a		 *
+ *  commercial product is hereby granted without fee, provided that the 	 *
+ *  above copyright notice appear in all copies and that both that		 *
+ *  copyright notice and this permission notice appear in supporting		 *
+ *  documentation, and that the name of Brown University not be used in 	 *
+ *  advertising or publicity pertaining to distribution of the software 	 *
+ *  without specific, written prior permission. 				 *
+ *										 *
+ *  BROWN UNIVERSITY DISCLAIMS ALL WARRANTIES WITH REGARD TO THIS		 *
+ *  SOFTWARE, INCLUDING ALL IMPLIED WARRANTIES OF MERCHANTABILITY AND		 *
+ *  FITNESS FOR ANY PARTICULAR PURPOSE.  IN NO EVENT SHALL BROWN UNIVERSITY	 *
+ *  BE LIABLE FOR ANY SPECIAL, INDIRECT OR CONSEQUENTIAL DAMAGES OR ANY 	 *
+ *  DAMAGES WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS,		 *
+ *  WHETHER IN AN ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS		 *
+ *  ACTION, ARISING OUT OF OR IN CONNECTION WITH THE USE OR PERFORMANCE 	 *
+ *  OF THIS SOFTWARE.								 *
+ *										 *
+ ********************************************************************************/
+
+
+
+
+
+
+
+package edu.brown.cs.catre.catbench;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.util.HashMap;
+import java.util.Map;
+
+import com.sun.net.httpserver.Headers;
+import com.sun.net.httpserver.HttpContext;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpPrincipal;
+
+class CatbenchExchange extends HttpExchange
+{
+
+
+/********************************************************************************/
+/*										*/
+/*	Private Storage 							*/
+/*										*/
+/********************************************************************************/
+
+private String		request_method;
+private URI		request_uri;
+private Headers 	request_headers;
+private Headers 	response_headers;
+private Map<String,Object> exchange_attributes;
+private InputStream	request_body;
+private OutputStream	response_body;
+private int		response_code;
+
+
+
+/********************************************************************************/
+/*										*/
+/*	Constructors								*/
+/*										*/
+/********************************************************************************/
+
+CatbenchExchange(String method,String uri)
+{
+   request_method = method;
+   request_uri = URI.create(uri);
+   request_headers = new Headers();
+   response_headers = new Headers();
+   exchange_attributes = new HashMap<>();
+   request_body = new ByteArrayInputStream(new byte[0]);
+   response_body = new ByteArrayOutputStream();
+   response_code = -1;
+}
+
+
+
+/********************************************************************************/
+/*										*/
+/*	Access methods								*/
+/*										*/
+/********************************************************************************/
+
+@Override public Headers getRequestHeaders()		{ return request_headers; }
+@Override public Headers getResponseHeaders()		{ return response_headers; }
+@Override public URI getRequestURI()			{ return request_uri; }
+@Override public String getRequestMethod()		{ return request_method; }
+@Override public HttpContext getHttpContext()		{ return null; }
+@Override public void close()				{ }
+@Override public InputStream getRequestBody()		{ return request_body; }
+@Override public OutputStream getResponseBody() 	{ return response_body; }
+@Override public int getResponseCode()			{ return response_code; }
+@Override public InetSocketAddress getRemoteAddress()	{ return null; }
+@Override public InetSocketAddress getLocalAddress()	{ return null; }
+@Override public String getProtocol()			{ return "HTTP/1.1"; }
+@Override public HttpPrincipal getPrincipal()		{ return null; }
+
+@Override public void sendResponseHeaders(int code,long len)
+{
+   response_code = code;
+}
+
+@Override public Object getAttribute(String name)
+{
+   return exchange_attributes.get(name);
+}
+
+@Override public void setAttribute(String name,Object value)
+{
+   if (value == null) exchange_attributes.remove(name);
+   else exchange_attributes.put(name,value);
+}
+
+@Override public void setStreams(InputStream i,OutputStream o)
+{
+   if (i != null) request_body = i;
+   if (o != null) response_body = o;
+}
+
+
+
+}	// end of class CatbenchExchange
+
+
+
+
+/* end of CatbenchExchange.java */
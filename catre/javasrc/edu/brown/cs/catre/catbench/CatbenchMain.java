@@ -0,0 +1,634 @@
+/********************************************************************************/
+/*										*/
+/*		CatbenchMain.java						*/
+/*										*/
+/*	Driver for the CATRE micro benchmarks					*/
+/*										*/
+/********************************************************************************/
+/* Copyright 2023 Brown University -- Steven P. Reiss, Molly E. McHenry         */
+/*********************************************************************************
+ *  Copyright 2023, Brown University, Providence, RI.				 *
+ *										 *
+ *			  All Rights Reserved					 *
+ *										 *
+ *  Permission to use, copy, modify, and distribute this software and its	 *
+ *  documentation for any purpose other than its incorporation into a		 *
+ *  commercial product is hereby granted without fee, provided that the 	 *
+ *  above copyright notice appear in all copies and that both that		 *
+ *  copyright notice and this permission notice appear in supporting		 *
+ *  documentation, and that the name of Brown University not be used in 	 *
+ *  advertising or publicity pertaining to distribution of the software 	 *
+ *  without specific, written prior permission. 				 *
+ *										 *
+ *  BROWN UNIVERSITY DISCLAIMS ALL WARRANTIES WITH REGARD TO THIS		 *
+ *  SOFTWARE, INCLUDING ALL IMPLIED WARRANTIES OF MERCHANTABILITY AND		 *
+ *  FITNESS FOR ANY PARTICULAR PURPOSE.  IN NO EVENT SHALL BROWN UNIVERSITY	 *
+ *  BE LIABLE FOR ANY SPECIAL, INDIRECT OR CONSEQUENTIAL DAMAGES OR ANY 	 *
+ *  DAMAGES WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS,		 *
+ *  WHETHER IN AN ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS		 *
+ *  ACTION, ARISING OUT OF OR IN CONNECTION WITH THE USE OR PERFORMANCE 	 *
+ *  OF THIS SOFTWARE.								 *
+ *										 *
+ ********************************************************************************/
+
+
+
+
+
+
+
+
+package edu.brown.cs.catre.catbench;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.json.JSONObject;
+
+import edu.brown.cs.catre.catre.CatreDevice;
+import edu.brown.cs.catre.catre.CatreException;
+import edu.brown.cs.catre.catre.CatreLog;
+import edu.brown.cs.catre.catre.CatreParameter;
+import edu.brown.cs.catre.catre.CatreProgram;
+import edu.brown.cs.catre.catre.CatreRule;
+import edu.brown.cs.catre.catre.CatreStore;
+import edu.brown.cs.catre.catre.CatreTable;
+import edu.brown.cs.catre.catre.CatreUniverse;
+import edu.brown.cs.catre.catre.CatreUser;
+import edu.brown.cs.catre.catserve.CatserveRouter;
+import edu.brown.cs.ivy.file.IvyLog.LogLevel;
+
+/**
+ *	Simple in-process benchmark harness for the rule engine hot paths.
+ *	Each case is warmed up and then timed for a number of fixed-length
+ *	iterations; the mean and deviation of ns/op are reported.
+ *
+ *	Usage: CatbenchMain [-w warmups] [-i iterations] [-t ms] [name ...]
+ *	where names select the cases whose names start with them.
+ **/
+
+public class CatbenchMain implements CatbenchConstants
+{
+
+
+
+/********************************************************************************/
+/*										*/
+/*	Main program								*/
+/*										*/
+/********************************************************************************/
+
+public static void main(String [] args)
+{
+   CatbenchMain cm = new CatbenchMain(args);
+
+   cm.runBenchmarks();
+
+   System.exit(0);
+}
+
+
+
+/********************************************************************************/
+/*										*/
+/*	Private Storage 							*/
+/*										*/
+/********************************************************************************/
+
+private int		warmup_count;
+private int		iteration_count;
+private long		iteration_time;
+private List<String>	case_filters;
+private CatbenchController bench_control;
+
+private static final int	OPS_PER_CHECK = 16;
+
+private static volatile Object	result_sink;
+
+
+
+/********************************************************************************/
+/*										*/
+/*	Constructors								*/
+/*										*/
+/********************************************************************************/
+
+private CatbenchMain(String [] args)
+{
+   warmup_count = WARMUP_ITERATIONS;
+   iteration_count = MEASURE_ITERATIONS;
+   iteration_time = ITERATION_TIME;
+   case_filters = new ArrayList<>();
+
+   scanArgs(args);
+
+   CatreLog.setLogLevel(LogLevel.ERROR);
+
+   bench_control = new CatbenchController();
+}
+
+
+
+/********************************************************************************/
+/*										*/
+/*	Argument scanning							*/
+/*										*/
+/********************************************************************************/
+
+private void scanArgs(String [] args)
+{
+   for (int i = 0; i < args.length; ++i) {
+      if (args[i].startsWith("-")) {
+	 if (args[i].startsWith("-w") && i+1 < args.length) {           // -warmup #
+	    warmup_count = Integer.parseInt(args[++i]);
+	  }
+	 else if (args[i].startsWith("-i") && i+1 < args.length) {      // -iterations #
+	    iteration_count = Integer.parseInt(args[++i]);
+	  }
+	 else if (args[i].startsWith("-t") && i+1 < args.length) {      // -time ms
+	    iteration_time = Long.parseLong(args[++i]);
+	  }
+	 else badArgs();
+       }
+      else case_filters.add(args[i]);
+    }
+}
+
+
+private void badArgs()
+{
+   System.err.println("CATBENCH: CatbenchMain [-w #] [-i #] [-t ms] [case ...]");
+   System.exit(1);
+}
+
+
+
+/********************************************************************************/
+/*										*/
+/*	Benchmark definitions							*/
+/*										*/
+/********************************************************************************/
+
+private List<CatbenchCase> setupCases()
+{
+   List<CatbenchCase> rslt = new ArrayList<>();
+
+   for (int n : RULE_COUNTS) {
+      rslt.add(new RunOnceCase(n,false));
+    }
+   for (int n : RULE_COUNTS) {
+      rslt.add(new RunOnceCase(n,true));
+    }
+   rslt.add(new NormalizeCase("int"));
+   rslt.add(new NormalizeCase("real"));
+   rslt.add(new NormalizeCase("boolean"));
+   rslt.add(new NormalizeCase("enum"));
+   rslt.add(new NormalizeCase("set"));
+   rslt.add(new NormalizeCase("string"));
+   rslt.add(new NormalizeCase("color"));
+   for (int n : RULE_COUNTS) {
+      rslt.add(new JsonCase(n));
+    }
+   rslt.add(new RouteCase());
+   for (String [] sch : TRIGGER_SCHEDULES) {
+      rslt.add(new TriggerTimeCase(sch[0],sch[1]));
+    }
+
+   return rslt;
+}
+
+
+
+/********************************************************************************/
+/*										*/
+/*	Running methods 							*/
+/*										*/
+/********************************************************************************/
+
+private void runBenchmarks()
+{
+   System.out.println("CATBENCH: " + warmup_count + " warmups, " +
+	 iteration_count + " iterations of " + iteration_time + " ms");
+
+   for (CatbenchCase bc : setupCases()) {
+      if (!useCase(bc)) continue;
+      try {
+	 bc.setup();
+	 measure(bc);
+       }
+      catch (Throwable t) {
+	 System.out.println("CATBENCH: " + bc.getName() + " failed: " + t);
+	 t.printStackTrace();
+       }
+    }
+}
+
+
+private boolean useCase(CatbenchCase bc)
+{
+   if (case_filters.isEmpty()) return true;
+
+   for (String s : case_filters) {
+      if (bc.getName().startsWith(s)) return true;
+    }
+
+   return false;
+}
+
+
+private void measure(CatbenchCase bc) throws Exception
+{
+   long wtime = Math.min(WARMUP_TIME,iteration_time);
+   for (int i = 0; i < warmup_count; ++i) {
+      runIteration(bc,wtime);
+    }
+
+   double [] times = new double[iteration_count];
+   for (int i = 0; i < iteration_count; ++i) {
+      times[i] = runIteration(bc,iteration_time);
+    }
+
+   double sum = 0;
+   for (double t : times) sum += t;
+   double mean = sum / times.length;
+   double var = 0;
+   for (double t : times) var += (t - mean) * (t - mean);
+   double dev = (times.length > 1 ? Math.sqrt(var / (times.length - 1)) : 0);
+
+   System.out.println(String.format("%-24s %14.1f ns/op  +- %10.1f  %14.1f ops/s",
+	 bc.getName(),mean,dev,1.0e9 / mean));
+}
+
+
+/**
+ *	Run the case repeatedly for the given time and return ns/op.
+ **/
+
+private double runIteration(CatbenchCase bc,long time) throws Exception
+{
+   long limit = time * 1000000L;
+   long ops = 0;
+   long start = System.nanoTime();
+   long elapsed = 0;
+
+   while (elapsed < limit) {
+      for (int i = 0; i < OPS_PER_CHECK; ++i) {
+	 result_sink = bc.run();
+       }
+      ops += OPS_PER_CHECK;
+      elapsed = System.nanoTime() - start;
+    }
+
+   return ((double) elapsed) / ops;
+}
+
+
+
+/********************************************************************************/
+/*										*/
+/*	Universe construction							*/
+/*										*/
+/********************************************************************************/
+
+private CatreUniverse buildUniverse(String name,int nrule,boolean fanout)
+	throws CatreException
+{
+   CatreStore cs = bench_control.getDatabase();
+   CatreUser cu = cs.createUser("bench_" + name,name + "@catbench","bench");
+   CatreUniverse uu = bench_control.createUniverse(name,cu);
+
+   int ndev = Math.max(1,nrule / RULES_PER_DEVICE);
+   CatbenchBridge cb = (CatbenchBridge) uu.findBridge("catbench");
+   List<CatreDevice> devs = new ArrayList<>();
+   for (int i = 0; i < ndev; ++i) {
+      CatbenchDevice cd = new CatbenchDevice(cb,i);
+      uu.addDevice(cd);
+      devs.add(cd);
+    }
+
+   CatreProgram pgm = uu.getProgram();
+   for (int i = 0; i < nrule; ++i) {
+      CatreDevice cd = (fanout ? devs.get(0) : devs.get(i % ndev));
+      Map<String,Object> pref = new HashMap<>();
+      pref.put("DEVICE",cd.getDeviceId());
+      pref.put("PARAMETER","level");
+      Map<String,Object> cond = new HashMap<>();
+      cond.put("TYPE","Parameter");
+      cond.put("NAME","Cond_" + i);
+      cond.put("LABEL","Level check " + i);
+      cond.put("PARAMREF",pref);
+      cond.put("OPERATOR","GEQ");
+      cond.put("STATE",Integer.toString((i * 37) % 100));
+      List<Object> conds = new ArrayList<>();
+      conds.add(cond);
+      Map<String,Object> rule = new HashMap<>();
+      rule.put("NAME","Rule_" + i);
+      rule.put("LABEL","Benchmark rule " + i);
+      rule.put("DESCRIPTION","Benchmark rule " + i);
+      rule.put("PRIORITY",(double) (1 + i % 50));
+      rule.put("DEVICEID",cd.getDeviceId());
+      rule.put("CONDITIONS",conds);
+      Map<String,Object> tref = new HashMap<>();
+      tref.put("DEVICE",cd.getDeviceId());
+      tref.put("TRANSITION","setMode");
+      Map<String,Object> act = new HashMap<>();
+      act.put("NAME","Action_" + i);
+      act.put("LABEL","Set mode " + i);
+      act.put("TRANSITION",tref);
+      act.put("PARAMETERS",new HashMap<String,Object>());
+      List<Object> acts = new ArrayList<>();
+      acts.add(act);
+      rule.put("ACTIONS",acts);
+      CatreRule cr = pgm.createRule(cs,rule);
+      pgm.addRule(cr);
+    }
+
+   return uu;
+}
+
+
+
+/********************************************************************************/
+/*										*/
+/*	Rule evaluation benchmark						*/
+/*										*/
+/********************************************************************************/
+
+private class RunOnceCase implements CatbenchCase {
+
+   private int num_rules;
+   private boolean is_fanout;
+   private CatreUniverse for_universe;
+   private List<CatreDevice> all_devices;
+   private int op_count;
+
+   RunOnceCase(int n,boolean fanout) {
+      num_rules = n;
+      is_fanout = fanout;
+      op_count = 0;
+    }
+
+   @Override public String getName() {
+      return (is_fanout ? "Fanout-" : "RunOnce-") + num_rules;
+    }
+
+   @Override public void setup() throws CatreException {
+      for_universe = buildUniverse(getName(),num_rules,is_fanout);
+      all_devices = new ArrayList<>();
+      int ndev = Math.max(1,num_rules / RULES_PER_DEVICE);
+      for (int i = 0; i < ndev; ++i) {
+	 all_devices.add(for_universe.findDevice("BENCH_" + i));
+       }
+    }
+
+   @Override public Object run() throws Exception {
+      int idx = op_count++;
+      CatreDevice cd = all_devices.get(is_fanout ? 0 : idx % all_devices.size());
+      CatreParameter cp = cd.findParameter("level");
+      cd.setParameterValue(cp,(idx * 13) % 101);
+      return for_universe.getProgram().runOnce(null);
+    }
+
+}	// end of inner class RunOnceCase
+
+
+
+/********************************************************************************/
+/*										*/
+/*	Parameter normalization benchmark					*/
+/*										*/
+/********************************************************************************/
+
+private class NormalizeCase implements CatbenchCase {
+
+   private String param_type;
+   private CatreParameter for_parameter;
+   private String [] input_values;
+   private int op_count;
+
+   NormalizeCase(String typ) {
+      param_type = typ;
+      op_count = 0;
+    }
+
+   @Override public String getName()			{ return "Normalize-" + param_type; }
+
+   @Override public void setup() throws CatreException {
+      CatreUniverse uu = buildUniverse(getName(),0,false);
+      String [] evals = new String [] { "OFF", "LOW", "HIGH" };
+      switch (param_type) {
+	 case "int" :
+	    for_parameter = uu.createIntParameter("p",0,1000);
+	    input_values = new String [] { "0", "42", "999", "17" };
+	    break;
+	 case "real" :
+	    for_parameter = uu.createRealParameter("p",0,1000);
+	    input_values = new String [] { "0.5", "42.25", "999", "3.14159" };
+	    break;
+	 case "boolean" :
+	    for_parameter = uu.createBooleanParameter("p",true,"P");
+	    input_values = new String [] { "true", "false", "on", "off" };
+	    break;
+	 case "enum" :
+	    for_parameter = uu.createEnumParameter("p",evals);
+	    input_values = new String [] { "OFF", "low", "HIGH", "Low" };
+	    break;
+	 case "set" :
+	    for_parameter = uu.createSetParameter("p",List.of(evals));
+	    input_values = new String [] { "OFF", "LOW,HIGH", "OFF;LOW;HIGH", "" };
+	    break;
+	 case "string" :
+	    for_parameter = uu.createStringParameter("p");
+	    input_values = new String [] { "hello", "", "a longer string value" };
+	    break;
+	 case "color" :
+	    for_parameter = uu.createColorParameter("p");
+	    input_values = new String [] { "red", "#ff8800", "blue", "#123456" };
+	    break;
+	 default :
+	    throw new IllegalArgumentException("Unknown parameter type " + param_type);
+       }
+    }
+
+   @Override public Object run() {
+      String v = input_values[op_count++ % input_values.length];
+      return for_parameter.normalize(v);
+    }
+
+}	// end of inner class NormalizeCase
+
+
+
+/********************************************************************************/
+/*										*/
+/*	JSON round trip benchmark						*/
+/*										*/
+/********************************************************************************/
+
+private class JsonCase implements CatbenchCase {
+
+   private int num_rules;
+   private CatreUniverse for_universe;
+   private CatreTable universe_table;
+
+   JsonCase(int n) {
+      num_rules = n;
+    }
+
+   @Override public String getName()			{ return "Json-" + num_rules; }
+
+   @Override public void setup() throws CatreException {
+      for_universe = buildUniverse(getName(),num_rules,false);
+      universe_table = bench_control.findTable(for_universe.getDataUID());
+    }
+
+   @Override public Object run() {
+      String text = for_universe.getJsonObject().toString();
+      JSONObject obj = new JSONObject(text);
+      return universe_table.create(bench_control.getDatabase(),obj.toMap());
+    }
+
+}	// end of inner class JsonCase
+
+
+
+
+/********************************************************************************/
+/*										*/
+/*	Request dispatch benchmark						*/
+/*										*/
+/********************************************************************************/
+
+private static final String [][] SERVER_ROUTES = {
+   { "ALL", "/ping" }, { "ALL", null }, { "ALL", null }, { "ALL", null },
+   { "ALL", "/static" }, { "GET", "/login" }, { "POST", "/login" },
+   { "POST", "/register" }, { "GET", "/logout" }, { "POST", "/forgotpassword" },
+   { "ALL", null }, { "POST", "/changepassword" }, { "ALL", null },
+   { "ALL", "/keypair" }, { "POST", "/removeuser" }, { "POST", "/bridge/add" },
+   { "GET", "/bridge/list" }, { "GET", "/universe" },
+   { "POST", "/universe/discover" }, { "POST", "/universe/addvirtual" },
+   { "POST", "/universe/addweb" }, { "POST", "/universe/removedevice" },
+   { "POST", "/universe/enabledevice" }, { "POST", "/universe/deviceStates" },
+   { "POST", "/universe/shareCondition" }, { "POST", "/universe/unshareCondition" },
+   { "POST", "/universe/getValue" }, { "GET", "/rules" }, { "POST", "/rule/add" },
+   { "POST", "/rule/edit" }, { "POST", "/rule/validate" }, { "POST", "/rule/remove" },
+   { "POST", "/rule/:ruleid/edit" }, { "POST", "/rule/:ruleid/remove" },
+   { "POST", "/rule/:ruleid/priority" },
+};
+
+private static final String [][] DISPATCH_REQUESTS = {
+   { "POST", "/rule/RULE_abc/edit" }, { "POST", "/universe/deviceStates" },
+   { "GET", "/rules" }, { "POST", "/rule/RULE_xyz/priority?PRIORITY=5" },
+   { "GET", "/universe" }, { "GET", "/nothing/here" },
+};
+
+
+private class RouteCase implements CatbenchCase {
+
+   private CatserveRouter for_router;
+   private int op_count;
+
+   RouteCase() {
+      op_count = 0;
+    }
+
+   @Override public String getName()			{ return "Route-dispatch"; }
+
+   @Override public void setup() {
+      for_router = new CatserveRouter((e) -> null);
+      for (String [] rt : SERVER_ROUTES) {
+	 String url = rt[1];
+	 if (url == null) {
+	    for_router.addRoute(rt[0],null,(e) -> {
+	       if (e.getAttribute("paramMap") == null) {
+		  e.setAttribute("paramMap",new HashMap<String,List<String>>());
+		}
+	       return null;
+	     });
+	  }
+	 else {
+	    for_router.addRoute(rt[0],url,(e,cs) -> url);
+	  }
+       }
+    }
+
+   @Override public Object run() {
+      String [] req = DISPATCH_REQUESTS[op_count++ % DISPATCH_REQUESTS.length];
+      return for_router.dispatch(new CatbenchExchange(req[0],req[1]));
+    }
+
+}	// end of inner class RouteCase
+
+
+
+/********************************************************************************/
+/*										*/
+/*	Trigger time computation benchmark					*/
+/*										*/
+/********************************************************************************/
+
+private static final String [][] TRIGGER_SCHEDULES = {
+   { "minute", "* * * * *" },
+   { "weekday", "30 7 * * MON-FRI" },
+   { "monthly", "0 12 1 * *" },
+   { "friday13", "0 0 13 * FRI" },
+   { "leapday", "0 0 29 2 *" },
+};
+
+
+private class TriggerTimeCase implements CatbenchCase {
+
+   private String case_name;
+   private String time_description;
+   private Object for_condition;
+   private Method compute_method;
+   private long start_time;
+   private int op_count;
+
+   TriggerTimeCase(String name,String desc) {
+      case_name = name;
+      time_description = desc;
+      op_count = 0;
+    }
+
+   @Override public String getName()			{ return "TriggerTime-" + case_name; }
+
+   @Override public void setup() throws Exception {
+      // computeNext is package private; the condition needs no program here
+      Class<?> c = Class.forName("edu.brown.cs.catre.catprog.CatprogConditionTriggerTime");
+      Constructor<?> cnst = c.getDeclaredConstructor(
+	    Class.forName("edu.brown.cs.catre.catprog.CatprogProgram"),
+	    CatreStore.class,Map.class);
+      cnst.setAccessible(true);
+      compute_method = c.getDeclaredMethod("computeNext",long.class);
+      compute_method.setAccessible(true);
+
+      Map<String,Object> map = new HashMap<>();
+      map.put("TYPE","TriggerTime");
+      map.put("NAME","Bench_" + case_name);
+      map.put("LABEL","Benchmark trigger " + case_name);
+      map.put("TIME",time_description);
+      for_condition = cnst.newInstance(null,null,map);
+      start_time = System.currentTimeMillis();
+    }
+
+   @Override public Object run() throws Exception {
+      // step the start through a year so each call begins somewhere new
+      long start = start_time + (op_count++ % 8760) * 3600000L + 17000;
+      return compute_method.invoke(for_condition,start);
+    }
+
+}	// end of inner class TriggerTimeCase
+
+
+
+}	// end of class CatbenchMain
+
+
+
+
+/* end of CatbenchMain.java */
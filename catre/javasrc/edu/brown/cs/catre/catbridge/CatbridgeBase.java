@@ -41,10 +41,16 @@ import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 import org.json.JSONArray;
 import org.json.JSONObject;
 
+import edu.brown.cs.catre.catre.CatreActionBatch;
 import edu.brown.cs.catre.catre.CatreActionException;
 import edu.brown.cs.catre.catre.CatreBridge;
 import edu.brown.cs.catre.catre.CatreBridgeAuthorization;
@@ -78,6 +84,7 @@ private Map<CatreUniverse,CatbridgeBase> known_instances;
 protected CatreUniverse 	for_universe;
 protected Map<String,CatreDevice> device_map;
 protected String		bridge_id;
+private CatbridgeCommandQueue	command_queue;
 
 
 
@@ -92,8 +99,9 @@ protected CatbridgeBase()
 {
    for_universe = null;
    device_map = null;
-   known_instances = new HashMap<>();
+   known_instances = new ConcurrentHashMap<>();
    bridge_id = null;
+   command_queue = null;
 }
 
 
@@ -103,7 +111,8 @@ protected CatbridgeBase(CatbridgeBase base,CatreUniverse cu)
    for_universe = cu;
    device_map = new HashMap<>();
    known_instances = null;
-   bridge_id = CatreUtil.randomString(24);
+   bridge_id = computeBridgeId(cu.getUser(),getName());
+   command_queue = new CatbridgeCommandQueue(this);
    if (cu.getProgram() != null) {
       CatreLog.logD("CATBRIDGE","Add program listener for " + getName() + " " + bridge_id);
       cu.getProgram().addProgramListener(this);
@@ -127,6 +136,20 @@ CatreUniverse getUniverse()		{ return for_universe; }
 @Override public String getBridgeId()	{ return bridge_id; }
 
 
+/**
+ *	Bridge ids depend only on the owning user and the bridge name so they
+ *	are the same after a restart; CEDES keeps using the id it was given.
+ **/
+
+static String computeBridgeId(CatreUser cu,String name)
+{
+   if (cu == null || cu.getDataUID() == null) return CatreUtil.randomString(24);
+
+   String h = CatreUtil.secureHash(cu.getDataUID() + "@" + name);
+   return h.replaceAll("[^A-Za-z0-9]","").substring(0,24);
+}
+
+
 @Override public JSONObject getBridgeInfo()
 {
    JSONObject obj = buildJson("BRIDGE",getName());
@@ -166,7 +189,7 @@ protected CatbridgeBase createBridge(CatreUniverse u)
 
    if (cb == null) {
       cb = createInstance(u,ba);
-      known_instances.put(u,cb);
+      if (cb != null) known_instances.put(u,cb);
     }
 
    return cb;
@@ -244,7 +267,7 @@ protected JSONObject sendCedesMessage(String cmd,Map<String,Object> data)
       use.put(buildJson("DEVICE",ref.getDeviceId(),"PARAMETER",ref.getParameterName()));
     }
    
-   CatreLog.logD("CATBRIDGE","Update sensor for " + getName() + " " + use.toString(2));
+   CatreLog.logD("CATBRIDGE",() -> "Update sensor for " + getName() + " " + use.toString(2));
    if (use.isEmpty()) return;
    
    Map<String,Object> data = new HashMap<>();
@@ -287,7 +310,7 @@ protected void handleDevicesFound(JSONArray devs)
       JSONObject devobj = devs.getJSONObject(i);
       Map<String,Object> devmap = devobj.toMap();
       
-      CatreLog.logD("CATBRIDGE","WORK ON DEVICE " + devobj.toString(2));
+      CatreLog.logD("CATBRIDGE",() -> "WORK ON DEVICE " + devobj.toString(2));
       CatreDevice newcd = createDevice(cs,devmap);
       if (newcd != null && !newcd.validateDevice()) newcd = null;
       
@@ -342,7 +365,7 @@ protected boolean useCedes()                    { return true; }
 protected void handleEvent(JSONObject evt)
 { 
    EventHandler hdlr = new EventHandler(evt);
-   for_universe.getCatre().submit(hdlr);
+   for_universe.execute(hdlr);
 }
 
 
@@ -356,7 +379,7 @@ private class EventHandler implements Runnable {
     }
    
    @Override public void run() {
-      CatreLog.logD("CATBRIDGE","Handle event " + for_event.toString(2));
+      CatreLog.logD("CATBRIDGE",() -> "Handle event " + for_event.toString(2));
       String typ = for_event.getString("TYPE");
       CatreDevice dev = for_universe.findDevice(for_event.getString("DEVICE"));
       if (dev == null) {
@@ -409,13 +432,33 @@ private class EventHandler implements Runnable {
    Map<String,Object> data = new HashMap<>();
 
    data.put("deviceid",dev.getDeviceId());
-   data.put("uid",getUserId());
    data.put("command",t.getName());
    data.put("values",values);
-   data.put("bridge",getName());
-   data.put("bridgeid",getBridgeId());
 
-   sendCedesMessage("catre/command",data);
+   CompletableFuture<Void> rslt = command_queue.sendCommand(data);
+
+   // inside a rule the batch waits for all commands together
+   CatreActionBatch batch = CatreActionBatch.current();
+   if (batch != null) {
+      batch.add(dev.getName() + "." + t.getName(),rslt);
+      return;
+    }
+
+   try {
+      rslt.get(COMMAND_WAIT_TIME,TimeUnit.MILLISECONDS);
+    }
+   catch (ExecutionException e) {
+      if (e.getCause() instanceof CatreActionException) {
+	 throw (CatreActionException) e.getCause();
+       }
+      throw new CatreActionException("Command failed",e.getCause());
+    }
+   catch (TimeoutException e) {
+      throw new CatreActionException("Command timed out");
+    }
+   catch (InterruptedException e) {
+      throw new CatreActionException("Command interrupted");
+    }
 }
 
 
@@ -0,0 +1,222 @@
+/********************************************************************************/
+/*										*/
+/*		CatbridgeCedes.java						*/
+/*										*/
+/*	Shared HTTP connection to the CEDES server				*/
+/*										*/
+/********************************************************************************/
+/*	Copyright 2023 Brown University -- Steven P. Reiss			*/
+/*********************************************************************************
+ *  Copyright 2023, Brown University, Providence, RI.				 *
+ *										 *
+ *			  All Rights Reserved					 *
+ *										 *
+ *  Permission to use, copy, modify, and distribute this software and its	 *
+ *  documentation for any purpose other than its incorporation into a		 *
+ *  commercial product is hereby granted without fee, provided that the 	 *
+ *  above copyright notice appear in all copies and that both that		 *
+ *  copyright notice and this permission notice appear in supporting		 *
+ *  documentation, and that the name of Brown University not be used in 	 *
+ *  advertising or publicity pertaining to distribution of the software 	 *
+ *  without specific, written prior permission. 				 *
+ *										 *
+ *  BROWN UNIVERSITY DISCLAIMS ALL WARRANTIES WITH REGARD TO THIS		 *
+ *  SOFTWARE, INCLUDING ALL IMPLIED WARRANTIES OF MERCHANTABILITY AND		 *
+ *  FITNESS FOR ANY PARTICULAR PURPOSE.  IN NO EVENT SHALL BROWN UNIVERSITY	 *
+ *  BE LIABLE FOR ANY SPECIAL, INDIRECT OR CONSEQUENTIAL DAMAGES OR ANY 	 *
+ *  DAMAGES WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS,		 *
+ *  WHETHER IN AN ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS		 *
+ *  ACTION, ARISING OUT OF OR IN CONNECTION WITH THE USE OR PERFORMANCE 	 *
+ *  OF THIS SOFTWARE.								 *
+ *										 *
+ ********************************************************************************/
+
+
+
+package edu.brown.cs.catre.catbridge;
+
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+import org.json.JSONObject;
+
+import edu.brown.cs.catre.catre.CatreLog;
+
+/**
+ *	All messages to CEDES go through a single keep-alive HTTP client so
+ *	connections (and TLS sessions) are reused between calls.  The host,
+ *	port, protocol and timeouts come from the properties so it can be
+ *	pointed at a local server for testing.
+ **/
+
+class CatbridgeCedes implements CatbridgeConstants
+{
+
+
+/********************************************************************************/
+/*										*/
+/*	Private Storage 							*/
+/*										*/
+/********************************************************************************/
+
+private HttpClient	http_client;
+private String		base_url;
+private Duration	request_timeout;
+
+
+
+/********************************************************************************/
+/*										*/
+/*	Constructors								*/
+/*										*/
+/********************************************************************************/
+
+CatbridgeCedes(Properties p)
+{
+   String host = p.getProperty("cedeshost",CEDES_HOST);
+   String port = p.getProperty("cedesport",Integer.toString(CEDES_PORT));
+   boolean https = Boolean.parseBoolean(p.getProperty("cedeshttps","true"));
+   long ctime = CEDES_CONNECT_TIMEOUT;
+   long rtime = CEDES_REQUEST_TIMEOUT;
+   try {
+      ctime = Long.parseLong(p.getProperty("cedesconnecttimeout",Long.toString(ctime)));
+      rtime = Long.parseLong(p.getProperty("cedestimeout",Long.toString(rtime)));
+    }
+   catch (NumberFormatException e) {
+      CatreLog.logE("CATBRIDGE","Bad CEDES timeout property",e);
+    }
+
+   base_url = (https ? "https://" : "http://") + host + ":" + port + "/";
+   request_timeout = Duration.ofMillis(rtime);
+   http_client = HttpClient.newBuilder()
+      .version(HttpClient.Version.HTTP_2)
+      .connectTimeout(Duration.ofMillis(ctime))
+      .build();
+}
+
+
+
+/********************************************************************************/
+/*										*/
+/*	Sending methods 							*/
+/*										*/
+/********************************************************************************/
+
+/**
+ *	Send a message and wait for the reply.	Returns null if CEDES is not
+ *	accepting connections yet and an ERROR status object if the request
+ *	fails otherwise.
+ **/
+
+JSONObject send(String cmd,JSONObject obj,String key)
+{
+   HttpRequest req = buildRequest(cmd,obj,key);
+
+   try {
+      HttpResponse<String> resp = http_client.send(req,HttpResponse.BodyHandlers.ofString());
+      return handleResponse(resp);
+    }
+   catch (ConnectException e) {
+      CatreLog.logD("CATBRIDGE","CEDES NO RESULT: Waiting for CEDES to allow connections");
+    }
+   catch (IOException e) {
+      CatreLog.logE("CATBRIDGE","Problem sending command to CEDES",e);
+      return errorResult();
+    }
+   catch (InterruptedException e) {
+      return errorResult();
+    }
+
+   return null;
+}
+
+
+/**
+ *	Send a message without waiting.  The future completes with the same
+ *	values send() would return.
+ **/
+
+CompletableFuture<JSONObject> sendAsync(String cmd,JSONObject obj,String key)
+{
+   HttpRequest req = buildRequest(cmd,obj,key);
+
+   return http_client.sendAsync(req,HttpResponse.BodyHandlers.ofString())
+      .thenApply(this::handleResponse)
+      .exceptionally(this::handleFailure);
+}
+
+
+
+/********************************************************************************/
+/*										*/
+/*	Helper methods								*/
+/*										*/
+/********************************************************************************/
+
+private HttpRequest buildRequest(String cmd,JSONObject obj,String key)
+{
+   String body = obj.toString();
+   CatreLog.logD("CATBRIDGE","Send to CEDES: " + base_url + cmd + " " + body);
+
+   HttpRequest.Builder bldr = HttpRequest.newBuilder(URI.create(base_url + cmd))
+      .timeout(request_timeout)
+      .header("content-type","application/json")
+      .header("accept","application/json")
+      .POST(HttpRequest.BodyPublishers.ofString(body));
+   if (key != null) bldr.header("Authorization","Bearer " + key);
+
+   return bldr.build();
+}
+
+
+private JSONObject handleResponse(HttpResponse<String> resp)
+{
+   if (resp.statusCode() >= 400) {
+      CatreLog.logE("CATBRIDGE","CEDES returned status " + resp.statusCode());
+      return errorResult();
+    }
+
+   JSONObject jrslt = new JSONObject(resp.body());
+   CatreLog.logD("CATBRIDGE","CEDES RETURNED " + resp.body());
+   return jrslt;
+}
+
+
+private JSONObject handleFailure(Throwable t)
+{
+   if (t instanceof CompletionException && t.getCause() != null) t = t.getCause();
+
+   if (t instanceof ConnectException) {
+      CatreLog.logD("CATBRIDGE","CEDES NO RESULT: Waiting for CEDES to allow connections");
+      return null;
+    }
+
+   CatreLog.logE("CATBRIDGE","Problem sending command to CEDES",t);
+   return errorResult();
+}
+
+
+private static JSONObject errorResult()
+{
+   JSONObject rslt = new JSONObject();
+   rslt.put("status","ERROR");
+   rslt.put("reason","Bad connection to CEDES");
+   return rslt;
+}
+
+
+
+}	// end of class CatbridgeCedes
+
+
+
+
+/* end of CatbridgeCedes.java */
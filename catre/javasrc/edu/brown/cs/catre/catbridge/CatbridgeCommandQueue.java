@@ -0,0 +1,248 @@
+/********************************************************************************/
+/*										*/
+/*		CatbridgeCommandQueue.java					*/
+/*										*/
+/*	Batch outgoing device commands for a bridge			*/
+/*										*/
+/********************************************************************************/
+/*	Copyright 2023 Brown University -- Steven P. Reiss			*/
+/*********************************************************************************
+ *  Copyright 2023, Brown University, Providence, RI.				 *
+ *										 *
+ *			  All Rights Reserved					 *
+ *										 *
+ *  Permission to use, copy, modify, and distribute this software and its	 *
+ *  documentation for any purpose other than its incorporation into a		 *
+ *  commercial product is hereby granted without fee, provided that the 	 *
+ *  above copyright notice appear in all copies and that both that		 *
+ *  copyright notice and this permission notice appear in supporting		 *
+ *  documentation, and that the name of Brown University not be used in 	 *
+ *  advertising or publicity pertaining to distribution of the software 	 *
+ *  without specific, written prior permission. 				 *
+ *										 *
+ *  BROWN UNIVERSITY DISCLAIMS ALL WARRANTIES WITH REGARD TO THIS		 *
+ *  SOFTWARE, INCLUDING ALL IMPLIED WARRANTIES OF MERCHANTABILITY AND		 *
+ *  FITNESS FOR ANY PARTICULAR PURPOSE.  IN NO EVENT SHALL BROWN UNIVERSITY	 *
+ *  BE LIABLE FOR ANY SPECIAL, INDIRECT OR CONSEQUENTIAL DAMAGES OR ANY 	 *
+ *  DAMAGES WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS,		 *
+ *  WHETHER IN AN ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS		 *
+ *  ACTION, ARISING OUT OF OR IN CONNECTION WITH THE USE OR PERFORMANCE 	 *
+ *  OF THIS SOFTWARE.								 *
+ *										 *
+ ********************************************************************************/
+
+
+
+package edu.brown.cs.catre.catbridge;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import edu.brown.cs.catre.catre.CatreActionException;
+import edu.brown.cs.catre.catre.CatreController;
+import edu.brown.cs.catre.catre.CatreLog;
+
+/**
+ *	Commands for one bridge issued within COMMAND_BATCH_WINDOW of each
+ *	other are sent to CEDES as a single catre/commands message.  Each
+ *	command gets its own future which is completed from its entry in
+ *	the reply (matched by id), or from the overall status if the reply
+ *	has no per-command results.
+ **/
+
+class CatbridgeCommandQueue implements CatbridgeConstants
+{
+
+
+/********************************************************************************/
+/*										*/
+/*	Private Storage 							*/
+/*										*/
+/********************************************************************************/
+
+private CatbridgeBase	for_bridge;
+private List<PendingCommand> pending_commands;
+private boolean 	flush_scheduled;
+private int		command_counter;
+
+
+
+/********************************************************************************/
+/*										*/
+/*	Constructors								*/
+/*										*/
+/********************************************************************************/
+
+CatbridgeCommandQueue(CatbridgeBase bridge)
+{
+   for_bridge = bridge;
+   pending_commands = new ArrayList<>();
+   flush_scheduled = false;
+   command_counter = 0;
+}
+
+
+
+/********************************************************************************/
+/*										*/
+/*	Queue methods								*/
+/*										*/
+/********************************************************************************/
+
+/**
+ *	Queue a command.  The future completes normally when CEDES accepts it
+ *	and exceptionally with a CatreActionException if it fails.
+ **/
+
+CompletableFuture<Void> sendCommand(Map<String,Object> cmd)
+{
+   PendingCommand pc;
+   boolean flushnow = false;
+   boolean schedule = false;
+
+   synchronized (this) {
+      pc = new PendingCommand(++command_counter,cmd);
+      pending_commands.add(pc);
+      if (pending_commands.size() >= COMMAND_BATCH_SIZE) flushnow = true;
+      else if (!flush_scheduled) {
+	 flush_scheduled = true;
+	 schedule = true;
+       }
+    }
+
+   if (flushnow) flush();
+   else if (schedule) {
+      CatreController cc = for_bridge.getUniverse().getCatre();
+      cc.schedule(this::flush,COMMAND_BATCH_WINDOW);
+    }
+
+   return pc.command_result;
+}
+
+
+void flush()
+{
+   List<PendingCommand> cmds;
+   synchronized (this) {
+      flush_scheduled = false;
+      if (pending_commands.isEmpty()) return;
+      cmds = pending_commands;
+      pending_commands = new ArrayList<>();
+    }
+
+   Map<String,Object> data = new HashMap<>();
+   data.put("bridge",for_bridge.getName());
+   data.put("bridgeid",for_bridge.getBridgeId());
+   data.put("uid",for_bridge.getUserId());
+
+   String what;
+   if (cmds.size() == 1) {
+      // single commands keep the original message format
+      what = "catre/command";
+      data.putAll(cmds.get(0).command_data);
+    }
+   else {
+      what = "catre/commands";
+      JSONArray arr = new JSONArray();
+      for (PendingCommand pc : cmds) {
+	 JSONObject obj = new JSONObject(pc.command_data);
+	 obj.put("id",pc.command_id);
+	 arr.put(obj);
+       }
+      data.put("commands",arr);
+    }
+
+   CatbridgeFactory.sendCedesMessageAsync(what,data,for_bridge)
+      .whenComplete((rslt,t) -> handleReply(cmds,rslt));
+}
+
+
+
+/********************************************************************************/
+/*										*/
+/*	Reply handling								*/
+/*										*/
+/********************************************************************************/
+
+private void handleReply(List<PendingCommand> cmds,JSONObject rslt)
+{
+   if (rslt == null) {
+      failAll(cmds,"CEDES not available");
+      return;
+    }
+
+   String sts = rslt.optString("status","OK");
+   JSONArray rslts = rslt.optJSONArray("results");
+   if (rslts == null || cmds.size() == 1) {
+      if (sts.equals("ERROR")) failAll(cmds,rslt.optString("reason","Command failed"));
+      else {
+	 for (PendingCommand pc : cmds) pc.command_result.complete(null);
+       }
+      return;
+    }
+
+   Map<Integer,JSONObject> byid = new HashMap<>();
+   for (int i = 0; i < rslts.length(); ++i) {
+      JSONObject r = rslts.optJSONObject(i);
+      if (r != null) byid.put(r.optInt("id",-1),r);
+    }
+
+   for (PendingCommand pc : cmds) {
+      JSONObject r = byid.get(pc.command_id);
+      String csts = (r == null ? sts : r.optString("status","OK"));
+      if (csts.equals("ERROR")) {
+	 String why = (r == null ? rslt : r).optString("reason","Command failed");
+	 CatreLog.logD("CATBRIDGE","Command " + pc.command_data.get("command") + " failed: " + why);
+	 pc.command_result.completeExceptionally(new CatreActionException(why));
+       }
+      else {
+	 pc.command_result.complete(null);
+       }
+    }
+}
+
+
+private void failAll(List<PendingCommand> cmds,String why)
+{
+   CatreLog.logD("CATBRIDGE","Commands failed for " + for_bridge.getName() + ": " + why);
+   for (PendingCommand pc : cmds) {
+      pc.command_result.completeExceptionally(new CatreActionException(why));
+    }
+}
+
+
+
+/********************************************************************************/
+/*										*/
+/*	Pending command 							*/
+/*										*/
+/********************************************************************************/
+
+private static class PendingCommand {
+
+   private int command_id;
+   private Map<String,Object> command_data;
+   private CompletableFuture<Void> command_result;
+
+   PendingCommand(int id,Map<String,Object> data) {
+      command_id = id;
+      command_data = data;
+      command_result = new CompletableFuture<>();
+    }
+
+}	// end of inner class PendingCommand
+
+
+
+}	// end of class CatbridgeCommandQueue
+
+
+
+
+/* end of CatbridgeCommandQueue.java */
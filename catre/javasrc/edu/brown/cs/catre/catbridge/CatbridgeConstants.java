@@ -46,6 +46,24 @@ String BRIDGE_HOST = "localhost";
 int CEDES_PORT = 3333;
 String CEDES_HOST = "sherpa.cs.brown.edu";
 
+long CEDES_CONNECT_TIMEOUT = 10000;	// ms to establish a connection to CEDES
+long CEDES_REQUEST_TIMEOUT = 30000;	// ms to wait for a CEDES reply
+
+
+
+/********************************************************************************/
+/*										*/
+/*	Listener Constants							*/
+/*										*/
+/********************************************************************************/
+
+int BRIDGE_THREADS = 8; 		// threads handling CEDES callbacks
+int BRIDGE_MAX_INFLIGHT = 64;		// max callbacks being handled at once
+
+long COMMAND_BATCH_WINDOW = 25; 	// ms to collect commands for one message
+int COMMAND_BATCH_SIZE = 32;		// send immediately once this many queued
+long COMMAND_WAIT_TIME = 60000; 	// ms to wait for an unbatched command
+
 
 
 /********************************************************************************/
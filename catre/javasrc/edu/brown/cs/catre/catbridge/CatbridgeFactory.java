@@ -37,23 +37,28 @@
 package edu.brown.cs.catre.catbridge;
 
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.OutputStream;
 import java.io.OutputStreamWriter;
-import java.net.ConnectException;
-import java.net.HttpURLConnection;
+import java.lang.reflect.Method;
 import java.net.ServerSocket;
 import java.net.Socket;
-import java.net.URI;
-import java.net.URISyntaxException;
-import java.net.URL;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Properties;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 import org.json.JSONArray;
 import org.json.JSONObject;
@@ -61,9 +66,11 @@ import org.json.JSONObject;
 import edu.brown.cs.catre.catre.CatreBridge;
 import edu.brown.cs.catre.catre.CatreController;
 import edu.brown.cs.catre.catre.CatreLog;
+import edu.brown.cs.catre.catre.CatreMetrics;
 import edu.brown.cs.catre.catre.CatreOauth;
 import edu.brown.cs.catre.catre.CatreUniverse;
 import edu.brown.cs.catre.catre.CatreUser;
+import edu.brown.cs.catre.catre.CatreUtil;
 import edu.brown.cs.ivy.file.IvyFile;
 
 public class CatbridgeFactory implements CatbridgeConstants
@@ -78,10 +85,15 @@ public class CatbridgeFactory implements CatbridgeConstants
 
 private List<CatbridgeBase> all_bridges;
 private Map<String,CatbridgeBase> actual_bridges;
+private Map<String,CatreUser> bridge_owners;
 private CatreController catre_control;
 private Set<String> active_keys;
+private ExecutorService client_executor;
+private Semaphore	inflight_limit;
+private CatbridgeStats	command_stats;
 
 private static String bridge_key = null;
+private static CatbridgeCedes cedes_client = null;
 
 
 
@@ -95,8 +107,14 @@ public CatbridgeFactory(CatreController cc)
 {
    catre_control = cc;
    all_bridges = new ArrayList<>();
-   actual_bridges = new HashMap<>();
+   actual_bridges = new ConcurrentHashMap<>();
+   bridge_owners = new ConcurrentHashMap<>();
    active_keys = new HashSet<>();
+   command_stats = new CatbridgeStats();
+
+   Properties p = loadProperties();
+   setupCedes(p);
+   setupListener(p);
 
    all_bridges.add(new CatbridgeGeneric(cc));
    all_bridges.add(new CatbridgeIQsign(cc));
@@ -138,7 +156,7 @@ public CatreBridge createBridge(String name,CatreUniverse cu)
 	 CatbridgeBase cb = base.createBridge(cu);
 	 if (cb == null) continue;
 	 CatbridgeBase oldcb = actual_bridges.put(cb.getBridgeId(),cb);
-         if (oldcb == null) {
+         if (oldcb != cb) {
             cb.registerBridge();
           }
 	 return cb;
@@ -149,6 +167,52 @@ public CatreBridge createBridge(String name,CatreUniverse cu)
 
 
 
+public JSONObject getCommandStatistics()
+{
+   return command_stats.toJson();
+}
+
+
+public void addMetrics(CatreMetrics m)
+{
+   command_stats.addMetrics(m);
+}
+
+
+
+/**
+ *	Remember which user owns each possible bridge id so that a message
+ *	for a universe that is not active yet (lazy start) can activate it.
+ **/
+
+public void noteUser(CatreUser cu)
+{
+   for (CatbridgeBase base : all_bridges) {
+      bridge_owners.put(CatbridgeBase.computeBridgeId(cu,base.getName()),cu);
+    }
+}
+
+
+private CatbridgeBase findBridge(String bid)
+{
+   CatbridgeBase cb = actual_bridges.get(bid);
+   if (cb != null) return cb;
+
+   CatreUser cu = bridge_owners.get(bid);
+   if (cu == null) {
+      CatreLog.logD("CATBRIDGE","Message for unknown bridge " + bid);
+      return null;
+    }
+
+   CatreLog.logD("CATBRIDGE","Activate universe for bridge " + bid + " of " +
+	 cu.getUserName());
+   catre_control.activateUniverse(cu.getUniverse());
+
+   return actual_bridges.get(bid);
+}
+
+
+
 public void setupForUser(CatreUser cu)
 {
    CatreLog.logD("CATBRIDGE","SETUP " + cu.getUserName());
@@ -175,57 +239,49 @@ public void setupForUser(CatreUser cu)
 /*										*/
 /********************************************************************************/
 
+private Properties loadProperties()
+{
+   Properties p = new Properties();
+   p.put("bridgethreads",Integer.toString(BRIDGE_THREADS));
+   p.put("bridgeinflight",Integer.toString(BRIDGE_MAX_INFLIGHT));
+   p.put("bridgevirtual","false");
+
+   return CatreUtil.loadProperties(catre_control,p);
+}
+
+
+
 static JSONObject sendCedesMessage(String cmd,Map<String,Object> data,CatbridgeBase bridge)
 {
    if (data == null) data = new HashMap<>();
    if (!cmd.contains("/")) cmd = "catre/" + cmd;
    JSONObject obj = new JSONObject(data);
-   
-   if (bridge != null) {
-      data.put("bridgeid",bridge.getBridgeId());
-      data.put("bridge",bridge.getName().toLowerCase());
-    }
 
-   try {
-      String url = "https://" + CEDES_HOST + ":" + CEDES_PORT + "/" + cmd;
-      CatreLog.logD("CATBRIDGE","Send to CEDES: " + url + " " + obj.toString(2));
-      URL u = new URI(url).toURL();
-      HttpURLConnection hc = (HttpURLConnection) u.openConnection();
-      hc.setUseCaches(false);
-      hc.setRequestMethod("POST");
-      hc.addRequestProperty("content-type","application/json");
-      hc.addRequestProperty("accept","application/json");
-      String key = CatbridgeFactory.getBridgeKey();
-      if (key != null) {
-	 hc.addRequestProperty("Authorization","Bearer " + key);
-	 data.put("bearer_token",key);
-       }
-      hc.setDoOutput(true);
-      hc.setDoInput(true);
+   return getCedesClient().send(cmd,obj,getBridgeKey());
+}
+
+
+static CompletableFuture<JSONObject> sendCedesMessageAsync(String cmd,Map<String,Object> data,
+      CatbridgeBase bridge)
+{
+   if (data == null) data = new HashMap<>();
+   if (!cmd.contains("/")) cmd = "catre/" + cmd;
+   JSONObject obj = new JSONObject(data);
 
-      hc.connect();
+   return getCedesClient().sendAsync(cmd,obj,getBridgeKey());
+}
 
-      OutputStream ots = hc.getOutputStream();
-      ots.write(obj.toString(2).getBytes());
 
-      InputStream ins = hc.getInputStream();
-      String rslts = IvyFile.loadFile(ins);
-      JSONObject jrslt = new JSONObject(rslts);
-         CatreLog.logD("CATBRIDGE","CEDES RETURNED " + jrslt.toString(2));
-      return jrslt;
-    }
-   catch (ConnectException e) {
-      CatreLog.logD("CATBRIDGE","CEDES NO RESULT: Waiting for CEDES to allow connections");
-    }
-   catch (IOException | URISyntaxException e) {
-      CatreLog.logE("CATBRIDGE","Problem sending command to CEDES",e);
-      JSONObject rslt = new JSONObject();
-      rslt.put("status","ERROR");
-      rslt.put("reason","Bad connection to CEDES");
-      return rslt;
-    }
+private static synchronized void setupCedes(Properties p)
+{
+   cedes_client = new CatbridgeCedes(p);
+}
 
-   return null;
+
+private static synchronized CatbridgeCedes getCedesClient()
+{
+   if (cedes_client == null) cedes_client = new CatbridgeCedes(new Properties());
+   return cedes_client;
 }
 
 
@@ -289,36 +345,111 @@ private class ServerThread extends Thread {
 /*										*/
 /********************************************************************************/
 
+/**
+ *	Each CEDES callback is handled on a bounded pool (or a virtual thread
+ *	if bridgevirtual is set and supported) rather than its own thread.  At
+ *	most bridgeinflight callbacks are handled at once; when that many are
+ *	active the server thread stops accepting and CEDES waits in the backlog.
+ **/
+
+private void setupListener(Properties p)
+{
+   int nth = BRIDGE_THREADS;
+   int max = BRIDGE_MAX_INFLIGHT;
+   try {
+      nth = Integer.parseInt(p.getProperty("bridgethreads"));
+      max = Integer.parseInt(p.getProperty("bridgeinflight"));
+    }
+   catch (NumberFormatException e) {
+      CatreLog.logE("CATBRIDGE","Bad bridge listener property",e);
+    }
+   nth = Math.max(nth,1);
+   max = Math.max(max,nth);
+
+   inflight_limit = new Semaphore(max);
+   client_executor = null;
+   if (Boolean.parseBoolean(p.getProperty("bridgevirtual"))) {
+      client_executor = createVirtualExecutor();
+    }
+   if (client_executor == null) {
+      ThreadPoolExecutor tpe = new ThreadPoolExecutor(nth,nth,60,TimeUnit.SECONDS,
+	    new LinkedBlockingQueue<>(),new ClientThreadFactory());
+      tpe.allowCoreThreadTimeOut(true);
+      client_executor = tpe;
+    }
+
+   CatreLog.logI("CATBRIDGE","Bridge listener: " +
+	 (client_executor instanceof ThreadPoolExecutor ? nth + " threads" : "virtual threads") +
+	 ", " + max + " in flight");
+}
+
+
+private static ExecutorService createVirtualExecutor()
+{
+   // virtual threads are only available on newer JVMs
+   try {
+      Method m = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+      return (ExecutorService) m.invoke(null);
+    }
+   catch (Throwable t) {
+      CatreLog.logI("CATBRIDGE","Virtual threads not available; using thread pool");
+    }
+
+   return null;
+}
+
+
 private void createClient(Socket s)
 {
-   ClientThread cthread = new ClientThread(s);
-   cthread.start();
+   inflight_limit.acquireUninterruptibly();
+
+   try {
+      client_executor.execute(new ClientHandler(s));
+    }
+   catch (RejectedExecutionException e) {
+      inflight_limit.release();
+      CatreLog.logE("CATBRIDGE","Bridge callback rejected",e);
+      try {
+	 s.close();
+       }
+      catch (IOException ex) { }
+    }
 }
 
 
-private class ClientThread extends Thread {
+private class ClientHandler implements Runnable {
 
    private Socket client_socket;
 
-   ClientThread(Socket s) {
-      super("Catbridge_Listener_" + s.getRemoteSocketAddress());
+   ClientHandler(Socket s) {
       client_socket = s;
       CatreLog.logD("CATBRIDGE","CLIENT Started " + s.getRemoteSocketAddress());
     }
 
    @Override public void run() {
+      try {
+	 handleClient();
+       }
+      finally {
+	 inflight_limit.release();
+       }
+    }
+
+   private void handleClient() {
+      long start = System.nanoTime();
+      String cmd = null;
       JSONObject result = new JSONObject();
       try {
          String args = IvyFile.loadFile(client_socket.getInputStream());
          JSONObject argobj = new JSONObject(args);
-         CatreLog.logD("CATBRIDGE","BRIDGE COMMAND: " + argobj.toString(2));
+         CatreLog.logD("CATBRIDGE",() -> "BRIDGE COMMAND: " + argobj.toString(2));
          
          result.put("status","OK");
-         String cmd = argobj.getString("command");
+         cmd = argobj.getString("command");
          CatbridgeBase bridge = null;
          String bid = argobj.optString("bid",null);
          if (bid != null) {
-            bridge = actual_bridges.get(bid);
+            bridge = findBridge(bid);
           }
          CatreOauth oauth = null;
          if (cmd.startsWith("OAUTH_")) {
@@ -386,16 +517,53 @@ private class ClientThread extends Thread {
        }
    
       try {
-         CatreLog.logD("CATBRIDGE","SEND reply to CEDES: " + result.toString(2));
+         String reply = result.toString(2);
+         CatreLog.logD("CATBRIDGE",() -> "SEND reply to CEDES: " + reply);
          OutputStreamWriter otw = new OutputStreamWriter(client_socket.getOutputStream());
-         otw.write(result.toString(2));
+         otw.write(reply);
          otw.close();
        }
       catch (IOException e) {
-        
+         try {
+            client_socket.close();
+          }
+         catch (IOException ex) { }
        }
+
+      command_stats.record(cmd,start,!"ERROR".equals(result.optString("status")));
     }
 
+}	// end of inner class ClientHandler
+
+
+
+private static class ClientThreadFactory implements ThreadFactory {
+
+   private int thread_counter;
+
+   ClientThreadFactory() {
+      thread_counter = 0;
+    }
+
+   @Override public synchronized Thread newThread(Runnable r) {
+      return new ClientThread(++thread_counter,r);
+    }
+
+}	// end of inner class ClientThreadFactory
+
+
+private static class ClientThread extends Thread implements CatreLog.LoggerThread {
+
+   private int thread_count;
+
+   ClientThread(int ct,Runnable r) {
+      super(r,"Catbridge_Listener_" + ct);
+      thread_count = ct;
+      setDaemon(true);
+    }
+
+   @Override public int getLogId()			{ return 2000 + thread_count; }
+
 }	// end of inner class ClientThread
 
 
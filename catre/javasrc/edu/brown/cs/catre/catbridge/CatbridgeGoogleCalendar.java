@@ -51,7 +51,6 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.TimerTask;
 
 import org.json.JSONArray;
 import org.json.JSONObject;
@@ -86,6 +85,7 @@ import edu.brown.cs.catre.catre.CatreDevice;
 import edu.brown.cs.catre.catre.CatreLog;
 import edu.brown.cs.catre.catre.CatreParameter;
 import edu.brown.cs.catre.catre.CatreStore;
+import edu.brown.cs.catre.catre.CatreTimer;
 import edu.brown.cs.catre.catre.CatreUniverse;
 
 /**
@@ -608,6 +608,8 @@ private class CalEvent implements CatreCalendarEvent {
 
 private static class GoogleCalendarDevice extends CatdevDevice {
 
+   private CatreTimer check_timer;
+
    GoogleCalendarDevice(CatbridgeGoogleCalendar bridge) {
       super(bridge.getUniverse(),bridge);
    
@@ -661,7 +663,10 @@ private static class GoogleCalendarDevice extends CatdevDevice {
       CatreLog.logD("CATBRIDGE","Schedule Calendar check for " + getUniverse().getName() +
             " " + delay + " at " + (new Date(now+delay).toString()));
    
-      getUniverse().getCatre().schedule(new CheckTimer(this),delay);
+      synchronized (this) {
+         if (check_timer != null) check_timer.cancel();
+         check_timer = getUniverse().getCatre().scheduleTimer(new CheckTimer(this),delay);
+       }
    
       CatreParameter cp = findParameter("EVENTS");
       Object val = getParameterValue(cp);
@@ -687,7 +692,7 @@ private static class GoogleCalendarDevice extends CatdevDevice {
 /*										*/
 /********************************************************************************/
 
-private static class CheckTimer extends TimerTask {
+private static class CheckTimer implements Runnable {
 
    private GoogleCalendarDevice for_device;
 
@@ -0,0 +1,195 @@
+/********************************************************************************/
+/*										*/
+/*		CatbridgeStats.java						*/
+/*										*/
+/*	Latency statistics for bridge commands				*/
+/*										*/
+/********************************************************************************/
+/*	Copyright 2023 Brown University -- Steven P. Reiss			*/
+/*********************************************************************************
+ *  Copyright 2023, Brown University, Providence, RI.				 *
+ *										 *
+ *			  All Rights Reserved					 *
+ *										 *
+ *  Permission to use, copy, modify, and distribute this software and its	 *
+ *  documentation for any purpose other than its incorporation into a		 *
+ *  commercial product is hereby granted without fee, provided that the 	 *
+ *  above copyright notice appear in all copies and that both that		 *
+ *  copyright notice and this permission notice appear in supporting		 *
+ *  documentation, and that the name of Brown University not be used in 	 *
+ *  advertising or publicity pertaining to distribution of the software 	 *
+ *  without specific, written prior permission. 				 *
+ *										 *
+ *  BROWN UNIVERSITY DISCLAIMS ALL WARRANTIES WITH REGARD TO THIS		 *
+ *  SOFTWARE, INCLUDING ALL IMPLIED WARRANTIES OF MERCHANTABILITY AND		 *
+ *  FITNESS FOR ANY PARTICULAR PURPOSE.  IN NO EVENT SHALL BROWN UNIVERSITY	 *
+ *  BE LIABLE FOR ANY SPECIAL, INDIRECT OR CONSEQUENTIAL DAMAGES OR ANY 	 *
+ *  DAMAGES WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS,		 *
+ *  WHETHER IN AN ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS		 *
+ *  ACTION, ARISING OUT OF OR IN CONNECTION WITH THE USE OR PERFORMANCE 	 *
+ *  OF THIS SOFTWARE.								 *
+ *										 *
+ ********************************************************************************/
+
+
+
+package edu.brown.cs.catre.catbridge;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import edu.brown.cs.catre.catre.CatreHistogram;
+import edu.brown.cs.catre.catre.CatreMetrics;
+
+/**
+ *	Keeps a latency histogram per command name, using the same lock free
+ *	buckets as the rule engine timings.  Only the commands the bridge
+ *	handler knows get their own entry; anything else is counted as OTHER
+ *	so a misbehaving client can't add entries or metric labels.
+ **/
+
+class CatbridgeStats
+{
+
+
+/********************************************************************************/
+/*										*/
+/*	Private Storage 							*/
+/*										*/
+/********************************************************************************/
+
+private Map<String,CommandStats> command_stats;
+
+private static final long MS = 1000000;
+
+private static final String OTHER_COMMAND = "OTHER";
+private static final String [] KNOWN_COMMANDS = {
+   "INITIALIZE", "DEVICES", "EVENT",
+   "OAUTH_GETTOKEN", "OAUTH_SAVETOKEN", "OAUTH_REVOKETOKEN", "OAUTH_SAVECODE",
+   "OAUTH_GETCODE", "OAUTH_REVOKE", "OAUTH_GETREFRESH", "OAUTH_VERIFYSCOPE",
+   "OAUTH_LOGIN",
+};
+
+
+
+/********************************************************************************/
+/*										*/
+/*	Constructors								*/
+/*										*/
+/********************************************************************************/
+
+CatbridgeStats()
+{
+   // fixed after construction, so reads need no locking
+   command_stats = new HashMap<>();
+   for (String cmd : KNOWN_COMMANDS) command_stats.put(cmd,new CommandStats());
+   command_stats.put(OTHER_COMMAND,new CommandStats());
+}
+
+
+
+/********************************************************************************/
+/*										*/
+/*	Recording methods							*/
+/*										*/
+/********************************************************************************/
+
+/**
+ *	Record a command; start is a value from System.nanoTime().
+ **/
+
+void record(String cmd,long start,boolean ok)
+{
+   CommandStats cs = (cmd == null ? null : command_stats.get(cmd));
+   if (cs == null) cs = command_stats.get(OTHER_COMMAND);
+   cs.record(System.nanoTime() - start,ok);
+}
+
+
+
+/********************************************************************************/
+/*										*/
+/*	Access methods								*/
+/*										*/
+/********************************************************************************/
+
+JSONObject toJson()
+{
+   JSONObject rslt = new JSONObject();
+   Map<String,CommandStats> sorted = new TreeMap<>(command_stats);
+   for (Map.Entry<String,CommandStats> ent : sorted.entrySet()) {
+      rslt.put(ent.getKey(),ent.getValue().toJson());
+    }
+   return rslt;
+}
+
+
+void addMetrics(CatreMetrics m)
+{
+   Map<String,CommandStats> sorted = new TreeMap<>(command_stats);
+   for (Map.Entry<String,CommandStats> ent : sorted.entrySet()) {
+      CommandStats cs = ent.getValue();
+      m.addHistogram("catre_bridge_command_seconds",
+	    "Time to handle commands from the bridge server",
+	    cs.command_times,"command",ent.getKey());
+      m.addCounter("catre_bridge_command_errors_total",
+	    "Bridge commands that returned an error",
+	    cs.error_count.get(),"command",ent.getKey());
+    }
+}
+
+
+
+/********************************************************************************/
+/*										*/
+/*	Per-command statistics							*/
+/*										*/
+/********************************************************************************/
+
+private static class CommandStats {
+
+   private CatreHistogram command_times;
+   private AtomicLong error_count;
+   private AtomicLong max_time;
+
+   CommandStats() {
+      command_times = new CatreHistogram();
+      error_count = new AtomicLong();
+      max_time = new AtomicLong();
+    }
+
+   void record(long nanos,boolean ok) {
+      command_times.record(nanos);
+      max_time.accumulateAndGet(nanos,Math::max);
+      if (!ok) error_count.incrementAndGet();
+    }
+
+   JSONObject toJson() {
+      JSONArray buckets = new JSONArray();
+      for (long ct : command_times.getBucketCounts()) {
+	 buckets.put(ct);
+       }
+      JSONObject rslt = new JSONObject();
+      rslt.put("count",command_times.getCount());
+      rslt.put("errors",error_count.get());
+      rslt.put("totalTime",command_times.getTotalTime() / MS);
+      rslt.put("maxTime",max_time.get() / MS);
+      rslt.put("buckets",buckets);
+      return rslt;
+    }
+
+}	// end of inner class CommandStats
+
+
+
+}	// end of class CatbridgeStats
+
+
+
+
+/* end of CatbridgeStats.java */
@@ -65,6 +65,19 @@ long T_HOUR = 60 * T_MINUTE;
 long T_DAY = 24 * T_HOUR;
 
 
+
+/********************************************************************************/
+/*										*/
+/*	History Constants							*/
+/*										*/
+/********************************************************************************/
+
+int	HISTORY_SIZE = 512;			// values kept in memory per parameter
+String	HISTORY_DIRECTORY = "history";		// segments written only if this exists
+int	HISTORY_MAX_SEGMENTS = 256;		// segment files kept per parameter
+int	HISTORY_MAX_PENDING = 8;		// unwritten segments kept in memory
+
+
 }       // end of interface CatdevConstants
 
 
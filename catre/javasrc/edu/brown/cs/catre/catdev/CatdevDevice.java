@@ -36,15 +36,18 @@
 
 package edu.brown.cs.catre.catdev;
 
+import java.io.File;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Iterator;
 import java.util.List;
 import java.util.ListIterator;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import edu.brown.cs.catre.catre.CatreActionException;
 import edu.brown.cs.catre.catre.CatreBridge;
+import edu.brown.cs.catre.catre.CatreController;
 import edu.brown.cs.catre.catre.CatreDescribableBase;
 import edu.brown.cs.catre.catre.CatreDevice;
 import edu.brown.cs.catre.catre.CatreDeviceListener;
@@ -74,10 +77,12 @@ public abstract class CatdevDevice extends CatreDescribableBase implements Catre
 protected CatreUniverse for_universe;
 private Boolean 	is_enabled;
 private SwingEventListenerList<CatreDeviceListener> device_handlers;
+private Map<String,SwingEventListenerList<CatreDeviceListener>> parameter_handlers;
 private List<CatreParameter> parameter_set;
 private List<CatreTransition> transition_set;
 private CatreBridge	for_bridge;
 private String		device_uid;
+private Map<String,CatdevHistory> parameter_history;
 
 
 
@@ -110,6 +115,8 @@ private void initialize(CatreUniverse uu)
 {
    for_universe = uu;
    device_handlers = new SwingEventListenerList<>(CatreDeviceListener.class);
+   parameter_handlers = new ConcurrentHashMap<>();
+   parameter_history = new ConcurrentHashMap<>();
 
    device_uid = CatreUtil.randomString(24);
    is_enabled = true;
@@ -352,10 +359,33 @@ public CatreTransition addTransition(CatreTransition t)
 }
 
 
+@Override public void addParameterListener(CatreParameter p,CatreDeviceListener hdlr)
+{
+   if (p == null) return;
+   
+   SwingEventListenerList<CatreDeviceListener> lst = parameter_handlers.computeIfAbsent(p.getName(),
+         (String k) -> new SwingEventListenerList<>(CatreDeviceListener.class));
+   lst.add(hdlr);
+}
+
+
+@Override public void removeParameterListener(CatreParameter p,CatreDeviceListener hdlr)
+{
+   if (p == null) return;
+   
+   SwingEventListenerList<CatreDeviceListener> lst = parameter_handlers.get(p.getName());
+   if (lst != null) lst.remove(hdlr);
+}
+
+
 protected void fireChanged(CatreParameter p)
 {
-   CatreLog.logD("CATDEV","Handle device changed " + 
-         device_handlers.getListenerCount());
+   SwingEventListenerList<CatreDeviceListener> phdlrs =
+      (p == null ? null : parameter_handlers.get(p.getName()));
+   
+   CatreLog.logD("CATDEV",() -> "Handle device changed " + 
+         device_handlers.getListenerCount() + " " +
+         (phdlrs == null ? 0 : phdlrs.getListenerCount()));
    
    for_universe.startUpdate();
    try {
@@ -367,6 +397,16 @@ protected void fireChanged(CatreParameter p)
 	    CatreLog.logE("CATMODEL","Problem with device handler",t);
 	  }
        }
+      if (phdlrs != null) {
+         for (CatreDeviceListener hdlr : phdlrs) {
+            try {
+               hdlr.stateChanged(p);
+             }
+            catch (Throwable t) {
+               CatreLog.logE("CATMODEL","Problem with parameter handler",t);
+             }
+          }
+       }
     }
    finally {
       for_universe.endUpdate();
@@ -422,20 +462,21 @@ protected void localStopDevice()			{ }
 
 
 
-@Override public Object getParameterValue(CatreParameter p)
+@Override public Object getParameterValue(CatreParameter param)
 {
    if (!isEnabled()) return null;
 
    checkCurrentState();
    
-   if (!parameter_set.contains(p)) {
+   boolean known = parameter_set.contains(param);
+   if (!known) {
       CatreLog.logX("CATDEV","Attempt to get invalid parameter " +
-            p + " " + p.hashCode());
-      p = addParameter(p);
+            param + " " + param.hashCode());
     }
+   CatreParameter p = (known ? param : addParameter(param));
    Object v = for_universe.getValue(p);
    
-   CatreLog.logD("CATDEV","Get parameter value " +
+   CatreLog.logD("CATDEV",() -> "Get parameter value " +
          getName() + "." + p + " " + p.hashCode() + " = " + v);
    
    return v;
@@ -443,20 +484,21 @@ protected void localStopDevice()			{ }
 
 
 
-@Override public void setParameterValue(CatreParameter p,Object val)
+@Override public void setParameterValue(CatreParameter param,Object value)
 {
-   CatreLog.logD("CATDEV","SET PARAMETER " + p.getName() + " " + val + " " +
+   CatreLog.logD("CATDEV",() -> "SET PARAMETER " + param.getName() + " " + value + " " +
          getName() + " " +
-         (val == null ? "?" : val.getClass()) + " " + isEnabled());
+         (value == null ? "?" : value.getClass()) + " " + isEnabled());
    
    if (!isEnabled()) return;
    
-   if (!parameter_set.contains(p)) {
+   boolean known = parameter_set.contains(param);
+   if (!known) {
       CatreLog.logD("CATDEV","Attempt to set invalid parameter");
-      p = addParameter(p);
     }
+   CatreParameter p = (known ? param : addParameter(param));
    
-   val = p.normalize(val);
+   Object val = p.normalize(value);
 
    Object prev = getParameterValue(p);
    if ((val == null && prev == null) || (val != null && val.equals(prev))) {
@@ -465,8 +507,9 @@ protected void localStopDevice()			{ }
     }
 
    for_universe.setValue(p,val);
+   recordHistory(p,val);
 
-   CatreLog.logI("CATDEV","Set " + getName() + "." + p + 
+   CatreLog.logI("CATDEV",() -> "Set " + getName() + "." + p + 
          " " + p.hashCode() + " = " + getParameterValue(p));
 
    fireChanged(p);
@@ -474,6 +517,43 @@ protected void localStopDevice()			{ }
 
 
 
+@Override public Map<String,Object> getParameterHistory(CatreParameter p,
+      long from,long to,int buckets)
+{
+   CatdevHistory hist = parameter_history.get(p.getName());
+   if (hist == null) hist = new CatdevHistory(p,null,null);
+
+   Map<String,Object> rslt = hist.getHistory(from,to,buckets);
+   rslt.put("DEVICE",getDeviceId());
+
+   return rslt;
+}
+
+
+private void recordHistory(CatreParameter p,Object val)
+{
+   CatdevHistory hist = parameter_history.computeIfAbsent(p.getName(),
+	 (k) -> new CatdevHistory(p,getHistoryDirectory(),for_universe.getCatre()));
+   hist.record(for_universe.getTime(),val);
+}
+
+
+private File getHistoryDirectory()
+{
+   CatreController cc = for_universe.getCatre();
+   if (cc == null) return null;
+   File f1 = cc.findBaseDirectory();
+   if (f1 == null) return null;
+   File f2 = new File(f1,HISTORY_DIRECTORY);
+   if (!f2.isDirectory()) return null;
+   File f3 = new File(f2,for_universe.getDataUID());
+   File f4 = new File(f3,getDeviceId().replaceAll("[^A-Za-z0-9_]","_"));
+
+   return f4;
+}
+
+
+
 protected void checkCurrentState()		{ updateCurrentState(); }
 protected void updateCurrentState()		{ }
 
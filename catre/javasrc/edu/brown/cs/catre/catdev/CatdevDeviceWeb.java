@@ -36,7 +36,7 @@
 package edu.brown.cs.catre.catdev;
 
 import java.util.Map;
-import java.util.TimerTask;
+import java.util.concurrent.ScheduledFuture;
 
 import edu.brown.cs.catre.catre.CatreStore;
 import edu.brown.cs.catre.catre.CatreUniverse;
@@ -51,7 +51,7 @@ public abstract class CatdevDeviceWeb extends CatdevDevice
 /*										*/
 /********************************************************************************/
 
-private TimerTask timer_task;
+private ScheduledFuture<?> timer_task;
 
 private long	poll_rate;
 private long	cache_rate;
@@ -178,18 +178,17 @@ public synchronized void setPolling(long time)
 {
    if (poll_rate == time && timer_task != null) return;
 
-   if (timer_task != null) timer_task.cancel();
+   if (timer_task != null) timer_task.cancel(false);
    timer_task = null;
 
    poll_rate = time;
    if (time == 0) return;
 
-   timer_task = new Updater();
-   getCatre().schedule(timer_task,0,poll_rate);
+   timer_task = getCatre().schedule(new Updater(),0,poll_rate);
 }
 
 
-private class Updater extends TimerTask {
+private class Updater implements Runnable {
 
    @Override public void run() {
       updateCurrentState();
@@ -0,0 +1,589 @@
+/********************************************************************************/
+/*                                                                              */
+/*		CatdevHistory.java						*/
+/*                                                                              */
+/*	Bounded history of the values of one device parameter			*/
+/*                                                                              */
+/********************************************************************************/
+/*	Copyright 2023 Brown University -- Steven P. Reiss			*/
+/*********************************************************************************
+ *  Copyright 2023, Brown University, Providence, RI.				 *
+ *										 *
+ *			  All Rights Reserved					 *
+ *										 *
+ *  Permission to use, copy, modify, and distribute this software and its	 *
+ *  documentation for any purpose other than its incorporation into a		 *
+ *  commercial product is hereby granted without fee, provided that the 	 *
+ *  above copyright notice appear in all copies and that both that		 *
+ *  copyright notice and this permission notice appear in supporting		 *
+ *  documentation, and that the name of Brown University not be used in 	 *
+ *  advertising or publicity pertaining to distribution of the software 	 *
+ *  without specific, written prior permission. 				 *
+ *										 *
+ *  BROWN UNIVERSITY DISCLAIMS ALL WARRANTIES WITH REGARD TO THIS		 *
+ *  SOFTWARE, INCLUDING ALL IMPLIED WARRANTIES OF MERCHANTABILITY AND		 *
+ *  FITNESS FOR ANY PARTICULAR PURPOSE.  IN NO EVENT SHALL BROWN UNIVERSITY	 *
+ *  BE LIABLE FOR ANY SPECIAL, INDIRECT OR CONSEQUENTIAL DAMAGES OR ANY 	 *
+ *  DAMAGES WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS,		 *
+ *  WHETHER IN AN ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS		 *
+ *  ACTION, ARISING OUT OF OR IN CONNECTION WITH THE USE OR PERFORMANCE 	 *
+ *  OF THIS SOFTWARE.								 *
+ *										 *
+ ********************************************************************************/
+
+
+
+
+
+
+
+
+package edu.brown.cs.catre.catdev;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import edu.brown.cs.catre.catre.CatreController;
+import edu.brown.cs.catre.catre.CatreLog;
+import edu.brown.cs.catre.catre.CatreParameter;
+
+/**
+ *	Ring buffer of timestamped values for a single parameter.  Numeric and
+ *	boolean values are kept as doubles; other values keep their external
+ *	string.  Before entries are overwritten the full buffer is copied
+ *	out and, if a segment directory exists, written as a compressed
+ *	segment file by a background task so that older history can still be
+ *	queried.  Copies stay in memory until their file is written; only the
+ *	most recent HISTORY_MAX_SEGMENTS files are kept.
+ **/
+
+class CatdevHistory implements CatdevConstants
+{
+
+
+/********************************************************************************/
+/*										*/
+/*	Private Storage 							*/
+/*										*/
+/********************************************************************************/
+
+private CatreParameter	for_parameter;
+private File		segment_directory;
+private CatreController for_catre;
+private long [] 	value_times;
+private double []	value_numbers;
+private String []	value_labels;
+private int		next_index;
+private int		value_count;
+private int		unsaved_count;
+private LinkedList<Segment> pending_segments;
+private List<SegmentFile> segment_files;
+private boolean 	writer_active;
+private Map<File,List<HistoryPoint>> segment_cache;
+
+private static final String SEGMENT_SUFFIX = ".seg.gz";
+private static final int    SEGMENT_CACHE_SIZE = 2;
+
+
+
+/********************************************************************************/
+/*										*/
+/*	Constructors								*/
+/*										*/
+/********************************************************************************/
+
+CatdevHistory(CatreParameter cp,File dir,CatreController cc)
+{
+   for_parameter = cp;
+   segment_directory = dir;
+   for_catre = cc;
+   value_times = new long[HISTORY_SIZE];
+   value_numbers = new double[HISTORY_SIZE];
+   value_labels = null;
+   next_index = 0;
+   value_count = 0;
+   unsaved_count = 0;
+   pending_segments = new LinkedList<>();
+   segment_files = null;
+   writer_active = false;
+   segment_cache = new LinkedHashMap<>(4,0.75f,true) {
+      private static final long serialVersionUID = 1;
+      @Override protected boolean removeEldestEntry(Map.Entry<File,List<HistoryPoint>> e) {
+	 return size() > SEGMENT_CACHE_SIZE;
+       }
+    };
+}
+
+
+
+/********************************************************************************/
+/*										*/
+/*	Recording methods							*/
+/*										*/
+/********************************************************************************/
+
+void record(long when,Object val)
+{
+   double dv = Double.NaN;
+   String lbl = null;
+   if (val instanceof Number) dv = ((Number) val).doubleValue();
+   else if (val instanceof Boolean) dv = ((Boolean) val) ? 1 : 0;
+   else if (val != null) lbl = for_parameter.unnormalize(val);
+
+   boolean write = false;
+   synchronized (this) {
+      if (value_count == HISTORY_SIZE && unsaved_count == HISTORY_SIZE) {
+	 write = saveSegment();
+       }
+
+      if (lbl != null && value_labels == null) value_labels = new String[HISTORY_SIZE];
+
+      value_times[next_index] = when;
+      value_numbers[next_index] = dv;
+      if (value_labels != null) value_labels[next_index] = lbl;
+      next_index = (next_index + 1) % HISTORY_SIZE;
+      if (value_count < HISTORY_SIZE) ++value_count;
+      if (unsaved_count < HISTORY_SIZE) ++unsaved_count;
+    }
+
+   if (write) {
+      if (for_catre == null) writeSegments();
+      else for_catre.submit(this::writeSegments);
+    }
+}
+
+
+
+/********************************************************************************/
+/*										*/
+/*	Query methods								*/
+/*										*/
+/********************************************************************************/
+
+/**
+ *	Return the values recorded between from and to.  If buckets is
+ *	positive, the range is divided into that many intervals and each is
+ *	summarized by count, min, max, average, and last value; otherwise
+ *	the individual points are returned.
+ **/
+
+Map<String,Object> getHistory(long from,long to,int buckets)
+{
+   // entries already written to a segment are read back from there
+   List<HistoryPoint> pts = new ArrayList<>();
+   List<File> files = new ArrayList<>();
+   if (segment_directory != null) loadSegmentFiles();
+   synchronized (this) {
+      // files and pending copies are taken together so a concurrent write
+      // cannot move a segment between them unseen
+      if (segment_files != null) {
+	 for (SegmentFile sf : segment_files) {
+	    if (sf.overlaps(from,to)) files.add(sf.getFile());
+	  }
+       }
+      for (Segment seg : pending_segments) {
+	 seg.addPoints(from,to,pts);
+       }
+      int ct = (segment_directory == null ? value_count : unsaved_count);
+      int start = (next_index - ct + HISTORY_SIZE) % HISTORY_SIZE;
+      for (int i = 0; i < ct; ++i) {
+	 int idx = (start + i) % HISTORY_SIZE;
+	 long t = value_times[idx];
+	 if (t < from || t > to) continue;
+	 String lbl = (value_labels == null ? null : value_labels[idx]);
+	 pts.add(new HistoryPoint(t,value_numbers[idx],lbl));
+       }
+    }
+   if (!files.isEmpty()) {
+      pts.addAll(0,loadSegments(files,from,to));
+    }
+
+   Map<String,Object> rslt = new HashMap<>();
+   rslt.put("PARAMETER",for_parameter.getName());
+   rslt.put("FROM",from);
+   rslt.put("TO",to);
+
+   if (buckets <= 0) {
+      List<Object> plst = new ArrayList<>();
+      for (HistoryPoint hp : pts) plst.add(hp.toJson());
+      rslt.put("POINTS",plst);
+      return rslt;
+    }
+
+   long width = Math.max(1,(to - from + buckets) / buckets);
+   List<Object> blst = new ArrayList<>();
+   int pidx = 0;
+   for (int i = 0; i < buckets; ++i) {
+      long bstart = from + i * width;
+      long bend = Math.min(to,bstart + width - 1);
+      int ct = 0;
+      int nct = 0;
+      double min = 0;
+      double max = 0;
+      double tot = 0;
+      HistoryPoint last = null;
+      while (pidx < pts.size() && pts.get(pidx).getTime() <= bend) {
+	 HistoryPoint hp = pts.get(pidx++);
+	 ++ct;
+	 last = hp;
+	 double v = hp.getNumber();
+	 if (Double.isNaN(v)) continue;
+	 if (nct == 0 || v < min) min = v;
+	 if (nct == 0 || v > max) max = v;
+	 tot += v;
+	 ++nct;
+       }
+      Map<String,Object> bkt = new HashMap<>();
+      bkt.put("START",bstart);
+      bkt.put("END",bend);
+      bkt.put("COUNT",ct);
+      if (nct > 0) {
+	 bkt.put("MIN",min);
+	 bkt.put("MAX",max);
+	 bkt.put("AVG",tot / nct);
+       }
+      if (last != null) bkt.put("LAST",last.getValue());
+      blst.add(bkt);
+    }
+   rslt.put("BUCKETS",blst);
+
+   return rslt;
+}
+
+
+
+/********************************************************************************/
+/*										*/
+/*	Segment methods 							*/
+/*										*/
+/********************************************************************************/
+
+/**
+ *	Copy the full ring into a pending segment.  Called with the lock
+ *	held; returns true if a writer needs to be started.
+ **/
+
+private boolean saveSegment()
+{
+   unsaved_count = 0;
+   if (segment_directory == null) return false;
+
+   long [] times = new long[value_count];
+   double [] nums = new double[value_count];
+   String [] lbls = new String[value_count];
+   int start = (next_index - value_count + HISTORY_SIZE) % HISTORY_SIZE;
+   for (int i = 0; i < value_count; ++i) {
+      int idx = (start + i) % HISTORY_SIZE;
+      times[i] = value_times[idx];
+      nums[i] = value_numbers[idx];
+      lbls[i] = (value_labels == null ? null : value_labels[idx]);
+    }
+
+   pending_segments.add(new Segment(times,nums,lbls));
+   if (pending_segments.size() > HISTORY_MAX_PENDING) {
+      Segment seg = pending_segments.removeFirst();
+      CatreLog.logE("CATDEV","Dropping unwritten history for " +
+	    for_parameter.getName() + " from " + seg.getStartTime());
+    }
+
+   if (writer_active) return false;
+   writer_active = true;
+   return true;
+}
+
+
+/**
+ *	Write pending segments in order.  A segment is only removed from
+ *	memory once its file has been written; on failure the rest are
+ *	left pending and retried at the next rollover.
+ **/
+
+private void writeSegments()
+{
+   loadSegmentFiles();
+
+   for ( ; ; ) {
+      Segment seg = null;
+      synchronized (this) {
+	 seg = pending_segments.peekFirst();
+	 if (seg == null) {
+	    writer_active = false;
+	    return;
+	  }
+       }
+
+      File f = writeSegment(seg);
+
+      List<File> prune = new ArrayList<>();
+      synchronized (this) {
+	 if (f == null) {
+	    writer_active = false;
+	    return;
+	  }
+	 pending_segments.remove(seg);
+	 segment_files.add(new SegmentFile(f,seg.getStartTime(),seg.getEndTime()));
+	 while (segment_files.size() > HISTORY_MAX_SEGMENTS) {
+	    prune.add(segment_files.remove(0).getFile());
+	  }
+       }
+      for (File pf : prune) {
+	 synchronized (segment_cache) {
+	    segment_cache.remove(pf);
+	  }
+	 if (!pf.delete()) {
+	    CatreLog.logD("CATDEV","Problem removing history segment " + pf);
+	  }
+       }
+    }
+}
+
+
+private File writeSegment(Segment seg)
+{
+   long [] times = seg.getTimes();
+   if (times.length == 0) return null;
+
+   File f = new File(segment_directory,getSegmentPrefix() + times[0] + "-" +
+	 times[times.length-1] + SEGMENT_SUFFIX);
+   segment_directory.mkdirs();
+
+   try (DataOutputStream dos = new DataOutputStream(new BufferedOutputStream(
+	 new GZIPOutputStream(new FileOutputStream(f))))) {
+      seg.write(dos);
+    }
+   catch (IOException e) {
+      CatreLog.logE("CATDEV","Problem writing history segment " + f,e);
+      f.delete();
+      return null;
+    }
+
+   return f;
+}
+
+
+/**
+ *	Build the index of existing segment files the first time it is
+ *	needed; afterwards it is maintained as segments are written.
+ **/
+
+private synchronized void loadSegmentFiles()
+{
+   if (segment_files != null) return;
+
+   segment_files = new ArrayList<>();
+   String pfx = getSegmentPrefix();
+   File [] files = segment_directory.listFiles();
+   if (files == null) return;
+
+   for (File f : files) {
+      String nm = f.getName();
+      if (!nm.startsWith(pfx) || !nm.endsWith(SEGMENT_SUFFIX)) continue;
+      String rng = nm.substring(pfx.length(),nm.length() - SEGMENT_SUFFIX.length());
+      int idx = rng.indexOf("-");
+      if (idx < 0) continue;
+      try {
+	 long t0 = Long.parseLong(rng.substring(0,idx));
+	 long t1 = Long.parseLong(rng.substring(idx+1));
+	 segment_files.add(new SegmentFile(f,t0,t1));
+       }
+      catch (NumberFormatException e) {
+	 continue;
+       }
+    }
+   segment_files.sort((s1,s2) -> Long.compare(s1.getStartTime(),s2.getStartTime()));
+}
+
+
+private List<HistoryPoint> loadSegments(List<File> files,long from,long to)
+{
+   List<HistoryPoint> rslt = new ArrayList<>();
+
+   for (File f : files) {
+      List<HistoryPoint> pts = null;
+      synchronized (segment_cache) {
+	 pts = segment_cache.get(f);
+       }
+      if (pts == null) {
+	 pts = readSegment(f);
+	 if (pts == null) continue;
+	 synchronized (segment_cache) {
+	    segment_cache.put(f,pts);
+	  }
+       }
+      for (HistoryPoint hp : pts) {
+	 if (hp.getTime() >= from && hp.getTime() <= to) rslt.add(hp);
+       }
+    }
+
+   rslt.sort((p1,p2) -> Long.compare(p1.getTime(),p2.getTime()));
+
+   return rslt;
+}
+
+
+private List<HistoryPoint> readSegment(File f)
+{
+   List<HistoryPoint> rslt = new ArrayList<>();
+
+   try (DataInputStream dis = new DataInputStream(new BufferedInputStream(
+	 new GZIPInputStream(new FileInputStream(f))))) {
+      for ( ; ; ) {
+	 long t = dis.readLong();
+	 double v = dis.readDouble();
+	 String lbl = (dis.readBoolean() ? dis.readUTF() : null);
+	 rslt.add(new HistoryPoint(t,v,lbl));
+       }
+    }
+   catch (EOFException e) { }
+   catch (FileNotFoundException e) {
+      // pruned since the query started
+      return null;
+    }
+   catch (IOException e) {
+      CatreLog.logE("CATDEV","Problem reading history segment " + f,e);
+    }
+
+   return rslt;
+}
+
+
+private String getSegmentPrefix()
+{
+   return for_parameter.getName().replaceAll("[^A-Za-z0-9_]","_") + "-";
+}
+
+
+
+/********************************************************************************/
+/*										*/
+/*	Segment copy awaiting its file						*/
+/*										*/
+/********************************************************************************/
+
+private static class Segment {
+
+   private long [] segment_times;
+   private double [] segment_numbers;
+   private String [] segment_labels;
+
+   Segment(long [] times,double [] nums,String [] lbls) {
+      segment_times = times;
+      segment_numbers = nums;
+      segment_labels = lbls;
+    }
+
+   long [] getTimes()				{ return segment_times; }
+   long getStartTime()				{ return segment_times[0]; }
+   long getEndTime()				{ return segment_times[segment_times.length-1]; }
+
+   void addPoints(long from,long to,List<HistoryPoint> rslt) {
+      for (int i = 0; i < segment_times.length; ++i) {
+	 long t = segment_times[i];
+	 if (t < from || t > to) continue;
+	 rslt.add(new HistoryPoint(t,segment_numbers[i],segment_labels[i]));
+       }
+    }
+
+   void write(DataOutputStream dos) throws IOException {
+      for (int i = 0; i < segment_times.length; ++i) {
+	 dos.writeLong(segment_times[i]);
+	 dos.writeDouble(segment_numbers[i]);
+	 dos.writeBoolean(segment_labels[i] != null);
+	 if (segment_labels[i] != null) dos.writeUTF(segment_labels[i]);
+       }
+    }
+
+}	// end of inner class Segment
+
+
+
+/********************************************************************************/
+/*										*/
+/*	Segment file index entry						*/
+/*										*/
+/********************************************************************************/
+
+private static class SegmentFile {
+
+   private File segment_file;
+   private long start_time;
+   private long end_time;
+
+   SegmentFile(File f,long t0,long t1) {
+      segment_file = f;
+      start_time = t0;
+      end_time = t1;
+    }
+
+   File getFile()				{ return segment_file; }
+   long getStartTime()				{ return start_time; }
+
+   boolean overlaps(long from,long to) {
+      return end_time >= from && start_time <= to;
+    }
+
+}	// end of inner class SegmentFile
+
+
+
+/********************************************************************************/
+/*										*/
+/*	History point								*/
+/*										*/
+/********************************************************************************/
+
+private static class HistoryPoint {
+
+   private long point_time;
+   private double point_number;
+   private String point_label;
+
+   HistoryPoint(long t,double v,String lbl) {
+      point_time = t;
+      point_number = v;
+      point_label = lbl;
+    }
+
+   long getTime()				{ return point_time; }
+   double getNumber()				{ return point_number; }
+
+   Object getValue() {
+      if (point_label != null) return point_label;
+      if (Double.isNaN(point_number)) return null;
+      return point_number;
+    }
+
+   Map<String,Object> toJson() {
+      Map<String,Object> rslt = new HashMap<>();
+      rslt.put("TIME",point_time);
+      Object v = getValue();
+      if (v != null) rslt.put("VALUE",v);
+      return rslt;
+    }
+
+}	// end of inner class HistoryPoint
+
+
+
+}	// end of class CatdevHistory
+
+
+
+
+/* end of CatdevHistory.java */
@@ -43,6 +43,11 @@ public interface CatmainConstants
 
 int     THREAD_POOL_SIZE = 8;
 
+long    TIMER_TICK = 50;                // timer wheel resolution in ms
+int     WHEEL_SIZE = 1024;              // slots in the timer wheel
+
+int     STARTUP_THREADS = 8;            // threads loading universes at startup
+
 
 
 }       // end of interface CatmainConstants
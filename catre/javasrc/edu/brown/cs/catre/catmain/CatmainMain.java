@@ -37,8 +37,16 @@ package edu.brown.cs.catre.catmain;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
 import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.ScheduledThreadPoolExecutor;
@@ -51,10 +59,14 @@ import edu.brown.cs.catre.catmodel.CatmodelFactory;
 import edu.brown.cs.catre.catre.CatreBridge;
 import edu.brown.cs.catre.catre.CatreController;
 import edu.brown.cs.catre.catre.CatreLog;
+import edu.brown.cs.catre.catre.CatreMetrics;
+import edu.brown.cs.catre.catre.CatreProgram;
 import edu.brown.cs.catre.catre.CatreStore;
 import edu.brown.cs.catre.catre.CatreTable;
+import edu.brown.cs.catre.catre.CatreTimer;
 import edu.brown.cs.catre.catre.CatreUniverse;
 import edu.brown.cs.catre.catre.CatreUser;
+import edu.brown.cs.catre.catre.CatreUtil;
 import edu.brown.cs.catre.catserve.CatserveServer;
 import edu.brown.cs.catre.catstore.CatstoreFactory;
 import edu.brown.cs.ivy.file.IvyLog.LogLevel;
@@ -85,10 +97,12 @@ public static void main(String [] args)
 /********************************************************************************/
 
 private ScheduledThreadPoolExecutor	thread_pool;
+private CatmainTimerWheel timer_wheel;
 private CatserveServer rest_server;
 private CatreStore     data_store;
 private CatmodelFactory model_factory;
 private CatbridgeFactory bridge_factory;
+private Map<String,CatreUniverse> active_universes;
 
 
 
@@ -103,15 +117,17 @@ private CatmainMain(String [] args)
    CatreLog.setLogLevel(LogLevel.DEBUG);
    CatreLog.setupLogging("CATRE",true);
    CatreLog.useStdErr(true);
+   CatreLog.useAsync(true);
+
+   active_universes = new ConcurrentHashMap<>();
 
    thread_pool = new TimerThreadPool();
+   timer_wheel = new CatmainTimerWheel(this);
+   timer_wheel.start();
 
    CatstoreFactory cf = new CatstoreFactory(this);
    data_store = cf.getStore();
-
-   //BUG: data_store isn't being loaded in properly!
-
-   CatreLog.logD("CATMAIN","data_store " + data_store.findAllUsers().size());
+   Runtime.getRuntime().addShutdownHook(new ShutdownThread());
 
    model_factory = new CatmodelFactory(this);
    
@@ -179,6 +195,7 @@ public CatreUniverse createUniverse(String name,CatreUser cu)
       CatreUniverse universe = model_factory.createUniverse(this,name,cu);
       
       cu.setUniverse(universe);
+      active_universes.put(universe.getDataUID(),universe);
       
       return universe;
     }
@@ -189,6 +206,39 @@ public CatreUniverse createUniverse(String name,CatreUser cu)
 
 
 
+@Override
+public void activateUniverse(CatreUniverse universe)
+{
+   if (universe == null || active_universes.containsKey(universe.getDataUID())) return;
+
+   activateUser(universe.getUser());
+}
+
+
+/**
+ *	Load (if needed) and start the user's universe and set up its bridges.
+ *	This is done at most once per universe; it is locked on the user so a
+ *	request can't race with the startup loader.
+ **/
+
+private void activateUser(CatreUser cu)
+{
+   synchronized (cu) {
+      CatreUniverse universe = cu.getUniverse();
+      if (universe == null) return;
+      if (active_universes.containsKey(universe.getDataUID())) return;
+
+      CatreLog.logD("CATMAIN","START universe " + universe.getName());
+      universe.start();
+      CatreLog.logD("CATMAIN","START bridges " + cu.getUserName());
+      bridge_factory.setupForUser(cu);
+
+      active_universes.put(universe.getDataUID(),universe);
+    }
+}
+
+
+
 /********************************************************************************/
 /*										*/
 /*	Task methods								*/
@@ -212,6 +262,40 @@ public ScheduledFuture<?> schedule(Runnable task,long delay,long period)
 }
 
 
+@Override public CatreTimer scheduleTimer(Runnable task,long delay)
+{
+   return timer_wheel.schedule(task,delay);
+}
+
+
+@Override public int getPendingTimerCount()
+{
+   return timer_wheel.getPendingCount();
+}
+
+
+@Override public void addMetrics(CatreMetrics m)
+{
+   m.addGauge("catre_timers_pending","Timers waiting to fire",getPendingTimerCount());
+   m.addGauge("catre_tasks_queued","Tasks waiting for a worker thread",
+	 thread_pool.getQueue().size());
+   m.addGauge("catre_tasks_active","Worker threads running tasks",
+	 thread_pool.getActiveCount());
+   m.addCounter("catre_tasks_completed_total","Tasks completed by worker threads",
+	 thread_pool.getCompletedTaskCount());
+   m.addGauge("catre_universes_active","Universes that have been started",
+	 active_universes.size());
+
+   data_store.addMetrics(m);
+   bridge_factory.addMetrics(m);
+
+   for (CatreUniverse cu : active_universes.values()) {
+      CatreProgram pgm = cu.getProgram();
+      if (pgm != null) pgm.addMetrics(m);
+    }
+}
+
+
 @Override
 public Future<?> submit(Runnable task)
 {
@@ -298,20 +382,48 @@ private static boolean isBaseDirectory(File dir) {
 /*										*/
 /********************************************************************************/
 
+/**
+ *	Users are found once; their universes are loaded, started and given
+ *	their bridges in parallel.  With lazystart the web server starts right
+ *	away and universes not yet loaded are activated on first use.
+ **/
+
 private void start() {
-   for (CatreUser cu : data_store.findAllUsers()) {
-      CatreUniverse universe = cu.getUniverse();
-      CatreLog.logD("CATMAIN","START universe " + universe.getName());
-      universe.start();
-      // update program for this universe to handle missing devices
-      // start program for this user/universe
+   Properties p = loadProperties();
+   int nthread = STARTUP_THREADS;
+   try {
+      nthread = Math.max(1,Integer.parseInt(p.getProperty("startthreads")));
     }
-   
-   for (CatreUser cu : data_store.findAllUsers()) {
-      CatreLog.logD("CATMAIN","START bridges " + cu.getUserName());
-      bridge_factory.setupForUser(cu);
+   catch (NumberFormatException e) { }
+   boolean lazy = Boolean.parseBoolean(p.getProperty("lazystart"));
+
+   List<CatreUser> users = data_store.findAllUsers(false);
+   CatreLog.logD("CATMAIN","START " + users.size() + " users with " + nthread +
+	 " threads" + (lazy ? " (lazy)" : ""));
+
+   ExecutorService loader = Executors.newFixedThreadPool(nthread,new LoaderThreadFactory());
+   List<Future<?>> waits = new ArrayList<>();
+   for (CatreUser cu : users) {
+      bridge_factory.noteUser(cu);
+      waits.add(loader.submit(new UserLoader(cu)));
     }
-   
+   loader.shutdown();
+
+   if (!lazy) {
+      for (Future<?> f : waits) {
+	 try {
+	    f.get();
+	  }
+	 catch (InterruptedException e) {
+	    Thread.currentThread().interrupt();
+	    break;
+	  }
+	 catch (ExecutionException e) {
+	    CatreLog.logE("CATMAIN","Problem starting universe",e.getCause());
+	  }
+       }
+    }
+
    try {
       rest_server.start();
     }
@@ -322,6 +434,38 @@ private void start() {
 
 
 
+private Properties loadProperties()
+{
+   Properties p = new Properties();
+   p.put("startthreads",Integer.toString(STARTUP_THREADS));
+   p.put("lazystart","false");
+
+   return CatreUtil.loadProperties(this,p);
+}
+
+
+private class UserLoader implements Runnable {
+
+   private CatreUser for_user;
+
+   UserLoader(CatreUser cu) {
+      for_user = cu;
+    }
+
+   @Override public void run() {
+      try {
+	 activateUser(for_user);
+       }
+      catch (Throwable t) {
+	 CatreLog.logE("CATMAIN","Problem starting universe for " +
+	       for_user.getUserName(),t);
+       }
+    }
+
+}	// end of inner class UserLoader
+
+
+
 /********************************************************************************/
 /*										*/
 /*	Thread pool methods							*/
@@ -332,6 +476,7 @@ private class TimerThreadPool extends ScheduledThreadPoolExecutor {
 
    TimerThreadPool() {
       super(THREAD_POOL_SIZE,new TimerThreadFactory());
+      setRemoveOnCancelPolicy(true);
     }
 
 }	// end of inner class TimerThreadPool
@@ -366,6 +511,49 @@ private static class TimerThread extends Thread implements CatreLog.LoggerThread
 }	// end of inner class TimerThread
 
 
+private static class LoaderThreadFactory implements ThreadFactory {
+
+   private int thread_counter;
+
+   LoaderThreadFactory() {
+      thread_counter = 0;
+    }
+
+   @Override public synchronized Thread newThread(Runnable r) {
+      return new LoaderThread(++thread_counter,r);
+    }
+
+}	// end of inner class LoaderThreadFactory
+
+
+private static class LoaderThread extends Thread implements CatreLog.LoggerThread {
+
+   private int thread_count;
+
+   LoaderThread(int ct,Runnable r) {
+      super(r,"CatreLoader_" + ct);
+      thread_count = ct;
+    }
+
+   @Override public int getLogId()			{ return 3000 + thread_count; }
+
+}	// end of inner class LoaderThread
+
+
+private class ShutdownThread extends Thread {
+
+   ShutdownThread() {
+      super("CatreShutdown");
+    }
+
+   @Override public void run() {
+      data_store.flush();
+      CatreLog.flush();
+    }
+
+}	// end of inner class ShutdownThread
+
+
 
 }	// end of class CatmainMain
 
@@ -0,0 +1,247 @@
+/********************************************************************************/
+/*                                                                              */
+/*      CatmainTimerWheel.java                                                  */
+/*                                                                              */
+/*      Hashed timer wheel for one-shot timers                                  */
+/*                                                                              */
+/********************************************************************************/
+/* Copyright 2023 Brown University -- Steven P. Reiss, Molly E. McHenry         */
+/*********************************************************************************
+ *  Copyright 2023, Brown University, Providence, RI.                           *
+ *                                                                              *
+ *         All Rights Reserved                                                  *
+ *                                                                              *
+ *  Permission to use, coy, and distribute this software and its       *
+ *  documentation for any purpose other than its incorporation into a           *
+ *  commercial product is hereby granted without fee, provided that the         *
+ *  above copyright notice appear in all copies and that both that              *
+ *  copyright notice and this permission notice appear in supporting            *
+ *  documentation, and that the name of Brown University not be used in         *
+ *  advertising or publicity pertaining to distribution of the software         *
+ *  without specific, written prior permission.                                 *
+ *                                                                              *
+ *  BROWN UNIVERSITY DISCLAIMS ALL WARRANTIES WITH REGARD TO THIS               *
+ *  SOFTWARE, INCLUDING ALL IMPLIED WARRANTIES OF MERCHANTABILITY AND           *
+ *  FITNESS FOR ANY PARTICULAR PURPOSE.  IN NO EVENT SHALL BROWN UNIVERSITY     *
+ *  BE LIABLE FOR ANY SPECIAL, INDIRECT OR CONSEQUENTIAL DAMAGES OR ANY         *
+ *  DAMAGES WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS,             *
+ *  WHETHER IN AN ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS              *
+ *  ACTION, ARISING OUT OF OR IN CONNECTION WITH THE USE OR PERFORMANCE         *
+ *  OF THIS SOFTWARE.                                                           *
+ *                                                                              *
+ ********************************************************************************/
+
+
+
+package edu.brown.cs.catre.catmain;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import edu.brown.cs.catre.catre.CatreController;
+import edu.brown.cs.catre.catre.CatreLog;
+import edu.brown.cs.catre.catre.CatreTimer;
+
+/**
+ *      One-shot timers are kept in a hashed wheel of WHEEL_SIZE slots, each
+ *      TIMER_TICK ms wide.  Each slot is a doubly linked list so adding and
+ *      cancelling a timer are constant time, and a cancelled timer is gone
+ *      immediately.  A single periodic task on the controller advances the
+ *      wheel and hands expired timers to the thread pool.  Ticks are
+ *      measured with System.nanoTime() so that a change to the wall clock
+ *      neither fires timers early nor stalls the wheel.
+ **/
+
+class CatmainTimerWheel implements CatmainConstants
+{
+
+
+/********************************************************************************/
+/*                                                                              */
+/*      Private Storage                                                         */
+/*                                                                              */
+/********************************************************************************/
+
+private CatreController catre_control;
+private WheelTimer []   wheel_slots;
+private long            current_tick;
+private long            base_time;
+private int             pending_count;
+
+
+
+/********************************************************************************/
+/*                                                                              */
+/*      Constructors                                                            */
+/*                                                                              */
+/********************************************************************************/
+
+CatmainTimerWheel(CatreController cc)
+{
+   catre_control = cc;
+   wheel_slots = new WheelTimer[WHEEL_SIZE];
+   base_time = System.nanoTime();
+   current_tick = currentTime() / TIMER_TICK;
+   pending_count = 0;
+}
+
+
+void start()
+{
+   catre_control.schedule(this::advance,TIMER_TICK,TIMER_TICK);
+}
+
+
+
+/********************************************************************************/
+/*                                                                              */
+/*      Scheduling methods                                                      */
+/*                                                                              */
+/********************************************************************************/
+
+synchronized CatreTimer schedule(Runnable task,long delay)
+{
+   long when = currentTime() + Math.max(delay,0);
+   long tick = (when + TIMER_TICK - 1) / TIMER_TICK;
+   if (tick <= current_tick) tick = current_tick + 1;
+
+   WheelTimer wt = new WheelTimer(task,tick);
+   int slot = (int) (tick % WHEEL_SIZE);
+   wt.next_timer = wheel_slots[slot];
+   if (wt.next_timer != null) wt.next_timer.prior_timer = wt;
+   wheel_slots[slot] = wt;
+   ++pending_count;
+
+   return wt;
+}
+
+
+synchronized int getPendingCount()              { return pending_count; }
+
+
+
+/********************************************************************************/
+/*                                                                              */
+/*      Wheel processing                                                        */
+/*                                                                              */
+/********************************************************************************/
+
+private void advance()
+{
+   List<Runnable> torun = new ArrayList<>();
+
+   synchronized (this) {
+      long now = currentTime() / TIMER_TICK;
+      // after a long stall one pass over the wheel sees everything
+      if (now - current_tick > WHEEL_SIZE) current_tick = now - WHEEL_SIZE;
+      while (current_tick < now) {
+         ++current_tick;
+         int slot = (int) (current_tick % WHEEL_SIZE);
+         WheelTimer next = null;
+         for (WheelTimer wt = wheel_slots[slot]; wt != null; wt = next) {
+            next = wt.next_timer;
+            if (wt.timer_tick <= now) {
+               unlink(wt);
+               torun.add(wt.timer_task);
+             }
+          }
+       }
+    }
+
+   for (Runnable r : torun) {
+      catre_control.submit(new TimerRunner(r));
+    }
+}
+
+
+/**
+ *      Return monotonic ms since the wheel was created.
+ **/
+
+private long currentTime()
+{
+   return (System.nanoTime() - base_time) / 1000000L;
+}
+
+
+private void unlink(WheelTimer wt)
+{
+   int slot = (int) (wt.timer_tick % WHEEL_SIZE);
+   if (wt.prior_timer != null) wt.prior_timer.next_timer = wt.next_timer;
+   else wheel_slots[slot] = wt.next_timer;
+   if (wt.next_timer != null) wt.next_timer.prior_timer = wt.prior_timer;
+   wt.prior_timer = null;
+   wt.next_timer = null;
+   wt.is_pending = false;
+   --pending_count;
+}
+
+
+
+/********************************************************************************/
+/*                                                                              */
+/*      Timer entry                                                             */
+/*                                                                              */
+/********************************************************************************/
+
+private class WheelTimer implements CatreTimer {
+
+   private Runnable timer_task;
+   private long timer_tick;
+   private boolean is_pending;
+   private WheelTimer next_timer;
+   private WheelTimer prior_timer;
+
+   WheelTimer(Runnable task,long tick) {
+      timer_task = task;
+      timer_tick = tick;
+      is_pending = true;
+      next_timer = null;
+      prior_timer = null;
+    }
+
+   @Override public boolean cancel() {
+      synchronized (CatmainTimerWheel.this) {
+         if (!is_pending) return false;
+         unlink(this);
+         return true;
+       }
+    }
+
+   @Override public boolean isPending() {
+      synchronized (CatmainTimerWheel.this) {
+         return is_pending;
+       }
+    }
+
+}       // end of inner class WheelTimer
+
+
+
+private static class TimerRunner implements Runnable {
+
+   private Runnable timer_task;
+
+   TimerRunner(Runnable r) {
+      timer_task = r;
+    }
+
+   @Override public void run() {
+      try {
+         timer_task.run();
+       }
+      catch (Throwable t) {
+         CatreLog.logE("CATMAIN","Problem running timer",t);
+       }
+    }
+
+}       // end of inner class TimerRunner
+
+
+
+}       // end of class CatmainTimerWheel
+
+
+
+
+/* end of CatmainTimerWheel.java */
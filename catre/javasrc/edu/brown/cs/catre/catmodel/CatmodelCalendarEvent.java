@@ -35,11 +35,9 @@
 
 package edu.brown.cs.catre.catmodel;
 
-import java.text.DateFormat;
 import java.util.ArrayList;
 import java.util.BitSet;
 import java.util.Calendar;
-import java.util.Date;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
@@ -71,8 +69,6 @@ private int		repeat_interval;
 private Set<Calendar>	exclude_dates;
 private boolean         all_day;
 
-private static DateFormat date_format = DateFormat.getDateInstance(DateFormat.SHORT);
-private static DateFormat time_format = DateFormat.getTimeInstance(DateFormat.SHORT);
 
 
 /********************************************************************************/
@@ -122,13 +118,13 @@ private void normalizeTimes()
 
 private String calDate(Calendar c)
 {
-   return date_format.format(c.getTime());
+   return CatmodelDateFormat.formatDate(c);
 }
 
 
 private String calTime(Calendar c)
 {
-   return time_format.format(c.getTime());
+   return CatmodelDateFormat.formatTime(c);
 }
 
 
@@ -202,12 +198,10 @@ String getDays()
 
 void addImpliedProperties(CatrePropertySet ups)
 {
-   Date d0 = new Date(from_datetime.getTimeInMillis());
-   ups.put("*FROMDATE",date_format.format(d0));
-   ups.put("*FROMTIME",time_format.format(d0));
-   d0 = new Date(to_datetime.getTimeInMillis());
-   ups.put("*TODATE",date_format.format(d0));
-   ups.put("*TOTIME",time_format.format(d0));
+   ups.put("*FROMDATE",calDate(from_datetime));
+   ups.put("*FROMTIME",calTime(from_datetime));
+   ups.put("*TODATE",calDate(to_datetime));
+   ups.put("*TOTIME",calTime(to_datetime));
    if (day_set != null) ups.put("*DAYS",getDays());
 }
 
@@ -507,9 +501,8 @@ private boolean isNextDay(Calendar c0,Calendar c1)
     }
    if (exclude_dates != null) {
       for (Calendar c : exclude_dates) {
-	 Date d = new Date(c.getTimeInMillis());
 	 buf.append("-");
-	 buf.append(DateFormat.getDateInstance().format(d));
+	 buf.append(CatmodelDateFormat.formatMediumDate(c));
        }
     }
    return buf.toString();
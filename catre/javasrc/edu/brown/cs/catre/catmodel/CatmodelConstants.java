@@ -43,6 +43,8 @@ public interface CatmodelConstants
 
 String UNIVERSE_PREFIX = "UNIV_";
 
+int EXECUTOR_BATCH = 16;		// tasks run for a universe before yielding
+
 
 
 
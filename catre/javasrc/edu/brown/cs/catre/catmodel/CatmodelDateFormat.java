@@ -0,0 +1,284 @@
+/********************************************************************************/
+/*										*/
+/*		CatmodelDateFormat.java						*/
+/*										*/
+/*	Thread-safe date and time parsing and formatting			*/
+/*										*/
+/********************************************************************************/
+/*	Copyright 2023 Brown University -- Steven P. Reiss			*/
+/*********************************************************************************
+ *  Copyright 2023, Brown University, Providence, RI.				 *
+ *										 *
+ *			  All Rights Reserved					 *
+ *										 *
+ *  Permission to use, copy, modify, and distribute this software and its	 *
+ *  documentation for any purpose other than its incorporation into a		 *
+ *  commercial product is hereby granted without fee, provided that the 	 *
+ *  above copyright notice appear in all copies and that both that		 *
+ *  copyright notice and this permission notice appear in supporting		 *
+ *  documentation, and that the name of Brown University not be used in 	 *
+ *  advertising or publicity pertaining to distribution of the software 	 *
+ *  without specific, written prior permission. 				 *
+ *										 *
+ *  BROWN UNIVERSITY DISCLAIMS ALL WARRANTIES WITH REGARD TO THIS		 *
+ *  SOFTWARE, INCLUDING ALL IMPLIED WARRANTIES OF MERCHANTABILITY AND		 *
+ *  FITNESS FOR ANY PARTICULAR PURPOSE.  IN NO EVENT SHALL BROWN UNIVERSITY	 *
+ *  BE LIABLE FOR ANY SPECIAL, INDIRECT OR CONSEQUENTIAL DAMAGES OR ANY 	 *
+ *  DAMAGES WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS,		 *
+ *  WHETHER IN AN ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS		 *
+ *  ACTION, ARISING OUT OF OR IN CONNECTION WITH THE USE OR PERFORMANCE 	 *
+ *  OF THIS SOFTWARE.								 *
+ *										 *
+ ********************************************************************************/
+
+
+
+
+
+
+
+
+package edu.brown.cs.catre.catmodel;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeFormatterBuilder;
+import java.time.format.DateTimeParseException;
+import java.time.format.FormatStyle;
+import java.time.temporal.TemporalAccessor;
+import java.time.temporal.TemporalQueries;
+import java.util.Calendar;
+import java.util.GregorianCalendar;
+import java.util.Locale;
+
+/**
+ *	Parsing and formatting of the dates and times that appear as parameter
+ *	values and in calendar events.  The formatters are immutable and can
+ *	be shared between the bridge event threads.  Common numeric shapes
+ *	(ISO with an optional offset, m/d/y, h:mm, h:mm:ss) are recognized
+ *	directly and only other strings fall back to trying the localized
+ *	formats in turn.  Fields missing from the input default to 1/1/1970,
+ *	midnight, and the local time zone; a zone or offset in the input is kept.
+ **/
+
+public final class CatmodelDateFormat implements CatmodelConstants
+{
+
+
+/********************************************************************************/
+/*										*/
+/*	Private Storage 							*/
+/*										*/
+/********************************************************************************/
+
+private static final DateTimeFormatter ISO_FORMAT =
+   DateTimeFormatter.ISO_DATE_TIME;
+private static final DateTimeFormatter MDY_FORMAT = pattern("M/d/yyyy");
+private static final DateTimeFormatter MDY_AMPM_FORMAT = pattern("M/d/yyyy h:mma");
+private static final DateTimeFormatter MDY_24_FORMAT = pattern("M/d/yyyy H:mm");
+private static final DateTimeFormatter AMPM_FORMAT = pattern("h:mma");
+private static final DateTimeFormatter HOUR_FORMAT = pattern("H:mm");
+private static final DateTimeFormatter SECONDS_FORMAT = pattern("H:mm:ss");
+
+private static final DateTimeFormatter [] LOCAL_FORMATS = new DateTimeFormatter [] {
+   DateTimeFormatter.ofLocalizedDateTime(FormatStyle.LONG),
+   DateTimeFormatter.ofLocalizedDateTime(FormatStyle.SHORT),
+   DateTimeFormatter.ofLocalizedDate(FormatStyle.LONG),
+   DateTimeFormatter.ofLocalizedDate(FormatStyle.MEDIUM),
+   DateTimeFormatter.ofLocalizedDate(FormatStyle.SHORT),
+   DateTimeFormatter.ofLocalizedTime(FormatStyle.LONG),
+   DateTimeFormatter.ofLocalizedTime(FormatStyle.SHORT),
+};
+
+private static final DateTimeFormatter CLOCK_FORMAT = pattern("HH:mm");
+private static final DateTimeFormatter SHORT_DATE_FORMAT =
+   DateTimeFormatter.ofLocalizedDate(FormatStyle.SHORT);
+private static final DateTimeFormatter MEDIUM_DATE_FORMAT =
+   DateTimeFormatter.ofLocalizedDate(FormatStyle.MEDIUM);
+private static final DateTimeFormatter SHORT_TIME_FORMAT =
+   DateTimeFormatter.ofLocalizedTime(FormatStyle.SHORT);
+
+private static final LocalDate	DEFAULT_DATE = LocalDate.of(1970,1,1);
+
+
+
+/********************************************************************************/
+/*										*/
+/*	Constructors								*/
+/*										*/
+/********************************************************************************/
+
+private CatmodelDateFormat()			{ }
+
+
+
+/********************************************************************************/
+/*										*/
+/*	Parsing methods 							*/
+/*										*/
+/********************************************************************************/
+
+/**
+ *	Parse a date and/or time string, returning null if it isn't
+ *	recognized.
+ **/
+
+public static ZonedDateTime parse(String s)
+{
+   if (s == null) return null;
+   s = s.trim();
+   if (s.isEmpty()) return null;
+
+   DateTimeFormatter fmt = findFormat(s);
+   if (fmt != null) {
+      ZonedDateTime zdt = parse(s,fmt);
+      if (zdt != null) return zdt;
+    }
+
+   for (DateTimeFormatter df : LOCAL_FORMATS) {
+      ZonedDateTime zdt = parse(s,df);
+      if (zdt != null) return zdt;
+    }
+
+   return null;
+}
+
+
+/**
+ *	Return a new calendar for the given string, or null.
+ **/
+
+public static Calendar parseCalendar(String s)
+{
+   ZonedDateTime zdt = parse(s);
+   if (zdt == null) return null;
+
+   return GregorianCalendar.from(zdt);
+}
+
+
+private static ZonedDateTime parse(String s,DateTimeFormatter fmt)
+{
+   TemporalAccessor ta = null;
+   try {
+      ta = fmt.parse(s);
+    }
+   catch (DateTimeParseException e) {
+      return null;
+    }
+
+   LocalDate date = ta.query(TemporalQueries.localDate());
+   if (date == null) date = DEFAULT_DATE;
+   LocalTime time = ta.query(TemporalQueries.localTime());
+   if (time == null) time = LocalTime.MIDNIGHT;
+   ZoneId zone = ta.query(TemporalQueries.zone());
+   if (zone == null) zone = ZoneId.systemDefault();
+
+   return ZonedDateTime.of(date,time,zone);
+}
+
+
+/**
+ *	Pick the formatter for the common shapes: [m/d/yyyy][ ][h:mm[am|pm]],
+ *	h:mm:ss and yyyy-mm-ddThh:mm[:ss[.fff]][Z|+hh:mm].
+ **/
+
+private static DateTimeFormatter findFormat(String s)
+{
+   int len = s.length();
+   int slashes = 0;
+   int colons = 0;
+   int digits = 0;
+   boolean space = false;
+   boolean ampm = false;
+   boolean iso = false;
+
+   for (int i = 0; i < len; ++i) {
+      char c = s.charAt(i);
+      if (c >= '0' && c <= '9') ++digits;
+      else if (c == '/') ++slashes;
+      else if (c == ':') ++colons;
+      else if (c == ' ') space = true;
+      else if (c == '-' || c == 'T' || c == '.' || c == 'Z' || c == '+') iso = true;
+      else if (i >= len-2 && (c == 'a' || c == 'A' || c == 'p' || c == 'P' ||
+	    c == 'm' || c == 'M')) ampm = true;
+      else return null;
+    }
+   if (digits == 0) return null;
+
+   if (iso) {
+      if (slashes > 0 || space || ampm) return null;
+      return ISO_FORMAT;
+    }
+   if (slashes == 2) {
+      if (colons == 0) return (space || ampm ? null : MDY_FORMAT);
+      if (colons != 1 || !space) return null;
+      return (ampm ? MDY_AMPM_FORMAT : MDY_24_FORMAT);
+    }
+   if (slashes == 0 && colons == 1 && !space) {
+      return (ampm ? AMPM_FORMAT : HOUR_FORMAT);
+    }
+   if (slashes == 0 && colons == 2 && !space && !ampm) {
+      return SECONDS_FORMAT;
+    }
+
+   return null;
+}
+
+
+
+/********************************************************************************/
+/*										*/
+/*	Formatting methods							*/
+/*										*/
+/********************************************************************************/
+
+static String formatClock(Calendar c)
+{
+   return CLOCK_FORMAT.format(toZoned(c));
+}
+
+
+static String formatDate(Calendar c)
+{
+   return SHORT_DATE_FORMAT.format(toZoned(c));
+}
+
+
+static String formatTime(Calendar c)
+{
+   return SHORT_TIME_FORMAT.format(toZoned(c));
+}
+
+
+static String formatMediumDate(Calendar c)
+{
+   return MEDIUM_DATE_FORMAT.format(toZoned(c));
+}
+
+
+private static ZonedDateTime toZoned(Calendar c)
+{
+   Instant i = Instant.ofEpochMilli(c.getTimeInMillis());
+   return ZonedDateTime.ofInstant(i,c.getTimeZone().toZoneId());
+}
+
+
+private static DateTimeFormatter pattern(String pat)
+{
+   return new DateTimeFormatterBuilder().parseCaseInsensitive()
+      .appendPattern(pat).toFormatter(Locale.US);
+}
+
+
+
+}	// end of class CatmodelDateFormat
+
+
+
+
+/* end of CatmodelDateFormat.java */
@@ -0,0 +1,137 @@
+/********************************************************************************/
+/*										*/
+/*		CatmodelExecutor.java						*/
+/*										*/
+/*	Serial task queue for a single universe				*/
+/*										*/
+/********************************************************************************/
+/*	Copyright 2023 Brown University -- Steven P. Reiss			*/
+/*********************************************************************************
+ *  Copyright 2023, Brown University, Providence, RI.				 *
+ *										 *
+ *			  All Rights Reserved					 *
+ *										 *
+ *  Permission to use, copy, modify, and distribute this software and its	 *
+ *  documentation for any purpose other than its incorporation into a		 *
+ *  commercial product is hereby granted without fee, provided that the 	 *
+ *  above copyright notice appear in all copies and that both that		 *
+ *  copyright notice and this permission notice appear in supporting		 *
+ *  documentation, and that the name of Brown University not be used in 	 *
+ *  advertising or publicity pertaining to distribution of the software 	 *
+ *  without specific, written prior permission. 				 *
+ *										 *
+ *  BROWN UNIVERSITY DISCLAIMS ALL WARRANTIES WITH REGARD TO THIS		 *
+ *  SOFTWARE, INCLUDING ALL IMPLIED WARRANTIES OF MERCHANTABILITY AND		 *
+ *  FITNESS FOR ANY PARTICULAR PURPOSE.  IN NO EVENT SHALL BROWN UNIVERSITY	 *
+ *  BE LIABLE FOR ANY SPECIAL, INDIRECT OR CONSEQUENTIAL DAMAGES OR ANY 	 *
+ *  DAMAGES WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS,		 *
+ *  WHETHER IN AN ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS		 *
+ *  ACTION, ARISING OUT OF OR IN CONNECTION WITH THE USE OR PERFORMANCE 	 *
+ *  OF THIS SOFTWARE.								 *
+ *										 *
+ ********************************************************************************/
+
+
+
+package edu.brown.cs.catre.catmodel;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import edu.brown.cs.catre.catre.CatreController;
+import edu.brown.cs.catre.catre.CatreLog;
+
+/**
+ *	Tasks for one universe run one at a time, in order, on the shared
+ *	controller pool.  At most one pool thread works on a universe at a
+ *	time, and it gives the thread back after EXECUTOR_BATCH tasks so a
+ *	busy universe can't keep the other universes waiting.
+ **/
+
+class CatmodelExecutor implements Executor, CatmodelConstants
+{
+
+
+/********************************************************************************/
+/*										*/
+/*	Private Storage 							*/
+/*										*/
+/********************************************************************************/
+
+private CatreController catre_control;
+private Queue<Runnable> task_queue;
+private AtomicBoolean	is_scheduled;
+
+
+
+/********************************************************************************/
+/*										*/
+/*	Constructors								*/
+/*										*/
+/********************************************************************************/
+
+CatmodelExecutor(CatreController cc)
+{
+   catre_control = cc;
+   task_queue = new ConcurrentLinkedQueue<>();
+   is_scheduled = new AtomicBoolean(false);
+}
+
+
+
+/********************************************************************************/
+/*										*/
+/*	Execution methods							*/
+/*										*/
+/********************************************************************************/
+
+@Override public void execute(Runnable r)
+{
+   task_queue.add(r);
+
+   if (is_scheduled.compareAndSet(false,true)) {
+      catre_control.submit(this::drainQueue);
+    }
+}
+
+
+int getQueueDepth()				{ return task_queue.size(); }
+
+
+private void drainQueue()
+{
+   for (int i = 0; i < EXECUTOR_BATCH; ++i) {
+      Runnable r = task_queue.poll();
+      if (r == null) break;
+      try {
+	 r.run();
+       }
+      catch (Throwable t) {
+	 CatreLog.logE("CATMODEL","Problem running universe task",t);
+       }
+    }
+
+   if (!task_queue.isEmpty()) {
+      // more work: requeue at the back of the pool to be fair to others
+      catre_control.submit(this::drainQueue);
+      return;
+    }
+
+   is_scheduled.set(false);
+
+   // a task may have been added after the check above
+   if (!task_queue.isEmpty() && is_scheduled.compareAndSet(false,true)) {
+      catre_control.submit(this::drainQueue);
+    }
+}
+
+
+
+}	// end of class CatmodelExecutor
+
+
+
+
+/* end of CatmodelExecutor.java */
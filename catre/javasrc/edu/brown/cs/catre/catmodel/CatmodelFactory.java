@@ -99,6 +99,8 @@ private static class UniverseTable implements CatreTable {
 
    @Override public String getTablePrefix()		{ return UNIVERSE_PREFIX; }
 
+   @Override public boolean isCachePinned()		{ return true; }
+
    @Override public boolean useFor(CatreSavable cs) {
       return cs instanceof CatmodelUniverse;
     }
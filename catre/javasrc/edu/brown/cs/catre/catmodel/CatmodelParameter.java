@@ -37,9 +37,6 @@
 package edu.brown.cs.catre.catmodel;
 
 import java.awt.Color;
-import java.text.DateFormat;
-import java.text.ParseException;
-import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.Collection;
@@ -86,21 +83,8 @@ private Set<String> all_units;
 protected CatreParameterRef range_ref;
 private String parameter_data;
 private boolean is_volatile;
+private int value_slot;
 
-private static final DateFormat [] formats = new DateFormat [] {
-   DateFormat.getDateTimeInstance(DateFormat.LONG,DateFormat.LONG),
-   DateFormat.getDateTimeInstance(DateFormat.SHORT,DateFormat.SHORT),
-   DateFormat.getDateInstance(DateFormat.LONG),
-   DateFormat.getDateInstance(DateFormat.SHORT),
-   DateFormat.getTimeInstance(DateFormat.LONG),
-   DateFormat.getTimeInstance(DateFormat.SHORT),
-   new SimpleDateFormat("MM/dd/yyyy hh:mma"),
-   new SimpleDateFormat("MM/dd/yyyy HH:mm"),
-   new SimpleDateFormat("MM/dd/yyyy"),
-   new SimpleDateFormat("h:mma"),
-   new SimpleDateFormat("H:mm"),
-   new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss"),
-};
 
 
 
@@ -257,6 +241,7 @@ protected CatmodelParameter(CatreUniverse cu,String name)
    default_unit = null;
    range_ref = null;
    parameter_data = null;
+   value_slot = -1;
 }
 
 
@@ -302,6 +287,11 @@ void addDefaultUnit(String u)
 }
 
 
+int getValueSlot()				{ return value_slot; }
+
+void setValueSlot(int slot)			{ value_slot = slot; }
+
+
 @Override public String getParameterData() 
 {
    return parameter_data; 
@@ -495,12 +485,12 @@ private class RangeAvailable implements CatreReferenceListener, CatreDeviceListe
          cp.setIsSensor(false);
          Object vals = cd.getParameterValue(cp);
          setRangeValues(vals);
-         cd.addDeviceListener(this);
+         cd.addParameterListener(cp,this);
        }
     }
    
    @Override public void stateChanged(CatreParameter p) {
-      if (p == range_ref) {
+      if (p == range_ref.getParameter()) {
          CatreDevice cd = range_ref.getDevice();
          CatreParameter cp = range_ref.getParameter();
          Object vals = cd.getParameterValue(cp);
@@ -792,41 +782,28 @@ private static abstract class CalendarParameter extends CatmodelParameter {
    @Override protected String externalString(Object o) {
       if (o == null) return null;
       if (!(o instanceof Calendar)) o = normalize(o);
-      Calendar c = (Calendar) o;
-      SimpleDateFormat sdf = new SimpleDateFormat("HH:mm");
-      Date d = c.getTime();
-      String rslt = sdf.format(d);
-      return rslt;
-    }
-
-   protected Calendar createCalendar(Object o) {
       if (o == null) return null;
-      if (o instanceof Calendar) return ((Calendar) o);
-      Date d = createDate(o);
-      if (d == null) return null;
-      Calendar c = Calendar.getInstance();
-      c.setTime(d);
-      return c;
+      return CatmodelDateFormat.formatClock((Calendar) o);
     }
 
-   protected Date createDate(Object o) {
+   protected Calendar createCalendar(Object o) {
       if (o == null) return null;
-      if (o instanceof Date) return ((Date) o);
-      if (o instanceof Number) {
-	 Number n = (Number) o;
-	 long tm = n.longValue();
-	 return new Date(tm);
+      if (o instanceof Calendar) return (Calendar) ((Calendar) o).clone();
+      Calendar c = null;
+      if (o instanceof Date) {
+	 c = Calendar.getInstance();
+	 c.setTime((Date) o);
        }
-      String svl = o.toString();
-      if (svl.equals("*") || svl.equals("NOW")) return new Date();
-      for (DateFormat df : formats) {
-	 try {
-	    Date d = df.parse(svl);
-	    return d;
-	  }
-	 catch (ParseException e) { }
+      else if (o instanceof Number) {
+	 c = Calendar.getInstance();
+	 c.setTimeInMillis(((Number) o).longValue());
        }
-      return null;
+      else {
+	 String svl = o.toString();
+	 if (svl.equals("*") || svl.equals("NOW")) c = Calendar.getInstance();
+	 else c = CatmodelDateFormat.parseCalendar(svl);
+       }
+      return c;
     }
 
 }	// end of inner class TimeParameter
@@ -95,11 +95,12 @@ private CatdevFactory device_factory;
 private Map<String,CatreBridge> known_bridges;
 private CatprogFactory program_factory;
 
-private CatreParameterSet parameter_values;
+private CatmodelValueStore parameter_values;
 private CatreTriggerContext trigger_context;
 private int		  update_counter;
 private ReentrantLock	  update_lock;
 private Condition	  update_condition;
+private CatmodelExecutor  universe_executor;
 
 
 private boolean is_started;
@@ -149,7 +150,7 @@ CatmodelUniverse(CatreController cc,CatreStore cs,Map<String,Object> map)
    
    Map<String,Object> unimap = toJson();
    JSONObject obj = new JSONObject(unimap);
-   CatreLog.logD("CATMODEL","Load universe " + obj.toString(2));
+   CatreLog.logD("CATMODEL",() -> "Load universe " + obj.toString(2));
    
    universe_program.addProgramListener(this);
    fireUniverseSetup();
@@ -161,11 +162,12 @@ private void initialize(CatreController cc)
    catre_control = cc;
    for_user = null;
 
-   parameter_values = new CatmodelParameterSet(this);
+   parameter_values = new CatmodelValueStore();
    trigger_context = null;
    update_counter = 0;
    update_lock = new ReentrantLock();
    update_condition = update_lock.newCondition();
+   universe_executor = new CatmodelExecutor(cc);
 
    device_factory = new CatdevFactory(this);
    program_factory = new CatprogFactory(this);
@@ -270,6 +272,12 @@ private void setupBridges()
 }
 
 
+@Override public void execute(Runnable task)
+{
+   universe_executor.execute(task);
+}
+
+
 @Override public void setValue(CatreParameter p,Object val)
 {
    parameter_values.putValue(p,val);
@@ -307,7 +315,17 @@ private void setupBridges()
 @Override public Map<String,Object> toJson()
 {
    Map<String,Object> rslt = super.toJson();
-   rslt.put("DEVICES",getSubObjectArrayToSave(all_devices));
+
+   // saves run on the store's writer thread; copy the devices under the lock
+   List<CatreDevice> devs;
+   update_lock.lock();
+   try {
+      devs = new ArrayList<>(all_devices);
+    }
+   finally {
+      update_lock.unlock();
+    }
+   rslt.put("DEVICES",getSubObjectArrayToSave(devs));
    if (universe_program == null) rslt.put("PROGRAM",null);
    else rslt.put("PROGRAM",universe_program.toJson());
    rslt.put("USER_ID",getUIDToSave(for_user));
@@ -476,7 +494,13 @@ private void setupBridges()
    
    CatreLog.logD("CATMODEL","Add device " + cd.getName() + " to " + getName());
 
-   all_devices.add(cd);
+   update_lock.lock();
+   try {
+      all_devices.add(cd);
+    }
+   finally {
+      update_lock.unlock();
+    }
 
    cd.startDevice();
 
@@ -486,7 +510,13 @@ private void setupBridges()
 
 @Override public void removeDevice(CatreDevice cd)
 {
-   if (!all_devices.remove(cd)) return;
+   update_lock.lock();
+   try {
+      if (!all_devices.remove(cd)) return;
+    }
+   finally {
+      update_lock.unlock();
+    }
 
    fireDeviceRemoved(cd);
 }
@@ -727,7 +757,7 @@ private CatreDevice createAnyDevice(CatreStore cs,Map<String,Object> map)
 
 private void updateStored()
 {
-   catre_control.getDatabase().saveObject(this);
+   catre_control.getDatabase().saveObjectLater(this);
 }
 
 
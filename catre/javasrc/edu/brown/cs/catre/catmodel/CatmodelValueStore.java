@@ -0,0 +1,165 @@
+/********************************************************************************/
+/*										*/
+/*		CatmodelValueStore.java						*/
+/*										*/
+/*	Slot-indexed storage for the current parameter values of a universe	*/
+/*										*/
+/********************************************************************************/
+/*	Copyright 2023 Brown University -- Steven P. Reiss			*/
+/*********************************************************************************
+ *  Copyright 2023, Brown University, Providence, RI.				 *
+ *										 *
+ *			  All Rights Reserved					 *
+ *										 *
+ *  Permission to use, copy, modify, and distribute this software and its	 *
+ *  documentation for any purpose other than its incorporation into a		 *
+ *  commercial product is hereby granted without fee, provided that the 	 *
+ *  above copyright notice appear in all copies and that both that		 *
+ *  copyright notice and this permission notice appear in supporting		 *
+ *  documentation, and that the name of Brown University not be used in 	 *
+ *  advertising or publicity pertaining to distribution of the software 	 *
+ *  without specific, written prior permission. 				 *
+ *										 *
+ *  BROWN UNIVERSITY DISCLAIMS ALL WARRANTIES WITH REGARD TO THIS		 *
+ *  SOFTWARE, INCLUDING ALL IMPLIED WARRANTIES OF MERCHANTABILITY AND		 *
+ *  FITNESS FOR ANY PARTICULAR PURPOSE.  IN NO EVENT SHALL BROWN UNIVERSITY	 *
+ *  BE LIABLE FOR ANY SPECIAL, INDIRECT OR CONSEQUENTIAL DAMAGES OR ANY 	 *
+ *  DAMAGES WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS,		 *
+ *  WHETHER IN AN ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS		 *
+ *  ACTION, ARISING OUT OF OR IN CONNECTION WITH THE USE OR PERFORMANCE 	 *
+ *  OF THIS SOFTWARE.								 *
+ *										 *
+ ********************************************************************************/
+
+
+
+
+
+
+
+
+package edu.brown.cs.catre.catmodel;
+
+import java.util.Arrays;
+
+import edu.brown.cs.catre.catre.CatreParameter;
+
+/**
+ *	Each parameter is given a dense slot the first time it is stored and
+ *	its normalized value is kept in an array indexed by that slot.  Reads
+ *	take no lock and do no hashing or boxing; writes are serialized and
+ *	bump a version number that publishes the new value to readers.
+ **/
+
+class CatmodelValueStore implements CatmodelConstants
+{
+
+
+/********************************************************************************/
+/*										*/
+/*	Private Storage 							*/
+/*										*/
+/********************************************************************************/
+
+private Object []	slot_values;
+private int		slot_count;
+private volatile long	store_version;
+
+private static final int	INITIAL_SLOTS = 64;
+
+
+
+/********************************************************************************/
+/*										*/
+/*	Constructors								*/
+/*										*/
+/********************************************************************************/
+
+CatmodelValueStore()
+{
+   slot_values = new Object[INITIAL_SLOTS];
+   slot_count = 0;
+   store_version = 0;
+}
+
+
+
+/********************************************************************************/
+/*										*/
+/*	Access methods								*/
+/*										*/
+/********************************************************************************/
+
+Object getValue(CatreParameter p)
+{
+   // the volatile read orders this after the last completed write
+   if (p == null || store_version < 0) return null;
+
+   int slot = ((CatmodelParameter) p).getValueSlot();
+   Object [] vals = slot_values;
+   if (slot < 0 || slot >= vals.length) return null;
+
+   return vals[slot];
+}
+
+
+synchronized Object putValue(CatreParameter p,Object o)
+{
+   if (p == null) return null;
+
+   int slot = getSlot((CatmodelParameter) p);
+   o = p.normalize(o);
+   Object prev = slot_values[slot];
+   slot_values[slot] = o;
+   ++store_version;
+
+   return prev;
+}
+
+
+synchronized void clearValues()
+{
+   Arrays.fill(slot_values,null);
+   ++store_version;
+}
+
+
+/**
+ *	Return a counter that changes whenever any value is updated.
+ **/
+
+long getVersion()
+{
+   return store_version;
+}
+
+
+
+/********************************************************************************/
+/*										*/
+/*	Slot management 							*/
+/*										*/
+/********************************************************************************/
+
+private int getSlot(CatmodelParameter p)
+{
+   int slot = p.getValueSlot();
+   if (slot >= 0) return slot;
+
+   slot = slot_count++;
+   if (slot >= slot_values.length) {
+      slot_values = Arrays.copyOf(slot_values,slot_values.length*2);
+    }
+   p.setValueSlot(slot);
+
+   return slot;
+}
+
+
+
+}	// end of class CatmodelValueStore
+
+
+
+
+/* end of CatmodelValueStore.java */
@@ -76,6 +76,7 @@ private List<FieldMatch> field_matches;
 private CatreParameterRef param_ref;
 private Boolean is_on;
 private CatreDevice last_device;
+private CatreParameter last_parameter;
 
 
 enum CalOperator { IGNORE, ISNULL, ISNONNULL, MATCH, NOMATCH };
@@ -94,6 +95,7 @@ CatprogConditionCalendarEvent(CatprogProgram pgm,CatreStore cs,Map<String,Object
    
    is_on = null;
    last_device = null;
+   last_parameter = null;
    
    param_ref.initialize();
    
@@ -109,6 +111,7 @@ private CatprogConditionCalendarEvent(CatprogConditionCalendarEvent cc)
          cc.param_ref.getParameterName());
    is_on = null;
    last_device = null;
+   last_parameter = null;
 }
 
 
@@ -188,14 +191,16 @@ private CatprogConditionCalendarEvent(CatprogConditionCalendarEvent cc)
    if (param_ref == null) return;
    
    last_device = param_ref.getDevice();
-   last_device.addDeviceListener(this);
+   last_parameter = param_ref.getParameter();
+   last_device.addParameterListener(last_parameter,this);
 }
 
 
 @Override protected void localStopCondition() 
 {
-   if (last_device != null) last_device.removeDeviceListener(this);
+   if (last_device != null) last_device.removeParameterListener(last_parameter,this);
    last_device = null;
+   last_parameter = null;
 }
 
 
@@ -38,12 +38,12 @@ package edu.brown.cs.catre.catprog;
 
 
 import java.util.Map;
-import java.util.TimerTask;
 
 import edu.brown.cs.catre.catre.CatreCondition;
 import edu.brown.cs.catre.catre.CatreConditionListener;
 import edu.brown.cs.catre.catre.CatrePropertySet;
 import edu.brown.cs.catre.catre.CatreStore;
+import edu.brown.cs.catre.catre.CatreTimer;
 
 
 class CatprogConditionDuration extends CatprogCondition
@@ -272,7 +272,7 @@ private class CondChanged implements CatreConditionListener {
 private abstract class StateRepr {
    
    protected Throwable error_cause;
-   protected TimerTask timer_task;
+   protected CatreTimer timer_task;
    protected CatrePropertySet on_params;
    
    StateRepr() {
@@ -310,8 +310,7 @@ private abstract class StateRepr {
       if (timer_task != null) timer_task.cancel();
       timer_task = null;
       if (when <= 0) return;
-      timer_task = new TimeChanged();
-      getCatre().schedule(timer_task,when);
+      timer_task = getCatre().scheduleTimer(new TimeChanged(),when);
     }
    
 }	// end of inner class StateRepr
@@ -426,7 +425,7 @@ private class StateReprTrigger extends StateRepr {
 /*										*/
 /********************************************************************************/
 
-private class TimeChanged extends TimerTask {
+private class TimeChanged implements Runnable {
    
    TimeChanged() { }
    
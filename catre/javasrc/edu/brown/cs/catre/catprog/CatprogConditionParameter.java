@@ -66,6 +66,7 @@ private Object		for_state;
 private Boolean 	is_on;
 private boolean 	is_trigger;
 private CatreDevice	last_device;
+private CatreParameter	last_parameter;
 private boolean 	needs_name;
 private Operator	check_operator;
 
@@ -83,6 +84,7 @@ CatprogConditionParameter(CatprogProgram pgm,CatreStore cs,Map<String,Object> ma
 
    needs_name = false;
    last_device = null;
+   last_parameter = null;
 
    setConditionName();
 
@@ -102,6 +104,7 @@ private CatprogConditionParameter(CatprogConditionParameter cc)
    for_state = cc.for_state;
    is_trigger = cc.is_trigger;
    last_device = null;
+   last_parameter = null;
    needs_name = false;	
    check_operator = cc.check_operator;
    param_ref.initialize();
@@ -269,7 +272,8 @@ private boolean computeResult(Object cvl)
    if (param_ref == null) return;
 
    last_device = param_ref.getDevice();
-   last_device.addDeviceListener(this);
+   last_parameter = param_ref.getParameter();
+   last_device.addParameterListener(last_parameter,this);
    
    CatreParameter cp = param_ref.getParameter();
    if (cp != null) stateChanged(cp);
@@ -278,8 +282,9 @@ private boolean computeResult(Object cvl)
 
 @Override protected void localStopCondition()
 {
-   if (last_device != null) last_device.removeDeviceListener(this);
+   if (last_device != null) last_device.removeParameterListener(last_parameter,this);
    last_device = null;
+   last_parameter = null;
    
    CatreParameter cp = param_ref.getParameter();
    if (cp != null) stateChanged(cp);
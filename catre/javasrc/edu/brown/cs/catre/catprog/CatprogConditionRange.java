@@ -64,6 +64,7 @@ private Number		high_value;
 private Boolean 	is_on;
 private boolean 	is_trigger;
 private CatreDevice	last_device;
+private CatreParameter	last_parameter;
 
 
 
@@ -79,6 +80,7 @@ CatprogConditionRange(CatprogProgram pgm,CatreStore cs,Map<String,Object> map)
 
    is_on = null;
    last_device = null;
+   last_parameter = null;
 
    param_ref.initialize();
 
@@ -96,6 +98,7 @@ private CatprogConditionRange(CatprogConditionRange cc)
    is_on = null;
    is_trigger = cc.is_trigger;
    last_device = null;
+   last_parameter = null;
 
    param_ref.initialize();
 
@@ -135,13 +138,15 @@ private CatprogConditionRange(CatprogConditionRange cc)
 @Override protected void localStartCondition()
 {
    last_device = param_ref.getDevice();
-   last_device.addDeviceListener(this);
+   last_parameter = param_ref.getParameter();
+   last_device.addParameterListener(last_parameter,this);
 }
 
 @Override protected void localStopCondition()
 {
-   if (last_device != null) last_device.removeDeviceListener(this);
+   if (last_device != null) last_device.removeParameterListener(last_parameter,this);
    last_device = null;
+   last_parameter = null;
 }
 
 
@@ -40,7 +40,6 @@ package edu.brown.cs.catre.catprog;
 import java.util.Calendar;
 import java.util.List;
 import java.util.Map;
-import java.util.TimerTask;
 
 import edu.brown.cs.catre.catre.CatreTimeSlotEvent;
 import edu.brown.cs.catre.catre.CatreCondition;
@@ -147,7 +146,7 @@ private void setupTimer()
        }
       else delay = t0-now;
     }
-   getCatre().schedule(new CondChecker(),delay);
+   getCatre().scheduleTimer(new CondChecker(),delay);
 }
 
 
@@ -191,7 +190,7 @@ private void setupTimer()
 /*										*/
 /********************************************************************************/
 
-private class CondChecker extends TimerTask {
+private class CondChecker implements Runnable {
 
    @Override public void run() {
       setTime();
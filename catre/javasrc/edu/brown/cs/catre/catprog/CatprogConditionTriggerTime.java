@@ -37,15 +37,19 @@
 package edu.brown.cs.catre.catprog;
 
 
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.temporal.ChronoUnit;
 import java.util.BitSet;
-import java.util.Calendar;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.StringTokenizer;
-import java.util.TimerTask;
 
 import edu.brown.cs.catre.catre.CatreCondition;
 import edu.brown.cs.catre.catre.CatreStore;
+import edu.brown.cs.catre.catre.CatreTimer;
 
 
 class CatprogConditionTriggerTime extends CatprogCondition
@@ -66,11 +70,12 @@ private BitSet		month_check;
 private BitSet		weekday_check;
 
 private String          time_description;
-private TimerTask	cur_timer;
+private CatreTimer	cur_timer;
 private boolean         is_active;
 
 private static HashMap<String,Integer> value_map;
 private static long	MAX_TIME =  T_DAY;
+private static final int MAX_SEARCH_YEARS = 8;
 
 
 static {
@@ -178,14 +183,15 @@ private void setupChecks()
    long next = computeNext(d0);
    long delta = -1;
    if (next > when) delta = next - when;
+   Runnable task = null;
    if (delta < 0 || delta > MAX_TIME) {
-      cur_timer = new RecheckTimer();
+      task = new RecheckTimer();
       delta = MAX_TIME;
     }
    else {
-      cur_timer = new TriggerTimer();
+      task = new TriggerTimer();
     }
-   getCatre().schedule(cur_timer,delta);
+   cur_timer = getCatre().scheduleTimer(task,delta);
 }
 
 
@@ -208,89 +214,103 @@ private void setupTimer()
 /*										*/
 /********************************************************************************/
 
-private long computeNext(long start)
+/**
+ *	Find the first minute boundary at or after start that matches the
+ *	schedule.  Fields are resolved from month down to minute using bit
+ *	scans, so sparse schedules don't require stepping through time.  The
+ *	day of month and day of week must both match.  Returns -1 if nothing
+ *	matches within MAX_SEARCH_YEARS.
+ **/
+
+long computeNext(long start)
 {
-   Calendar c = Calendar.getInstance();
-   c.setTimeInMillis(start);
-   
-   for ( ; ; ) {
-      if (checkMonth(c)) continue;
-      if (checkDay(c)) continue;
-      if (checkHour(c)) continue;
-      if (!checkMinute(c)) break;
+   if (minute_check.nextSetBit(0) < 0 || hour_check.nextSetBit(0) < 0 ||
+	 day_check.nextSetBit(1) < 0 || month_check.nextSetBit(1) < 0 ||
+	 weekday_check.nextSetBit(0) < 0)
+      return -1;
+
+   ZoneId zone = ZoneId.systemDefault();
+   LocalDateTime t0 = LocalDateTime.ofInstant(Instant.ofEpochMilli(start),zone);
+   if (t0.getSecond() != 0 || t0.getNano() != 0) {
+      t0 = t0.truncatedTo(ChronoUnit.MINUTES).plusMinutes(1);
     }
-   
-   return c.getTimeInMillis();
-}
 
+   LocalDate day = t0.toLocalDate();
+   LocalDate limit = day.plusYears(MAX_SEARCH_YEARS);
+   int hour = t0.getHour();
+   int minute = t0.getMinute();
+
+   while (!day.isAfter(limit)) {
+      int mon = month_check.nextSetBit(day.getMonthValue());
+      if (mon < 0 || mon > 12) {
+	 day = LocalDate.of(day.getYear()+1,1,1);
+	 hour = minute = 0;
+	 continue;
+       }
+      if (mon != day.getMonthValue()) {
+	 day = LocalDate.of(day.getYear(),mon,1);
+	 hour = minute = 0;
+       }
 
+      int dom = validDays(day).nextSetBit(day.getDayOfMonth());
+      if (dom < 0) {
+	 day = day.withDayOfMonth(1).plusMonths(1);
+	 hour = minute = 0;
+	 continue;
+       }
+      if (dom != day.getDayOfMonth()) {
+	 day = day.withDayOfMonth(dom);
+	 hour = minute = 0;
+       }
 
-private boolean checkMonth(Calendar c)
-{
-   int mon = c.get(Calendar.MONTH) + 1;
-   if (month_check.get(mon)) return false;
-   c.add(Calendar.MONTH,1);
-   c.set(Calendar.DAY_OF_MONTH,1);
-   c.set(Calendar.HOUR,0);
-   c.set(Calendar.MINUTE,0);
-   c.set(Calendar.SECOND,0);
-   c.set(Calendar.MILLISECOND,0);
-   
-   return true;
-}
+      int hr = hour_check.nextSetBit(hour);
+      if (hr < 0 || hr > 23) {
+	 day = day.plusDays(1);
+	 hour = minute = 0;
+	 continue;
+       }
+      if (hr != hour) {
+	 hour = hr;
+	 minute = 0;
+       }
 
+      int min = minute_check.nextSetBit(minute);
+      if (min < 0 || min > 59) {
+	 minute = 0;
+	 if (++hour > 23) {
+	    day = day.plusDays(1);
+	    hour = 0;
+	  }
+	 continue;
+       }
 
-private boolean checkDay(Calendar c)
-{
-   int dow = c.get(Calendar.DAY_OF_WEEK) - 1;
-   int dom = c.get(Calendar.DAY_OF_MONTH);
-   int ctr = 0;
-   while (!weekday_check.get(dow) || !day_check.get(dom)) {
-      c.add(Calendar.DAY_OF_YEAR,1);
-      c.set(Calendar.HOUR_OF_DAY,0);
-      c.set(Calendar.MINUTE,0);
-      c.set(Calendar.SECOND,0);
-      c.set(Calendar.MILLISECOND,0);
-      dow = c.get(Calendar.DAY_OF_WEEK) - 1;
-      dom = c.get(Calendar.DAY_OF_MONTH);
-      if (++ctr > 366) break;
+      return day.atTime(hour,min).atZone(zone).toInstant().toEpochMilli();
     }
-   
-   return ctr == 0;
-}
 
-
-private boolean checkHour(Calendar c)
-{
-   int ctr = 0;
-   int hod = c.get(Calendar.HOUR_OF_DAY);
-   while (!hour_check.get(hod)) {
-      c.add(Calendar.HOUR_OF_DAY,1);
-      c.set(Calendar.MINUTE,0);
-      c.set(Calendar.SECOND,0);
-      c.set(Calendar.MILLISECOND,0);
-      hod = c.get(Calendar.HOUR_OF_DAY);
-      if (++ctr > 24) return true;
-    }
-   
-   return ctr > 0;
+   return -1;
 }
 
 
 
-private boolean checkMinute(Calendar c)
+/**
+ *	Return the days of the given month that match both the day of month
+ *	and the day of week sets.
+ **/
+
+private BitSet validDays(LocalDate day)
 {
-   int ctr = 0;
-   int min = c.get(Calendar.MINUTE);
-   while (!hour_check.get(min)) {
-      c.add(Calendar.MINUTE,1);
-      c.set(Calendar.SECOND,0);
-      c.set(Calendar.MILLISECOND,0);
-      min = c.get(Calendar.MINUTE);
-      if (++ctr > 60) return true;
+   int len = day.lengthOfMonth();
+   int dow1 = day.withDayOfMonth(1).getDayOfWeek().getValue() % 7;
+
+   BitSet rslt = new BitSet(len+1);
+   for (int wd = weekday_check.nextSetBit(0); wd >= 0 && wd < 7; wd = weekday_check.nextSetBit(wd+1)) {
+      for (int d = 1 + (wd - dow1 + 7) % 7; d <= len; d += 7) {
+	 rslt.set(d);
+       }
     }
-   
-   return ctr > 0;
+   rslt.and(day_check);
+
+   return rslt;
 }
 
 
@@ -455,7 +475,7 @@ private String computeDescription()
 /*										*/
 /********************************************************************************/
 
-private class RecheckTimer extends TimerTask {
+private class RecheckTimer implements Runnable {
    
    @Override public void run() {
       setupTimer();
@@ -465,7 +485,7 @@ private class RecheckTimer extends TimerTask {
 
 
 
-private class TriggerTimer extends TimerTask {
+private class TriggerTimer implements Runnable {
    
    @Override public void run() {
       fireTrigger(null);
@@ -49,6 +49,8 @@ public interface CatprogConstants
 /********************************************************************************/
 
 long    RUN_DELAY = 1000;               // delay after change in ms
+long    MAX_RUN_DELAY = 5000;           // max delay after first unprocessed change
+long    ACTION_WAIT_TIME = 60000;       // max wait for a rule's device commands
 
 
 
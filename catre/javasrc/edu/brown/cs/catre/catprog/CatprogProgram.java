@@ -53,6 +53,8 @@ import java.util.Set;
 import java.util.SortedSet;
 import java.util.WeakHashMap;
 import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.json.JSONObject;
 
@@ -61,7 +63,9 @@ import edu.brown.cs.catre.catre.CatreCondition;
 import edu.brown.cs.catre.catre.CatreConditionListener;
 import edu.brown.cs.catre.catre.CatreDevice;
 import edu.brown.cs.catre.catre.CatreException;
+import edu.brown.cs.catre.catre.CatreHistogram;
 import edu.brown.cs.catre.catre.CatreLog;
+import edu.brown.cs.catre.catre.CatreMetrics;
 import edu.brown.cs.catre.catre.CatreParameter;
 import edu.brown.cs.catre.catre.CatreParameterRef;
 import edu.brown.cs.catre.catre.CatreProgram;
@@ -85,9 +89,17 @@ private SortedSet<CatreRule>	rule_list;
 private CatreUniverse		for_universe;
 private Set<CatreCondition>	active_conditions;
 private Map<CatreCondition,RuleConditionHandler> cond_handlers;
-private Updater 		active_updates;
+private ScheduledFuture<?>	update_timer;
+private long			first_change;
+private long			last_change;
 private SwingEventListenerList<CatreProgramListener> program_callbacks;
 private Map<String,CatprogCondition> shared_conditions;
+private Map<CatreCondition,Set<CatreRule>> condition_rules;
+private Set<CatreCondition> changed_conditions;
+private boolean 	check_all_rules;
+private CatreHistogram	run_times;
+private CatreHistogram	action_times;
+private AtomicLong	condition_changes;
 
 
 
@@ -105,9 +117,17 @@ public CatprogProgram(CatreUniverse uu)
    rule_list = new ConcurrentSkipListSet<>(new RuleComparator());
    active_conditions = new HashSet<>();
    shared_conditions = new HashMap<>();
-   active_updates = null;
+   update_timer = null;
+   first_change = 0;
+   last_change = 0;
    cond_handlers = new WeakHashMap<>();
+   condition_rules = new HashMap<>();
+   changed_conditions = new HashSet<>();
+   check_all_rules = true;
    program_callbacks = new SwingEventListenerList<>(CatreProgramListener.class);
+   run_times = new CatreHistogram();
+   action_times = new CatreHistogram();
+   condition_changes = new AtomicLong();
 }
 
 
@@ -195,7 +215,7 @@ CatprogProgram(CatreUniverse uu,CatreStore cs,Map<String,Object> map)
    rule_list.add(ur);
    updateConditions();
 
-   CatreLog.logD("CATPROG","Add rule " + ur.toJson());
+   CatreLog.logD("CATPROG",() -> "Add rule " + ur.toJson());
    
    fireProgramUpdated();
 }
@@ -231,14 +251,14 @@ public Set<CatreParameterRef> getActiveSensors()
 {
    Set<CatreParameterRef> rslt = new HashSet<>();
    
-   CatreLog.logD("CATPROG","Get active sensors " +
+   CatreLog.logD("CATPROG",() -> "Get active sensors " +
          active_conditions.size() + " " +
          active_conditions);
    
    for (CatreCondition cc : active_conditions) {
       CatprogCondition cpc = (CatprogCondition) cc;
       CatreParameterRef ref = cpc.getActiveSensor(); 
-      CatreLog.logD("CATPROG","Active sensors for " + cpc.getName() + " " +
+      CatreLog.logD("CATPROG",() -> "Active sensors for " + cpc.getName() + " " +
             ref);
       if (ref != null) {
          rslt.add(ref);
@@ -389,14 +409,17 @@ private void updateConditions()
          " " + rule_list.size());
    
    Set<CatreCondition> del = new HashSet<>(active_conditions);
+   Map<CatreCondition,Set<CatreRule>> deps = new HashMap<>();
 
    for (CatreRule ur : rule_list) {
       CatreLog.logD("CATPROG","Work on rule " + ur.getDescription());
       for (CatreCondition cc : ur.getConditions()) {
          CatreLog.logD("CATPROG","Work on condition " + cc.getDescription());
-         markActive(cc,del);
+         markActive(cc,ur,del,deps);
        }
     }
+   
+   condition_rules = deps;
 
    for (CatreCondition uc : del) {
       if (uc.isShared()) continue;
@@ -410,12 +433,20 @@ private void updateConditions()
 }
 
 
-private void markActive(CatreCondition cc0,Set<CatreCondition> todel)
+private void markActive(CatreCondition cc0,CatreRule ur,Set<CatreCondition> todel,
+      Map<CatreCondition,Set<CatreRule>> deps)
 {
    if (cc0 == null) return;
    
    CatprogCondition cc = (CatprogCondition) cc0;
    
+   Set<CatreRule> rules = deps.get(cc);
+   if (rules == null) {
+      rules = new HashSet<>();
+      deps.put(cc,rules);
+    }
+   rules.add(ur);
+   
    todel.remove(cc);
    if (!active_conditions.contains(cc)) {
       CatreLog.logD("CATPROG","Mark condition " + cc.getName() + " active");
@@ -425,7 +456,7 @@ private void markActive(CatreCondition cc0,Set<CatreCondition> todel)
       cc.addConditionHandler(rch);
     }
    CatreCondition sub = cc.getSubcondition();
-   markActive(sub,todel);
+   markActive(sub,ur,todel,deps);
 }
 
 
@@ -438,21 +469,18 @@ private void conditionChange(CatreCondition c)
 
 private void conditionChange(CatreCondition c,boolean istrig,CatrePropertySet ps)
 {
-   CatreLog.logD("CATPROG","Condition changed " + c + " " +
+   CatreLog.logD("CATPROG",() -> "Condition changed " + c + " " +
          istrig + " " + ps);
+   condition_changes.incrementAndGet();
    
    for_universe.updateLock();
    try {
       if (istrig && c != null) for_universe.addTrigger(c,ps);
-      Updater upd = active_updates;
-      if (upd != null) {
-	 upd.runAgain();
-       }
-      else {
-	 upd = new Updater();
-	 active_updates = upd;
-	 for_universe.getCatre().submit(upd);
-       }
+      if (c == null) check_all_rules = true;
+      else changed_conditions.add(c);
+      last_change = System.currentTimeMillis();
+      if (first_change == 0) first_change = last_change;
+      if (update_timer == null) scheduleUpdate(RUN_DELAY);
     }
    finally {
       for_universe.updateUnlock();
@@ -462,78 +490,58 @@ private void conditionChange(CatreCondition c,boolean istrig,CatrePropertySet ps
 
 
 
-private class Updater implements Runnable {
+/**
+ *      Changes are debounced: the program runs once no change has been seen
+ *      for RUN_DELAY, but never more than MAX_RUN_DELAY after the first
+ *      unprocessed change.  Only one timer is outstanding; when it fires
+ *      early it just reschedules itself for the remaining time.
+ **/
 
-   private boolean run_again;
-   private long last_request;
+private void scheduleUpdate(long delay)
+{
+   update_timer = for_universe.getCatre().schedule(new UpdateTimer(),delay);
+}
 
-   Updater() {
-      run_again = true;
-      last_request = 0;
-    }
 
-   void runAgain() {
-      for_universe.updateLock();
-      try {
-         run_again = true;
-         last_request = System.currentTimeMillis();
-       }
-      finally {
-         for_universe.updateUnlock();
-       }
-    }
+private class UpdateTimer implements Runnable {
 
    @Override public void run() {
-      CatreLog.logD("CATPROG","Start updater for " + for_universe.getName());
       for_universe.updateLock();
       try {
-         for ( ; ; ) {
-            long now = System.currentTimeMillis();
-            if (now - last_request > RUN_DELAY) break;
-            try {
-               wait(now-last_request);
-             }
-            catch (InterruptedException e) { }
+         long now = System.currentTimeMillis();
+         long due = Math.min(last_change + RUN_DELAY,first_change + MAX_RUN_DELAY);
+         if (now < due) {
+            scheduleUpdate(due - now);
+            return;
           }
-         run_again = false;
+         update_timer = null;
+         first_change = 0;
        }
       finally {
          for_universe.updateUnlock();
        }
       
+      for_universe.execute(new Updater());
+    }
+
+}	// end of inner class UpdateTimer
+
+
+
+private class Updater implements Runnable {
+
+   @Override public void run() {
       CatreLog.logD("CATPROG","Ready to do update for " + for_universe.getName());
       
-      for ( ; ; ) {
-         CatreTriggerContext ctx = null;
-         for_universe.updateLock();
-         try {
-            ctx = for_universe.waitForUpdate();
-            run_again = false;
-          }
-         finally {
-            for_universe.updateUnlock();
-          }
-        
-         try {
-            runOnce(ctx);
-          }
-         catch (Throwable t) {
-            CatreLog.logE("CATPROG","Problem running program",t);
-          }
-        
-         for_universe.updateLock();
-         try {
-            if (!run_again) {
-               active_updates = null;
-               resetTriggers();
-               break;
-             }
-          }
-         finally {
-            for_universe.updateUnlock();
-          }
+      CatreTriggerContext ctx = for_universe.waitForUpdate();
+      try {
+         runOnce(ctx);
        }
-   
+      catch (Throwable t) {
+         CatreLog.logE("CATPROG","Problem running program",t);
+       }
+      
+      resetTriggers();
     }
 
 }	// end of inner class Updater
@@ -569,19 +577,22 @@ private class RuleConditionHandler implements CatreConditionListener {
 
 @Override public synchronized boolean runOnce(CatreTriggerContext ctx)
 {
-   CatreLog.logD("CATPROG","Run program " +
+   CatreLog.logD("CATPROG",() -> "Run program " +
          rule_list.size() + " " + ctx);
    
+   long start = System.nanoTime();
    boolean rslt = false;
 
    Set<CatreDevice> entities = new HashSet<>();
+   Set<CatreDevice> affected = findAffectedDevices();
 
    Collection<CatreRule> rules = new ArrayList<>(rule_list);
 
-   CatreLog.logI("CATPROG","CHECK RULES at " + new Date());
+   CatreLog.logI("CATPROG",() -> "CHECK RULES at " + new Date());
 
    for (CatreRule r : rules) {
       CatreDevice rent = r.getTargetDevice();
+      if (affected != null && !affected.contains(rent)) continue;
       if (entities.contains(rent)) continue;
       try {
 	 if (startRule(r,ctx)) {
@@ -594,11 +605,55 @@ private class RuleConditionHandler implements CatreConditionListener {
        }
     }
 
+   run_times.recordSince(start);
+
    return rslt;
 }
 
 
 
+/**
+ *      Determine which devices need their rules rechecked.  Only rules whose
+ *      conditions changed since the last run can change the outcome for their
+ *      device; all rules for such a device (including the rule currently holding
+ *      it) are rechecked in priority order.  Returns null if everything should
+ *      be checked.
+ **/
+
+private Set<CatreDevice> findAffectedDevices()
+{
+   Set<CatreCondition> chng = null;
+   
+   for_universe.updateLock();
+   try {
+      if (check_all_rules) {
+         check_all_rules = false;
+         changed_conditions.clear();
+         return null;
+       }
+      chng = changed_conditions;
+      changed_conditions = new HashSet<>();
+    }
+   finally {
+      for_universe.updateUnlock();
+    }
+   
+   Set<CatreDevice> rslt = new HashSet<>();
+   for (CatreCondition cc : chng) {
+      Set<CatreRule> rules = condition_rules.get(cc);
+      if (rules == null) continue;
+      for (CatreRule cr : rules) {
+         rslt.add(cr.getTargetDevice());
+       }
+    }
+   
+   CatreLog.logD("CATPROG","Changed conditions " + chng.size() + 
+         " affect " + rslt.size() + " devices");
+   
+   return rslt;
+}
+
+
 private boolean startRule(CatreRule r,CatreTriggerContext ctx)
 	throws CatreException
 {
@@ -613,6 +668,42 @@ private void resetTriggers()
 
 
 
+/********************************************************************************/
+/*										*/
+/*	Statistics methods							*/
+/*										*/
+/********************************************************************************/
+
+void noteActionTime(long start)
+{
+   action_times.recordSince(start);
+}
+
+
+@Override public void addMetrics(CatreMetrics m)
+{
+   String uid = for_universe.getDataUID();
+   List<CatreRule> rules = new ArrayList<>(rule_list);
+
+   m.addHistogram("catre_program_run_seconds","Time to evaluate the rules of a universe",
+	 run_times,"universe",uid);
+   m.addHistogram("catre_action_seconds","Time to perform the actions of a rule",
+	 action_times,"universe",uid);
+
+   for (CatreRule cr : rules) {
+      CatprogRule pr = (CatprogRule) cr;
+      m.addCounter("catre_rule_evaluations_total","Times a rule was checked",
+	    pr.getEvaluationCount(),"universe",uid,"rule",cr.getDataUID());
+      m.addCounter("catre_rule_fires_total","Times a rule's conditions held and it was applied",
+	    pr.getFireCount(),"universe",uid,"rule",cr.getDataUID());
+    }
+
+   m.addCounter("catre_condition_changes_total","Condition state changes and triggers",
+	 condition_changes.get(),"universe",uid);
+}
+
+
+
 /********************************************************************************/
 /*										*/
 /*	Rule priority comparator						*/
@@ -38,8 +38,10 @@ package edu.brown.cs.catre.catprog;
 
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
 
 import edu.brown.cs.catre.catre.CatreAction;
+import edu.brown.cs.catre.catre.CatreActionBatch;
 import edu.brown.cs.catre.catre.CatreActionException;
 import edu.brown.cs.catre.catre.CatreCondition;
 import edu.brown.cs.catre.catre.CatreConditionException;
@@ -71,6 +73,8 @@ private double		rule_priority;
 private volatile RuleRunner active_rule;
 private long		creation_time;
 private boolean         force_trigger;
+private AtomicLong	eval_count;
+private AtomicLong	fire_count;
 
 
 
@@ -93,6 +97,8 @@ CatprogRule(CatreProgram pgm,CatreStore cs,Map<String,Object> map)
    active_rule = null;
    force_trigger = false;
    device_id = null;
+   eval_count = new AtomicLong();
+   fire_count = new AtomicLong();
 
    fromJson(cs,map);
    
@@ -155,6 +161,10 @@ private boolean validateRule()
    return device_id;
 }
 
+long getEvaluationCount()				{ return eval_count.get(); }
+
+long getFireCount()					{ return fire_count.get(); }
+
 
 /********************************************************************************/
 /*										*/
@@ -166,10 +176,11 @@ private boolean validateRule()
 	throws CatreConditionException, CatreActionException
 {
    CatreLog.logD("CATPROG","Start to apply rule " + getName());
+   eval_count.incrementAndGet();
    
    CatrePropertySet ps = null;
    for (CatreCondition cc : for_conditions) {
-      CatreLog.logD("CATPROG","CHECK CONDITION " + cc.getName());
+      CatreLog.logD("CATPROG",() -> "CHECK CONDITION " + cc.getName());
       CatrePropertySet ns = null;
       if (ctx != null) ns = ctx.checkCondition(cc);
       if (ns == null) ns = cc.getCurrentStatus();
@@ -186,6 +197,7 @@ private boolean validateRule()
     }
 
    CatreLog.logI("CATPROG","Apply " + getLabel());
+   fire_count.incrementAndGet();
 
    if (for_actions != null) {
       active_rule = new RuleRunner(ps);
@@ -236,6 +248,9 @@ private class RuleRunner implements Runnable {
     }
 
    void applyRule() {
+      // commands to the same bridge can then be sent together
+      long start = System.nanoTime();
+      CatreActionBatch batch = CatreActionBatch.begin();
       try {
          try {
             for (CatreAction a : for_actions) {
@@ -246,6 +261,7 @@ private class RuleRunner implements Runnable {
         	   }
         	}
              }
+            if (batch != null) batch.finish(ACTION_WAIT_TIME);
           }
          catch (CatreActionException ex) {
             fail_code = ex;
@@ -260,6 +276,8 @@ private class RuleRunner implements Runnable {
           }
        }
       finally {
+         CatreActionBatch.end(batch);
+         for_program.noteActionTime(start);
          synchronized (this) {
             active_rule = null;
             runner_thread = null;
@@ -0,0 +1,192 @@
+/********************************************************************************/
+/*										*/
+/*		CatreActionBatch.java						*/
+/*										*/
+/*	Collect outstanding actions for a rule				*/
+/*										*/
+/********************************************************************************/
+/*	Copyright 2023 Brown University -- Steven P. Reiss			*/
+/*********************************************************************************
+ *  Copyright 2023, Brown University, Providence, RI.				 *
+ *										 *
+ *			  All Rights Reserved					 *
+ *										 *
+ *  Permission to use, copy, modify, and distribute this software and its	 *
+ *  documentation for any purpose other than its incorporation into a		 *
+ *  commercial product is hereby granted without fee, provided that the 	 *
+ *  above copyright notice appear in all copies and that both that		 *
+ *  copyright notice and this permission notice appear in supporting		 *
+ *  documentation, and that the name of Brown University not be used in 	 *
+ *  advertising or publicity pertaining to distribution of the software 	 *
+ *  without specific, written prior permission. 				 *
+ *										 *
+ *  BROWN UNIVERSITY DISCLAIMS ALL WARRANTIES WITH REGARD TO THIS		 *
+ *  SOFTWARE, INCLUDING ALL IMPLIED WARRANTIES OF MERCHANTABILITY AND		 *
+ *  FITNESS FOR ANY PARTICULAR PURPOSE.  IN NO EVENT SHALL BROWN UNIVERSITY	 *
+ *  BE LIABLE FOR ANY SPECIAL, INDIRECT OR CONSEQUENTIAL DAMAGES OR ANY 	 *
+ *  DAMAGES WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS,		 *
+ *  WHETHER IN AN ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS		 *
+ *  ACTION, ARISING OUT OF OR IN CONNECTION WITH THE USE OR PERFORMANCE 	 *
+ *  OF THIS SOFTWARE.								 *
+ *										 *
+ ********************************************************************************/
+
+
+
+package edu.brown.cs.catre.catre;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ *	While a batch is active on the current thread, bridges may queue
+ *	device commands rather than waiting for each one.  The rule then
+ *	waits for all of them at once in finish(), which reports any failure.
+ **/
+
+public class CatreActionBatch
+{
+
+
+/********************************************************************************/
+/*										*/
+/*	Private Storage 							*/
+/*										*/
+/********************************************************************************/
+
+private List<PendingAction> pending_actions;
+
+private static ThreadLocal<CatreActionBatch> current_batch = new ThreadLocal<>();
+
+
+
+/********************************************************************************/
+/*										*/
+/*	Static methods								*/
+/*										*/
+/********************************************************************************/
+
+/**
+ *	Start a batch on this thread.  Returns null if one is already active,
+ *	in which case the outer batch collects the actions.
+ **/
+
+public static CatreActionBatch begin()
+{
+   if (current_batch.get() != null) return null;
+
+   CatreActionBatch b = new CatreActionBatch();
+   current_batch.set(b);
+   return b;
+}
+
+
+public static CatreActionBatch current()
+{
+   return current_batch.get();
+}
+
+
+public static void end(CatreActionBatch b)
+{
+   if (b != null && current_batch.get() == b) current_batch.remove();
+}
+
+
+
+/********************************************************************************/
+/*										*/
+/*	Constructors								*/
+/*										*/
+/********************************************************************************/
+
+private CatreActionBatch()
+{
+   pending_actions = new ArrayList<>();
+}
+
+
+
+/********************************************************************************/
+/*										*/
+/*	Action methods								*/
+/*										*/
+/********************************************************************************/
+
+public void add(String what,CompletableFuture<?> result)
+{
+   pending_actions.add(new PendingAction(what,result));
+}
+
+
+/**
+ *	Wait for all pending actions.  Throws for the first one that failed
+ *	after logging the others.
+ **/
+
+public void finish(long timeout) throws CatreActionException
+{
+   long end = System.currentTimeMillis() + timeout;
+   CatreActionException fail = null;
+
+   for (PendingAction pa : pending_actions) {
+      long wait = Math.max(end - System.currentTimeMillis(),1);
+      CatreActionException ex = null;
+      try {
+	 pa.action_result.get(wait,TimeUnit.MILLISECONDS);
+       }
+      catch (ExecutionException e) {
+	 Throwable t = e.getCause();
+	 if (t instanceof CatreActionException) ex = (CatreActionException) t;
+	 else ex = new CatreActionException("Action " + pa.action_name + " failed",t);
+       }
+      catch (TimeoutException e) {
+	 ex = new CatreActionException("Action " + pa.action_name + " timed out");
+       }
+      catch (InterruptedException e) {
+	 Thread.currentThread().interrupt();
+	 throw new CatreActionException("Action " + pa.action_name + " interrupted");
+       }
+      if (ex != null) {
+	 CatreLog.logD("CATRE","Action " + pa.action_name + " failed: " + ex.getMessage());
+	 if (fail == null) fail = ex;
+       }
+    }
+
+   pending_actions.clear();
+
+   if (fail != null) throw fail;
+}
+
+
+
+/********************************************************************************/
+/*										*/
+/*	Pending action								*/
+/*										*/
+/********************************************************************************/
+
+private static class PendingAction {
+
+   private String action_name;
+   private CompletableFuture<?> action_result;
+
+   PendingAction(String what,CompletableFuture<?> result) {
+      action_name = what;
+      action_result = result;
+    }
+
+}	// end of inner class PendingAction
+
+
+
+}	// end of class CatreActionBatch
+
+
+
+
+/* end of CatreActionBatch.java */
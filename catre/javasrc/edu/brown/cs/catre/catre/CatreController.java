@@ -56,6 +56,15 @@ ScheduledFuture<?> schedule(Runnable task,long delay);
 ScheduledFuture<?> schedule(Runnable task,long delay,long period);
 
 
+/**
+ *      Schedule a one-shot timer.  Unlike schedule(), cancelling the handle
+ *      removes the timer right away, so it suits timers that are often reset.
+ **/
+
+CatreTimer scheduleTimer(Runnable task,long delay);
+int getPendingTimerCount();
+
+
 Future<?> submit(Runnable task);
 <T> Future<T> submit(Runnable task,T result);
 <T> Future<T> submit(Callable<T> task);
@@ -71,6 +80,15 @@ CatreBridge createBridge(String name,CatreUniverse universe);
 
 CatreUniverse createUniverse(String name,CatreUser user);
 
+
+/**
+ *      Make sure a universe is running (started, with its bridges set up).
+ *      Universes that haven't been activated yet at startup are activated
+ *      on first use.
+ **/
+
+void activateUniverse(CatreUniverse universe);
+
 //TODO -- add this back in once figure out HTTP transition
 // void addRoute(String method,String url,BiFunction<IHTTPSession,CatreSession,Response> f);
 // void addPreRoute(String method,String url,BiFunction<IHTTPSession,CatreSession,Response> f);
@@ -78,6 +96,14 @@ CatreUniverse createUniverse(String name,CatreUser user);
 File findBaseDirectory();
 
 
+/**
+ *      Add statistics for the controller (timers, bridges, store, and the
+ *      active universes) to the given metrics.
+ **/
+
+void addMetrics(CatreMetrics metrics);
+
+
 
 
 
@@ -59,6 +59,22 @@ void removeDeviceListener(CatreDeviceListener hdlr);
 
 
 
+/**
+ *	Add a trigger that is called only when the given parameter changes
+ *	state.  Only stateChanged is invoked on such a listener.
+ **/
+
+void addParameterListener(CatreParameter p,CatreDeviceListener hdlr);
+
+
+/**
+ *	Remove a parameter-specific trigger.
+ **/
+
+void removeParameterListener(CatreParameter p,CatreDeviceListener hdlr);
+
+
+
 /**
  *	Return the set of parameters that can be displayed to show the
  *	state of this entity.  Parameters are used here because they are
@@ -90,6 +106,14 @@ Object getParameterValue(CatreParameter p);
 void setParameterValue(CatreParameter p,Object val) throws CatreActionException;
 
 
+/**
+ *	Return the recorded values of a parameter between the given times.  If
+ *	buckets is positive the values are summarized into that many intervals.
+ **/
+
+Map<String,Object> getParameterHistory(CatreParameter p,long from,long to,int buckets);
+
+
 
 
 
@@ -0,0 +1,147 @@
+/********************************************************************************/
+/*										*/
+/*		CatreHistogram.java						*/
+/*										*/
+/*	Lock-free latency histogram						*/
+/*										*/
+/********************************************************************************/
+/*	Copyright 2023 Brown University -- Steven P. Reiss			*/
+/*********************************************************************************
+ *  Copyright 2023, Brown University, Providence, RI.				 *
+ *										 *
+ *			  All Rights Reserved					 *
+ *										 *
+ *  Permission to use, copy, modify, and distribute this software and its	 *
+ *  documentation for any purpose other than its incorporation into a		 *
+ *  commercial product is hereby granted without fee, provided that the 	 *
+ *  above copyright notice appear in all copies and that both that		 *
+ *  copyright notice and this permission notice appear in supporting		 *
+ *  documentation, and that the name of Brown University not be used in 	 *
+ *  advertising or publicity pertaining to distribution of the software 	 *
+ *  without specific, written prior permission. 				 *
+ *										 *
+ *  BROWN UNIVERSITY DISCLAIMS ALL WARRANTIES WITH REGARD TO THIS		 *
+ *  SOFTWARE, INCLUDING ALL IMPLIED WARRANTIES OF MERCHANTABILITY AND		 *
+ *  FITNESS FOR ANY PARTICULAR PURPOSE.  IN NO EVENT SHALL BROWN UNIVERSITY	 *
+ *  BE LIABLE FOR ANY SPECIAL, INDIRECT OR CONSEQUENTIAL DAMAGES OR ANY 	 *
+ *  DAMAGES WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS,		 *
+ *  WHETHER IN AN ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS		 *
+ *  ACTION, ARISING OUT OF OR IN CONNECTION WITH THE USE OR PERFORMANCE 	 *
+ *  OF THIS SOFTWARE.								 *
+ *										 *
+ ********************************************************************************/
+
+
+
+
+
+
+
+package edu.brown.cs.catre.catre;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ *	Counts of latencies (in nanoseconds) in fixed buckets.  Recording is
+ *	lock free so it can be done on the rule evaluation path.
+ **/
+
+public class CatreHistogram
+{
+
+
+/********************************************************************************/
+/*										*/
+/*	Private Storage 							*/
+/*										*/
+/********************************************************************************/
+
+private AtomicLongArray bucket_counts;
+private AtomicLong	total_count;
+private AtomicLong	total_time;
+
+private static final long MS = 1000000;
+
+private static final long [] BUCKET_BOUNDS = {
+   MS/10, MS/4, MS/2, MS, 5*MS/2, 5*MS, 10*MS, 25*MS, 50*MS, 100*MS,
+   250*MS, 500*MS, 1000*MS, 2500*MS, 5000*MS, 10000*MS
+};
+
+
+
+/********************************************************************************/
+/*										*/
+/*	Constructors								*/
+/*										*/
+/********************************************************************************/
+
+public CatreHistogram()
+{
+   bucket_counts = new AtomicLongArray(BUCKET_BOUNDS.length+1);
+   total_count = new AtomicLong();
+   total_time = new AtomicLong();
+}
+
+
+
+/********************************************************************************/
+/*										*/
+/*	Recording methods							*/
+/*										*/
+/********************************************************************************/
+
+public void record(long nanos)
+{
+   int idx = 0;
+   while (idx < BUCKET_BOUNDS.length && nanos > BUCKET_BOUNDS[idx]) ++idx;
+   bucket_counts.incrementAndGet(idx);
+   total_count.incrementAndGet();
+   total_time.addAndGet(nanos);
+}
+
+
+/**
+ *	Record the time since start, a value from System.nanoTime().
+ **/
+
+public void recordSince(long start)
+{
+   record(System.nanoTime() - start);
+}
+
+
+
+/********************************************************************************/
+/*										*/
+/*	Access methods								*/
+/*										*/
+/********************************************************************************/
+
+public static long [] getBucketBounds() 	{ return BUCKET_BOUNDS.clone(); }
+
+public long getCount()				{ return total_count.get(); }
+
+public long getTotalTime()			{ return total_time.get(); }
+
+
+/**
+ *	Return the count in each bucket; the last entry is for values above
+ *	the largest bound.
+ **/
+
+public long [] getBucketCounts()
+{
+   long [] rslt = new long[bucket_counts.length()];
+   for (int i = 0; i < rslt.length; ++i) rslt[i] = bucket_counts.get(i);
+   return rslt;
+}
+
+
+
+}	// end of class CatreHistogram
+
+
+
+
+/* end of CatreHistogram.java */
@@ -36,12 +36,27 @@
 
 package edu.brown.cs.catre.catre;
 
+import java.util.function.Supplier;
+
 import edu.brown.cs.ivy.file.IvyLog;
 
 public class CatreLog extends IvyLog
 {
 
 
+/********************************************************************************/
+/*										*/
+/*	Private Storage 							*/
+/*										*/
+/********************************************************************************/
+
+private static final String	DEFAULT_PACKAGE = "CATRE";
+private static final int	ASYNC_BUFFER_SIZE = 8192;
+
+private static volatile AsyncWriter async_writer = null;
+
+
+
 /********************************************************************************/
 /*										*/
 /*	Control methods 							*/
@@ -54,6 +69,319 @@ public static void setup()
 }
 
 
+/**
+ *	Queue log messages and write them from a background thread so that
+ *	callers never wait on the log file or stderr.  Messages keep their
+ *	order; a caller only blocks if the buffer fills up.
+ **/
+
+public static synchronized void useAsync(boolean fg)
+{
+   if (fg && async_writer == null) {
+      AsyncWriter aw = new AsyncWriter(ASYNC_BUFFER_SIZE);
+      aw.start();
+      async_writer = aw;
+    }
+   else if (!fg && async_writer != null) {
+      AsyncWriter aw = async_writer;
+      async_writer = null;
+      aw.finish();
+    }
+}
+
+
+public static void flush()
+{
+   AsyncWriter aw = async_writer;
+   if (aw != null) aw.drain();
+}
+
+
+public static boolean isLogging(LogLevel lvl)
+{
+   return lvl.ordinal() <= getLogLevel().ordinal();
+}
+
+
+
+/********************************************************************************/
+/*										*/
+/*	Deferred logging methods						*/
+/*										*/
+/********************************************************************************/
+
+public static void logD(String pkg,Supplier<String> msg)
+{
+   if (isLogging(LogLevel.DEBUG)) logD(pkg,msg.get());
+}
+
+
+public static void logI(String pkg,Supplier<String> msg)
+{
+   if (isLogging(LogLevel.INFO)) logI(pkg,msg.get());
+}
+
+
+
+/********************************************************************************/
+/*										*/
+/*	Logging methods 							*/
+/*										*/
+/********************************************************************************/
+
+public static void logE(String pkg,String msg,Throwable t)
+{
+   enqueue(LogLevel.ERROR,pkg,0,msg,t);
+}
+
+public static void logE(String pkg,String msg)
+{
+   enqueue(LogLevel.ERROR,pkg,0,msg,null);
+}
+
+public static void logX(String pkg,String msg)
+{
+   enqueue(LogLevel.ERROR,pkg,0,msg,new Throwable(msg));
+}
+
+public static void logW(String pkg,String msg)
+{
+   enqueue(LogLevel.WARNING,pkg,0,msg,null);
+}
+
+public static void logI(String pkg,String msg)
+{
+   enqueue(LogLevel.INFO,pkg,0,msg,null);
+}
+
+public static void logI1(String pkg,String msg)
+{
+   enqueue(LogLevel.INFO,pkg,1,msg,null);
+}
+
+public static void logD(String pkg,String msg,Throwable t)
+{
+   enqueue(LogLevel.DEBUG,pkg,0,msg,t);
+}
+
+public static void logD(String pkg,String msg)
+{
+   enqueue(LogLevel.DEBUG,pkg,0,msg,null);
+}
+
+public static void logD1(String pkg,String msg)
+{
+   enqueue(LogLevel.DEBUG,pkg,1,msg,null);
+}
+
+public static void logS(String pkg,String msg)
+{
+   enqueue(LogLevel.STATISTICS,pkg,0,msg,null);
+}
+
+
+public static void logE(String msg,Throwable t)		{ logE(DEFAULT_PACKAGE,msg,t); }
+public static void logE(String msg)			{ logE(DEFAULT_PACKAGE,msg); }
+public static void logX(String msg)			{ logX(DEFAULT_PACKAGE,msg); }
+public static void logW(String msg)			{ logW(DEFAULT_PACKAGE,msg); }
+public static void logI(String msg)			{ logI(DEFAULT_PACKAGE,msg); }
+public static void logI1(String msg)			{ logI1(DEFAULT_PACKAGE,msg); }
+public static void logD(String msg,Throwable t)		{ logD(DEFAULT_PACKAGE,msg,t); }
+public static void logD(String msg)			{ logD(DEFAULT_PACKAGE,msg); }
+public static void logD1(String msg)			{ logD1(DEFAULT_PACKAGE,msg); }
+public static void logS(String msg)			{ logS(DEFAULT_PACKAGE,msg); }
+
+
+
+/********************************************************************************/
+/*										*/
+/*	Dispatch methods							*/
+/*										*/
+/********************************************************************************/
+
+private static void enqueue(LogLevel lvl,String pkg,int indent,String msg,Throwable t)
+{
+   if (!isLogging(lvl)) return;
+
+   AsyncWriter aw = async_writer;
+   if (aw == null) {
+      write(lvl,pkg,indent,msg,t);
+    }
+   else {
+      aw.add(new LogEntry(lvl,pkg,indent,msg,t,getThreadId()));
+    }
+}
+
+
+private static int getThreadId()
+{
+   Thread th = Thread.currentThread();
+   if (th instanceof LoggerThread) {
+      return ((LoggerThread) th).getLogId();
+    }
+   return (int) th.getId();
+}
+
+
+private static void write(LogLevel lvl,String pkg,int indent,String msg,Throwable t)
+{
+   switch (lvl) {
+      case ERROR :
+	 if (t != null) IvyLog.logE(pkg,msg,t);
+	 else IvyLog.logE(pkg,msg);
+	 break;
+      case WARNING :
+	 IvyLog.logW(pkg,msg);
+	 break;
+      case INFO :
+	 if (indent > 0) IvyLog.logI1(pkg,msg);
+	 else IvyLog.logI(pkg,msg);
+	 break;
+      case DEBUG :
+	 if (t != null) IvyLog.logD(pkg,msg,t);
+	 else if (indent > 0) IvyLog.logD1(pkg,msg);
+	 else IvyLog.logD(pkg,msg);
+	 break;
+      case STATISTICS :
+	 IvyLog.logS(pkg,msg);
+	 break;
+    }
+}
+
+
+
+/********************************************************************************/
+/*										*/
+/*	Queued log entry							*/
+/*										*/
+/********************************************************************************/
+
+private static class LogEntry {
+
+   private LogLevel log_level;
+   private String log_package;
+   private int log_indent;
+   private String log_message;
+   private Throwable log_thrown;
+   private int thread_id;
+
+   LogEntry(LogLevel lvl,String pkg,int indent,String msg,Throwable t,int tid) {
+      log_level = lvl;
+      log_package = pkg;
+      log_indent = indent;
+      log_message = msg;
+      log_thrown = t;
+      thread_id = tid;
+    }
+
+   int getThreadId()				{ return thread_id; }
+
+   void write() {
+      CatreLog.write(log_level,log_package,log_indent,log_message,log_thrown);
+    }
+
+}	// end of inner class LogEntry
+
+
+
+/********************************************************************************/
+/*										*/
+/*	Background writer over a fixed ring buffer				*/
+/*										*/
+/********************************************************************************/
+
+private static class AsyncWriter extends Thread implements LoggerThread {
+
+   private LogEntry [] ring_buffer;
+   private int ring_head;
+   private int ring_count;
+   private boolean is_done;
+   private boolean is_writing;
+   private volatile int current_id;
+
+   AsyncWriter(int size) {
+      super("CatreLogWriter");
+      setDaemon(true);
+      ring_buffer = new LogEntry[size];
+      ring_head = 0;
+      ring_count = 0;
+      is_done = false;
+      is_writing = false;
+      current_id = 0;
+    }
+
+   @Override public int getLogId()		{ return current_id; }
+
+   synchronized void add(LogEntry le) {
+      while (ring_count == ring_buffer.length && !is_done) {
+	 try {
+	    wait();
+	  }
+	 catch (InterruptedException e) { }
+       }
+      if (is_done) {
+	 le.write();
+	 return;
+       }
+      int idx = (ring_head + ring_count) % ring_buffer.length;
+      ring_buffer[idx] = le;
+      ++ring_count;
+      if (ring_count == 1) notifyAll();
+    }
+
+   synchronized void drain() {
+      while ((ring_count > 0 || is_writing) && isAlive()) {
+	 try {
+	    wait(1000);
+	  }
+	 catch (InterruptedException e) {
+	    return;
+	  }
+       }
+    }
+
+   synchronized void finish() {
+      drain();
+      is_done = true;
+      notifyAll();
+    }
+
+   @Override public void run() {
+      LogEntry [] batch = new LogEntry[ring_buffer.length];
+      for ( ; ; ) {
+	 int ct = 0;
+	 synchronized (this) {
+	    is_writing = false;
+	    notifyAll();
+	    while (ring_count == 0 && !is_done) {
+	       try {
+		  wait();
+		}
+	       catch (InterruptedException e) { }
+	     }
+	    if (ring_count == 0) break;
+	    while (ring_count > 0) {
+	       batch[ct++] = ring_buffer[ring_head];
+	       ring_buffer[ring_head] = null;
+	       ring_head = (ring_head + 1) % ring_buffer.length;
+	       --ring_count;
+	     }
+	    is_writing = true;
+	    notifyAll();
+	  }
+	 for (int i = 0; i < ct; ++i) {
+	    current_id = batch[i].getThreadId();
+	    try {
+	       batch[i].write();
+	     }
+	    catch (Throwable t) { }
+	    batch[i] = null;
+	  }
+       }
+    }
+
+}	// end of inner class AsyncWriter
+
 
 
 }	// end of class CatreLog
@@ -62,4 +390,3 @@ public static void setup()
 
 
 /* end of CatreLog.java */
-
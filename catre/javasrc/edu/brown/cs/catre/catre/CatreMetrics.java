@@ -0,0 +1,254 @@
+/********************************************************************************/
+/*										*/
+/*		CatreMetrics.java						*/
+/*										*/
+/*	Collector for metrics in Prometheus text format				*/
+/*										*/
+/********************************************************************************/
+/*	Copyright 2023 Brown University -- Steven P. Reiss			*/
+/*********************************************************************************
+ *  Copyright 2023, Brown University, Providence, RI.				 *
+ *										 *
+ *			  All Rights Reserved					 *
+ *										 *
+ *  Permission to use, copy, modify, and distribute this software and its	 *
+ *  documentation for any purpose other than its incorporation into a		 *
+ *  commercial product is hereby granted without fee, provided that the 	 *
+ *  above copyright notice appear in all copies and that both that		 *
+ *  copyright notice and this permission notice appear in supporting		 *
+ *  documentation, and that the name of Brown University not be used in 	 *
+ *  advertising or publicity pertaining to distribution of the software 	 *
+ *  without specific, written prior permission. 				 *
+ *										 *
+ *  BROWN UNIVERSITY DISCLAIMS ALL WARRANTIES WITH REGARD TO THIS		 *
+ *  SOFTWARE, INCLUDING ALL IMPLIED WARRANTIES OF MERCHANTABILITY AND		 *
+ *  FITNESS FOR ANY PARTICULAR PURPOSE.  IN NO EVENT SHALL BROWN UNIVERSITY	 *
+ *  BE LIABLE FOR ANY SPECIAL, INDIRECT OR CONSEQUENTIAL DAMAGES OR ANY 	 *
+ *  DAMAGES WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS,		 *
+ *  WHETHER IN AN ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS		 *
+ *  ACTION, ARISING OUT OF OR IN CONNECTION WITH THE USE OR PERFORMANCE 	 *
+ *  OF THIS SOFTWARE.								 *
+ *										 *
+ ********************************************************************************/
+
+
+
+
+
+
+
+package edu.brown.cs.catre.catre;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ *	Gathers metrics from the various components for the /metrics
+ *	endpoint.  Labels are given as alternating name, value strings.
+ *	Metrics with the same name are grouped under a single HELP/TYPE
+ *	header when the text is generated.
+ **/
+
+public class CatreMetrics
+{
+
+
+/********************************************************************************/
+/*										*/
+/*	Private Storage 							*/
+/*										*/
+/********************************************************************************/
+
+private Map<String,MetricFamily> metric_families;
+
+
+
+/********************************************************************************/
+/*										*/
+/*	Constructors								*/
+/*										*/
+/********************************************************************************/
+
+public CatreMetrics()
+{
+   metric_families = new LinkedHashMap<>();
+}
+
+
+
+/********************************************************************************/
+/*										*/
+/*	Definition methods							*/
+/*										*/
+/********************************************************************************/
+
+public void addCounter(String name,String help,double value,String... labels)
+{
+   MetricFamily mf = findFamily(name,help,"counter");
+   mf.addSample(name,labels,null,value);
+}
+
+
+public void addGauge(String name,String help,double value,String... labels)
+{
+   MetricFamily mf = findFamily(name,help,"gauge");
+   mf.addSample(name,labels,null,value);
+}
+
+
+/**
+ *	Add a latency histogram.  Bucket bounds are reported in seconds.
+ **/
+
+public void addHistogram(String name,String help,CatreHistogram h,String... labels)
+{
+   MetricFamily mf = findFamily(name,help,"histogram");
+
+   long [] bounds = CatreHistogram.getBucketBounds();
+   long [] counts = h.getBucketCounts();
+   long tot = 0;
+   for (int i = 0; i < counts.length; ++i) {
+      tot += counts[i];
+      String le = (i < bounds.length ? formatValue(bounds[i] / 1e9) : "+Inf");
+      mf.addSample(name + "_bucket",labels,le,tot);
+    }
+   mf.addSample(name + "_sum",labels,null,h.getTotalTime() / 1e9);
+   mf.addSample(name + "_count",labels,null,tot);
+}
+
+
+/********************************************************************************/
+/*										*/
+/*	Output methods								*/
+/*										*/
+/********************************************************************************/
+
+/**
+ *	Return the metrics in the Prometheus text exposition format.
+ **/
+
+public String toPrometheus()
+{
+   StringBuilder buf = new StringBuilder();
+   for (MetricFamily mf : metric_families.values()) {
+      mf.output(buf);
+    }
+   return buf.toString();
+}
+
+
+private MetricFamily findFamily(String name,String help,String type)
+{
+   MetricFamily mf = metric_families.get(name);
+   if (mf == null) {
+      mf = new MetricFamily(name,help,type);
+      metric_families.put(name,mf);
+    }
+   return mf;
+}
+
+
+private static String formatValue(double v)
+{
+   if (Double.isNaN(v)) return "NaN";
+   if (Double.isInfinite(v)) return (v > 0 ? "+Inf" : "-Inf");
+   if (v == Math.rint(v) && Math.abs(v) < 1e15) return Long.toString((long) v);
+   return Double.toString(v);
+}
+
+
+private static void appendEscaped(StringBuilder buf,String s)
+{
+   if (s == null) return;
+   for (int i = 0; i < s.length(); ++i) {
+      char c = s.charAt(i);
+      switch (c) {
+	 case '\\' :
+	    buf.append("\\\\");
+	    break;
+	 case '"' :
+	    buf.append("\\\"");
+	    break;
+	 case '\n' :
+	    buf.append("\\n");
+	    break;
+	 default :
+	    buf.append(c);
+	    break;
+       }
+    }
+}
+
+
+
+/********************************************************************************/
+/*										*/
+/*	Metric family								*/
+/*										*/
+/********************************************************************************/
+
+private static class MetricFamily {
+
+   private String family_name;
+   private String family_help;
+   private String family_type;
+   private List<String> family_samples;
+
+   MetricFamily(String name,String help,String type) {
+      family_name = name;
+      family_help = help;
+      family_type = type;
+      family_samples = new ArrayList<>();
+    }
+
+   void addSample(String name,String [] labels,String le,double value) {
+      StringBuilder buf = new StringBuilder();
+      buf.append(name);
+      int nlbl = (labels == null ? 0 : labels.length / 2);
+      if (nlbl > 0 || le != null) {
+	 buf.append("{");
+	 for (int i = 0; i < nlbl; ++i) {
+	    if (i > 0) buf.append(",");
+	    buf.append(labels[2*i]);
+	    buf.append("=\"");
+	    appendEscaped(buf,labels[2*i+1]);
+	    buf.append("\"");
+	  }
+	 if (le != null) {
+	    if (nlbl > 0) buf.append(",");
+	    buf.append("le=\"");
+	    buf.append(le);
+	    buf.append("\"");
+	  }
+	 buf.append("}");
+       }
+      buf.append(" ");
+      buf.append(formatValue(value));
+      family_samples.add(buf.toString());
+    }
+
+   void output(StringBuilder buf) {
+      if (family_help != null) {
+	 buf.append("# HELP ").append(family_name).append(" ");
+	 buf.append(family_help.replace("\\","\\\\").replace("\n","\\n"));
+	 buf.append("\n");
+       }
+      buf.append("# TYPE ").append(family_name).append(" ");
+      buf.append(family_type).append("\n");
+      for (String s : family_samples) {
+	 buf.append(s).append("\n");
+       }
+    }
+
+}	// end of inner class MetricFamily
+
+
+
+}	// end of class CatreMetrics
+
+
+
+
+/* end of CatreMetrics.java */
@@ -115,6 +115,14 @@ void addProgramListener(CatreProgramListener listener);
 void removeProgramListener(CatreProgramListener listener);
 
 
+/**
+ *      Add run, rule, condition, and action statistics for this program
+ *      to the given metrics.
+ **/
+
+void addMetrics(CatreMetrics metrics);
+
+
 }       // end of interface CatreProgram
 
 
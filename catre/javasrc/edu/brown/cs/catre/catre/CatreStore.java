@@ -76,10 +76,12 @@ CatreUser findUserByEmail(String email);
 
 
 /*
- *      Find all users
+ *      Find all users.  If loaduniverse is false, the users' universes are
+ *      not loaded here (they are loaded on the first getUniverse()) and
+ *      users without a universe are included.
  **/
 
-List<CatreUser> findAllUsers();
+List<CatreUser> findAllUsers(boolean loaduniverse);
 
 
 Boolean validateCalendar(CatreUser cu,String id,String pwd);
@@ -93,6 +95,22 @@ Boolean validateCalendar(CatreUser cu,String id,String pwd);
 
 String saveObject(CatreSavable obj);
 
+
+/**
+ *      Save an object in the background.  Repeated saves of the same object
+ *      within a short window are coalesced into a single write.
+ **/
+
+void saveObjectLater(CatreSavable obj);
+
+
+/**
+ *      Write out any pending background saves (e.g. on shutdown).
+ **/
+
+void flush();
+
+
 CatreSavable loadObject(String iid);
 
 void removeObject(String iid);
@@ -104,6 +122,13 @@ CatreController getCatre();
 CatreOauth getOauth();
 
 
+/**
+ *      Add any store statistics (e.g. cache hit rates) to the given metrics.
+ **/
+
+default void addMetrics(CatreMetrics metrics)                   { }
+
+
 }       // end of interface CatreStore
 
 
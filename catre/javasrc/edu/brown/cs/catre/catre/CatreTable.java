@@ -67,6 +67,15 @@ String getTablePrefix();
 CatreSavable create(CatreStore store,Map<String,Object> data);
 
 
+/**
+ *      Indicate whether objects from this table should be pinned in the
+ *      store's cache (i.e. they are long-lived) rather than being subject
+ *      to LRU eviction.
+ **/
+
+default boolean isCachePinned()                 { return false; }
+
+
 
 }       // end of interface CatreTable
 
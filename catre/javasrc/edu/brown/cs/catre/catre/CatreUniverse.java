@@ -153,6 +153,14 @@ Object getValue(CatreParameter parameter);
 void addTrigger(CatreCondition condition,CatrePropertySet properties);
 
 
+/**
+ *	Run a task for this universe.  Tasks for a universe are run one at a
+ *	time in the order submitted.
+ **/
+
+void execute(Runnable task);
+
+
 
 
 }	// end of interface CatreHome
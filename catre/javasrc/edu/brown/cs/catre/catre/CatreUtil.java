@@ -37,12 +37,16 @@
 package edu.brown.cs.catre.catre;
 
 import java.awt.Desktop;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
 import java.io.UnsupportedEncodingException;
 import java.net.URI;
 import java.net.URLDecoder;
 import java.net.URLEncoder;
 import java.security.MessageDigest;
 import java.util.Base64;
+import java.util.Properties;
 import java.util.Random;
 
 public class CatreUtil
@@ -139,6 +143,32 @@ public static String escape(String s) {
 
 
 
+/********************************************************************************/
+/*										*/
+/*	Property methods							*/
+/*										*/
+/********************************************************************************/
+
+/**
+ *	Load secret/catre.props from the base directory into p, which holds
+ *	the caller's defaults.  A missing or unreadable file leaves them as is.
+ **/
+
+static public Properties loadProperties(CatreController cc,Properties p)
+{
+   File f1 = cc.findBaseDirectory();
+   File f2 = new File(f1,"secret");
+   File f3 = new File(f2,"catre.props");
+   try (FileInputStream fis = new FileInputStream(f3)) {
+      p.loadFromXML(fis);
+    }
+   catch (IOException e) { }
+
+   return p;
+}
+
+
+
 /********************************************************************************/
 /*                                                                              */
 /*      Email methods                                                           */
@@ -44,6 +44,9 @@ public interface CatserveConstants
 int	HTTP_PORT = 3334;
 int	HTTPS_PORT = 3334;
 
+int	HTTP_THREADS = 16;		// default size of request thread pool
+int	HTTP_QUEUE_SIZE = 500;		// default bound on queued requests
+
 String SESSION_COOKIE = "Catre.Session";
 String SESSION_PARAMETER = "CATRESESSION";
 
@@ -59,6 +62,14 @@ String	PNG_MIME = "image/png";
 
 String SESSION_PREFIX = "SESS_";
 
+long	SESSION_TOUCH_INTERVAL = 5*60*1000;	// minimum time between saves of an unchanged session
+long	SESSION_IDLE_TIME = 60*60*1000; 	// drop sessions from memory after this
+long	SESSION_SWEEP_INTERVAL = 5*60*1000;
+int	MAX_SESSIONS = 10000;			// maximum sessions kept in memory
+
+long	HISTORY_DEFAULT_RANGE = 24*60*60*1000;	// default span of /universe/history
+int	MAX_HISTORY_BUCKETS = 10000;
+
 
 
 
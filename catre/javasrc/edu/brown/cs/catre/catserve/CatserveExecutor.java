@@ -0,0 +1,242 @@
+/********************************************************************************/
+/*										*/
+/*		CatserveExecutor.java						*/
+/*										*/
+/*	Executor for HTTP requests, separate from the rule pool			*/
+/*										*/
+/********************************************************************************/
+/*	Copyright 2023 Brown University -- Steven P. Reiss			*/
+/*********************************************************************************
+ *  Copyright 2023, Brown University, Providence, RI.				 *
+ *										 *
+ *			  All Rights Reserved					 *
+ *										 *
+ *  Permission to use, copy, modify, and distribute this software and its	 *
+ *  documentation for any purpose other than its incorporation into a		 *
+ *  commercial product is hereby granted without fee, provided that the 	 *
+ *  above copyright notice appear in all copies and that both that		 *
+ *  copyright notice and this permission notice appear in supporting		 *
+ *  documentation, and that the name of Brown University not be used in 	 *
+ *  advertising or publicity pertaining to distribution of the software 	 *
+ *  without specific, written prior permission. 				 *
+ *										 *
+ *  BROWN UNIVERSITY DISCLAIMS ALL WARRANTIES WITH REGARD TO THIS		 *
+ *  SOFTWARE, INCLUDING ALL IMPLIED WARRANTIES OF MERCHANTABILITY AND		 *
+ *  FITNESS FOR ANY PARTICULAR PURPOSE.  IN NO EVENT SHALL BROWN UNIVERSITY	 *
+ *  BE LIABLE FOR ANY SPECIAL, INDIRECT OR CONSEQUENTIAL DAMAGES OR ANY 	 *
+ *  DAMAGES WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS,		 *
+ *  WHETHER IN AN ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS		 *
+ *  ACTION, ARISING OUT OF OR IN CONNECTION WITH THE USE OR PERFORMANCE 	 *
+ *  OF THIS SOFTWARE.								 *
+ *										 *
+ ********************************************************************************/
+
+
+
+
+
+
+
+package edu.brown.cs.catre.catserve;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import edu.brown.cs.catre.catre.CatreLog;
+
+/**
+ *      HTTP exchanges are run here rather than on the controller's pool so
+ *      that slow request handlers can't delay rule evaluation and timers.
+ *      Either a bounded thread pool or, if requested and supported by the
+ *      JVM, a virtual thread per request is used.
+ **/
+
+class CatserveExecutor implements Executor, CatserveConstants
+{
+
+
+/********************************************************************************/
+/*										*/
+/*	Private Storage 							*/
+/*										*/
+/********************************************************************************/
+
+private ThreadPoolExecutor	thread_pool;
+private ExecutorService 	virtual_executor;
+private AtomicLong		reject_count;
+private AtomicLong		request_count;
+
+
+
+/********************************************************************************/
+/*										*/
+/*	Constructors								*/
+/*										*/
+/********************************************************************************/
+
+CatserveExecutor(int nthread,int qsize,boolean callerruns,boolean virt)
+{
+   reject_count = new AtomicLong();
+   request_count = new AtomicLong();
+   thread_pool = null;
+   virtual_executor = null;
+
+   if (virt) virtual_executor = createVirtualExecutor();
+
+   if (virtual_executor == null) {
+      RejectedExecutionHandler rh = new RejectHandler(callerruns);
+      thread_pool = new ThreadPoolExecutor(nthread,nthread,60,TimeUnit.SECONDS,
+	    new ArrayBlockingQueue<>(Math.max(qsize,1)),
+	    new RequestThreadFactory(),rh);
+      thread_pool.allowCoreThreadTimeOut(true);
+    }
+
+   CatreLog.logI("CATSERVE","HTTP executor: " +
+	 (virtual_executor != null ? "virtual threads" :
+	     nthread + " threads, queue " + qsize));
+}
+
+
+
+/********************************************************************************/
+/*										*/
+/*	Execution methods							*/
+/*										*/
+/********************************************************************************/
+
+@Override public void execute(Runnable r)
+{
+   request_count.incrementAndGet();
+
+   if (virtual_executor != null) virtual_executor.execute(r);
+   else thread_pool.execute(r);
+}
+
+
+
+/********************************************************************************/
+/*										*/
+/*	Statistics methods							*/
+/*										*/
+/********************************************************************************/
+
+long getRequestCount()				{ return request_count.get(); }
+
+long getRejectCount()				{ return reject_count.get(); }
+
+int getQueueDepth()
+{
+   if (thread_pool == null) return 0;
+   return thread_pool.getQueue().size();
+}
+
+int getActiveCount()
+{
+   if (thread_pool == null) return 0;
+   return thread_pool.getActiveCount();
+}
+
+
+
+/********************************************************************************/
+/*										*/
+/*	Virtual thread support							*/
+/*										*/
+/********************************************************************************/
+
+private static ExecutorService createVirtualExecutor()
+{
+   // virtual threads are only available on newer JVMs
+   try {
+      Method m = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+      return (ExecutorService) m.invoke(null);
+    }
+   catch (Throwable t) {
+      CatreLog.logI("CATSERVE","Virtual threads not available; using thread pool");
+    }
+
+   return null;
+}
+
+
+
+/********************************************************************************/
+/*										*/
+/*	Rejection handler							*/
+/*										*/
+/********************************************************************************/
+
+private class RejectHandler implements RejectedExecutionHandler {
+
+   private boolean caller_runs;
+
+   RejectHandler(boolean callerruns) {
+      caller_runs = callerruns;
+    }
+
+   @Override public void rejectedExecution(Runnable r,ThreadPoolExecutor exec) {
+      long ct = reject_count.incrementAndGet();
+      if (caller_runs && !exec.isShutdown()) {
+	 // run on the accepting thread: slows down accepting new requests
+	 r.run();
+	 return;
+       }
+      CatreLog.logW("CATSERVE","HTTP request rejected; queue full (" + ct + ")");
+      throw new RejectedExecutionException("HTTP queue full");
+    }
+
+}	// end of inner class RejectHandler
+
+
+
+/********************************************************************************/
+/*										*/
+/*	Thread management							*/
+/*										*/
+/********************************************************************************/
+
+private static class RequestThreadFactory implements ThreadFactory {
+
+   private int thread_counter;
+
+   RequestThreadFactory() {
+      thread_counter = 0;
+    }
+
+   @Override public synchronized Thread newThread(Runnable r) {
+      return new RequestThread(++thread_counter,r);
+    }
+
+}	// end of inner class RequestThreadFactory
+
+
+private static class RequestThread extends Thread implements CatreLog.LoggerThread {
+
+   private int thread_count;
+
+   RequestThread(int ct,Runnable r) {
+      super(r,"CatreHttp_" + ct);
+      thread_count = ct;
+    }
+
+   @Override public int getLogId()			{ return 1000 + thread_count; }
+
+}	// end of inner class RequestThread
+
+
+
+}	// end of class CatserveExecutor
+
+
+
+
+/* end of CatserveExecutor.java */
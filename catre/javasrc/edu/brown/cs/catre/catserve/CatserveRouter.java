@@ -0,0 +1,503 @@
+/********************************************************************************/
+/*										*/
+/*		CatserveRouter.java						*/
+/*										*/
+/*	Compiled request dispatcher: filter chain plus path trie		*/
+/*										*/
+/********************************************************************************/
+/*	Copyright 2023 Brown University -- Steven P. Reiss			*/
+/*********************************************************************************
+ *  Copyright 2023, Brown University, Providence, RI.				 *
+ *										 *
+ *			  All Rights Reserved					 *
+ *										 *
+ *  Permission to use, copy, modify, and distribute this software and its	 *
+ *  documentation for any purpose other than its incorporation into a		 *
+ *  commercial product is hereby granted without fee, provided that the 	 *
+ *  above copyright notice appear in all copies and that both that		 *
+ *  copyright notice and this permission notice appear in supporting		 *
+ *  documentation, and that the name of Brown University not be used in 	 *
+ *  advertising or publicity pertaining to distribution of the software 	 *
+ *  without specific, written prior permission. 				 *
+ *										 *
+ *  BROWN UNIVERSITY DISCLAIMS ALL WARRANTIES WITH REGARD TO THIS		 *
+ *  SOFTWARE, INCLUDING ALL IMPLIED WARRANTIES OF MERCHANTABILITY AND		 *
+ *  FITNESS FOR ANY PARTICULAR PURPOSE.  IN NO EVENT SHALL BROWN UNIVERSITY	 *
+ *  BE LIABLE FOR ANY SPECIAL, INDIRECT OR CONSEQUENTIAL DAMAGES OR ANY 	 *
+ *  DAMAGES WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS,		 *
+ *  WHETHER IN AN ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS		 *
+ *  ACTION, ARISING OUT OF OR IN CONNECTION WITH THE USE OR PERFORMANCE 	 *
+ *  OF THIS SOFTWARE.								 *
+ *										 *
+ ********************************************************************************/
+
+
+
+
+
+
+
+
+
+
+
+package edu.brown.cs.catre.catserve;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+
+import com.sun.net.httpserver.HttpExchange;
+
+import edu.brown.cs.catre.catre.CatreLog;
+import edu.brown.cs.catre.catre.CatreMetrics;
+import edu.brown.cs.catre.catre.CatreSession;
+
+/**
+ *      Routes are registered in order, as before.  Routes without a url are
+ *      filters (parameter parsing, session setup, logging, authorization);
+ *      each routed handler runs after the filters registered ahead of it.
+ *      Routed handlers are kept in a path trie per HTTP method.  Literal urls
+ *      match any path that starts with their segments; urls with :name
+ *      segments match the whole path and bind the names as parameters.
+ *      When a handler returns null the next matching route (in registration
+ *      order) is tried, so the behavior matches a linear scan of the list.
+ **/
+
+public class CatserveRouter implements CatserveConstants
+{
+
+
+/********************************************************************************/
+/*										*/
+/*	Private Storage 							*/
+/*										*/
+/********************************************************************************/
+
+private Function<HttpExchange,CatreSession> session_finder;
+private List<Route>	route_list;
+private int		preroute_index;
+private volatile RouteTable route_table;
+private AtomicLong	not_found_count;
+
+private static final int	NUM_METHODS = 10;	// 9 known methods + other
+
+
+
+/********************************************************************************/
+/*										*/
+/*	Constructors								*/
+/*										*/
+/********************************************************************************/
+
+public CatserveRouter(Function<HttpExchange,CatreSession> finder)
+{
+   session_finder = finder;
+   route_list = new ArrayList<>();
+   preroute_index = 0;
+   route_table = null;
+   not_found_count = new AtomicLong();
+}
+
+
+
+/********************************************************************************/
+/*										*/
+/*	Route definition methods						*/
+/*										*/
+/********************************************************************************/
+
+public void addRoute(String method,String url,Function<HttpExchange,String> h)
+{
+   addRoute(new Route(method,url,(e,cs) -> h.apply(e),false),false);
+}
+
+
+public void addRoute(String method,String url,
+      BiFunction<HttpExchange,CatreSession,String> h)
+{
+   addRoute(new Route(method,url,h,true),false);
+}
+
+
+public void addPreRoute(String method,String url,
+      BiFunction<HttpExchange,CatreSession,String> h)
+{
+   addRoute(new Route(method,url,h,true),true);
+}
+
+
+private synchronized void addRoute(Route r,boolean pre)
+{
+   if (pre) route_list.add(preroute_index++,r);
+   else route_list.add(r);
+
+   route_table = null;
+}
+
+
+private synchronized RouteTable getRouteTable()
+{
+   if (route_table == null) route_table = new RouteTable(route_list);
+
+   return route_table;
+}
+
+
+
+/********************************************************************************/
+/*										*/
+/*	Dispatch methods							*/
+/*										*/
+/********************************************************************************/
+
+/**
+ *	Handle a request, returning the response (a 404 error if nothing
+ *	handles it).
+ **/
+
+public String dispatch(HttpExchange e)
+{
+   RouteTable rt = route_table;
+   if (rt == null) rt = getRouteTable();
+
+   int midx = getHttpMethodOrdinal(e.getRequestMethod());
+   if (midx < 0) midx = NUM_METHODS-1;
+   String path = e.getRequestURI().getPath();
+
+   int fidx = 0;
+   for (RouteMatch rm : rt.findRoutes(midx,path)) {
+      Route r = rm.getRoute();
+      while (fidx < r.getFilterLevel()) {
+	 String resp = rt.runFilter(fidx++,midx,e);
+	 if (resp != null) return resp;
+       }
+      String resp = r.handle(e,rm.getValues());
+      if (resp != null) return resp;
+    }
+
+   while (fidx < rt.getFilterCount()) {
+      String resp = rt.runFilter(fidx++,midx,e);
+      if (resp != null) return resp;
+    }
+
+   not_found_count.incrementAndGet();
+
+   return CatserveServer.jsonError(null,404,"ILLEGAL - not an endpoint");
+}
+
+
+
+/********************************************************************************/
+/*										*/
+/*	Statistics methods							*/
+/*										*/
+/********************************************************************************/
+
+/**
+ *	Add per-route request counts and times to the given metrics.
+ **/
+
+public void addMetrics(CatreMetrics m)
+{
+   List<Route> rts;
+   synchronized (this) {
+      rts = new ArrayList<>(route_list);
+    }
+   for (Route r : rts) {
+      if (r.isFilter()) continue;
+      r.addMetrics(m);
+    }
+   m.addCounter("catre_http_not_found_total","Requests that matched no route",
+	 not_found_count.get());
+}
+
+
+
+/********************************************************************************/
+/*										*/
+/*	Helper methods								*/
+/*										*/
+/********************************************************************************/
+
+private static int getHttpMethodOrdinal(String method)
+{
+   switch (method) {
+      case "GET":
+	 return 0;
+      case "POST":
+	 return 1;
+      case "PUT":
+	 return 2;
+      case "DELETE":
+	 return 3;
+      case "HEAD":
+	 return 4;
+      case "OPTIONS":
+	 return 5;
+      case "TRACE":
+	 return 6;
+      case "CONNECT":
+	 return 7;
+      case "PATCH":
+	 return 8;
+      default:
+	 return -1;
+    }
+}
+
+
+private static List<String> splitPath(String path)
+{
+   List<String> rslt = new ArrayList<>();
+   if (path == null) return rslt;
+
+   int start = 0;
+   int len = path.length();
+   while (start < len) {
+      int idx = path.indexOf('/',start);
+      if (idx < 0) idx = len;
+      if (idx > start) rslt.add(path.substring(start,idx));
+      start = idx+1;
+    }
+
+   return rslt;
+}
+
+
+
+/********************************************************************************/
+/*										*/
+/*	Compiled route table							*/
+/*										*/
+/********************************************************************************/
+
+private static class RouteTable {
+
+   private List<Route> filter_list;
+   private RouteNode [] method_roots;
+
+   RouteTable(List<Route> routes) {
+      filter_list = new ArrayList<>();
+      method_roots = new RouteNode[NUM_METHODS];
+      for (int i = 0; i < NUM_METHODS; ++i) method_roots[i] = new RouteNode();
+
+      int idx = 0;
+      for (Route r : routes) {
+	 r.setIndex(idx++,filter_list.size());
+	 if (r.isFilter()) {
+	    filter_list.add(r);
+	    continue;
+	  }
+	 for (int i = 0; i < NUM_METHODS; ++i) {
+	    if (r.useMethod(i)) method_roots[i].addRoute(r,r.getSegments(),0);
+	  }
+       }
+    }
+
+   int getFilterCount() 			{ return filter_list.size(); }
+
+   String runFilter(int idx,int midx,HttpExchange e) {
+      Route r = filter_list.get(idx);
+      if (!r.useMethod(midx)) return null;
+      return r.handle(e,null);
+    }
+
+   List<RouteMatch> findRoutes(int midx,String path) {
+      List<String> segs = splitPath(path);
+      List<RouteMatch> rslt = new ArrayList<>();
+      method_roots[midx].findRoutes(segs,0,null,rslt);
+      if (rslt.size() > 1) Collections.sort(rslt);
+      return rslt;
+    }
+
+}	// end of inner class RouteTable
+
+
+
+private static class RouteNode {
+
+   private Map<String,RouteNode> child_nodes;
+   private RouteNode param_node;
+   private List<Route> prefix_routes;
+   private List<Route> exact_routes;
+
+   RouteNode() {
+      child_nodes = new HashMap<>();
+      param_node = null;
+      prefix_routes = new ArrayList<>();
+      exact_routes = new ArrayList<>();
+    }
+
+   void addRoute(Route r,List<String> segs,int idx) {
+      if (idx == segs.size()) {
+	 if (r.hasParameters()) exact_routes.add(r);
+	 else prefix_routes.add(r);
+	 return;
+       }
+      String s = segs.get(idx);
+      RouteNode next = null;
+      if (s.startsWith(":")) {
+	 if (param_node == null) param_node = new RouteNode();
+	 next = param_node;
+       }
+      else next = child_nodes.computeIfAbsent(s,(k) -> new RouteNode());
+      next.addRoute(r,segs,idx+1);
+    }
+
+   void findRoutes(List<String> segs,int idx,List<String> vals,List<RouteMatch> rslt) {
+      for (Route r : prefix_routes) rslt.add(new RouteMatch(r,vals));
+      if (idx == segs.size()) {
+	 for (Route r : exact_routes) rslt.add(new RouteMatch(r,vals));
+	 return;
+       }
+      RouteNode next = child_nodes.get(segs.get(idx));
+      if (next != null) next.findRoutes(segs,idx+1,vals,rslt);
+      if (param_node != null) {
+	 List<String> nvals = (vals == null ? new ArrayList<>() : new ArrayList<>(vals));
+	 nvals.add(segs.get(idx));
+	 param_node.findRoutes(segs,idx+1,nvals,rslt);
+       }
+    }
+
+}	// end of inner class RouteNode
+
+
+
+private static class RouteMatch implements Comparable<RouteMatch> {
+
+   private Route for_route;
+   private List<String> param_values;
+
+   RouteMatch(Route r,List<String> vals) {
+      for_route = r;
+      param_values = vals;
+    }
+
+   Route getRoute()				{ return for_route; }
+   List<String> getValues()			{ return param_values; }
+
+   @Override public int compareTo(RouteMatch rm) {
+      return Integer.compare(for_route.getIndex(),rm.for_route.getIndex());
+    }
+
+}	// end of inner class RouteMatch
+
+
+
+/********************************************************************************/
+/*										*/
+/*	Route representation							*/
+/*										*/
+/********************************************************************************/
+
+private class Route {
+
+   private String route_method;
+   private int check_method;
+   private String check_url;
+   private List<String> url_segments;
+   private List<String> param_names;
+   private BiFunction<HttpExchange,CatreSession,String> route_function;
+   private boolean use_session;
+   private int route_index;
+   private int filter_level;
+   private AtomicLong call_count;
+   private AtomicLong total_time;
+   private AtomicLong max_time;
+
+   Route(String method,String url,BiFunction<HttpExchange,CatreSession,String> h,
+	 boolean session) {
+      route_method = (method == null ? "ALL" : method);
+      if (method == null || method.equals("ALL")) check_method = -1;
+      else {
+	 check_method = 0;
+	 String[] ms = method.split(" ,;");
+	 for (String mm : ms) {
+	    int ordinal = getHttpMethodOrdinal(mm);
+	    if (ordinal >= 0) check_method |= (1 << ordinal);
+	  }
+       }
+      check_url = url;
+      url_segments = splitPath(url);
+      param_names = new ArrayList<>();
+      for (String s : url_segments) {
+	 if (s.startsWith(":")) param_names.add(s.substring(1));
+       }
+      route_function = h;
+      use_session = session;
+      route_index = 0;
+      filter_level = 0;
+      call_count = new AtomicLong();
+      total_time = new AtomicLong();
+      max_time = new AtomicLong();
+    }
+
+   boolean isFilter()				{ return check_url == null; }
+   boolean hasParameters()			{ return !param_names.isEmpty(); }
+   List<String> getSegments()			{ return url_segments; }
+   String getName()				{ return route_method + " " + check_url; }
+   int getIndex()				{ return route_index; }
+   int getFilterLevel() 			{ return filter_level; }
+
+   void setIndex(int idx,int flvl) {
+      route_index = idx;
+      filter_level = flvl;
+    }
+
+   boolean useMethod(int midx) {
+      if (midx == NUM_METHODS-1) return check_method == -1;
+      return (check_method & (1 << midx)) != 0;
+    }
+
+   String handle(HttpExchange exchange,List<String> vals) {
+      if (vals != null) {
+	 for (int i = 0; i < vals.size() && i < param_names.size(); ++i) {
+	    CatserveServer.setParameter(exchange,param_names.get(i),vals.get(i));
+	  }
+       }
+
+      long start = System.nanoTime();
+      try {
+	 CatreSession cs = (use_session ? session_finder.apply(exchange) : null);
+	 return route_function.apply(exchange,cs);
+       }
+      catch (Throwable t) {
+	 CatreLog.logE("CATSERVE","Problem handling input",t);
+	 return CatserveServer.jsonError(null,500,"Problem handling input: " + t);
+       }
+      finally {
+	 if (!isFilter()) {
+	    long t = System.nanoTime() - start;
+	    call_count.incrementAndGet();
+	    total_time.addAndGet(t);
+	    max_time.accumulateAndGet(t,Math::max);
+	  }
+       }
+    }
+
+   void addMetrics(CatreMetrics m) {
+      String nm = getName();
+      m.addCounter("catre_http_requests_total","Requests handled by a route",
+	    call_count.get(),"route",nm);
+      m.addCounter("catre_http_request_seconds_total","Time spent in a route handler",
+	    total_time.get() / 1e9,"route",nm);
+      m.addGauge("catre_http_request_max_seconds","Longest time spent in a route handler",
+	    max_time.get() / 1e9,"route",nm);
+    }
+
+}	// end of inner class Route
+
+
+
+}	// end of class CatserveRouter
+
+
+
+
+/* end of CatserveRouter.java */
@@ -40,6 +40,7 @@ import edu.brown.cs.catre.catre.CatreController;
 import edu.brown.cs.catre.catre.CatreDevice;
 import edu.brown.cs.catre.catre.CatreJson;
 import edu.brown.cs.catre.catre.CatreLog;
+import edu.brown.cs.catre.catre.CatreMetrics;
 import edu.brown.cs.catre.catre.CatreParameter;
 import edu.brown.cs.catre.catre.CatreProgram;
 import edu.brown.cs.catre.catre.CatreRule;
@@ -59,8 +60,6 @@ import org.json.JSONException;
 import org.json.JSONObject;
 
 import java.util.function.BiFunction;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 import com.sun.net.httpserver.HttpServer;
 import com.sun.net.httpserver.HttpsServer;
@@ -76,7 +75,6 @@ import javax.net.ssl.SSLContext;
 
 import java.util.Map;
 import java.util.Properties;
-import java.util.concurrent.Executor;
 import java.util.List;
 import java.util.HashMap;
 import java.util.Collections;
@@ -107,9 +105,10 @@ private CatreController catre_control;
 private CatserveSessionManager session_manager;
 private CatserveAuth auth_manager;
 private HttpServer http_server;
+private CatserveExecutor request_executor;
+private String metrics_token;
 
-private ArrayList<Route> route_interceptors;
-private int preroute_index;
+private CatserveRouter route_dispatcher;
 
 
 /********************************************************************************/
@@ -131,15 +130,14 @@ public CatserveServer(CatreController cc)
       File f1 = cc.findBaseDirectory();
       File f2 = new File(f1,"secret");
       File f3 = new File(f2,"catre.jks");
-      File f4 = new File(f2,"catre.props");
       Properties p = new Properties();
       p.put("jkspwd","XXX");
-      try (FileInputStream fis = new FileInputStream(f4)) {
-	 p.loadFromXML(fis);
-       }
-      catch (IOException e) { }
+      CatreUtil.loadProperties(cc,p);
       String keystore_pwd = p.getProperty("jkspwd");
 
+      request_executor = setupExecutor(p);
+      metrics_token = p.getProperty("metricstoken");
+
       System.err.println("HOST: " + IvyExecQuery.getHostName());
       if (IvyExecQuery.getHostName().contains("geode.local")) keystore_pwd = null;
       if (IvyExecQuery.getHostName().contains("Brown-")) keystore_pwd = null;
@@ -174,13 +172,13 @@ public CatserveServer(CatreController cc)
       System.exit(1);
     }
 
-   route_interceptors = new ArrayList<>();
-   preroute_index = 0;
+   route_dispatcher = new CatserveRouter(session_manager::findSession);
 
    addRoute("ALL","/ping",this::handlePing);
    addRoute("ALL",this::handleParameters);
    addRoute("ALL",session_manager::setupSession);
    addRoute("ALL",this::handleLogging);
+   addRoute("GET","/metrics",this::handleMetrics);
    
    addRoute("ALL","/static",this::handleStatic);
 
@@ -212,6 +210,7 @@ public CatserveServer(CatreController cc)
    addRoute("POST","/universe/shareCondition",this::handleShareCondition);
    addRoute("POST","/universe/unshareCondition",this::handleUnshareCondition);
    addRoute("POST","/universe/getValue",this::handleGetValue);
+   addRoute("POST","/universe/history",this::handleHistory);
    addRoute("GET","/rules",this::handleListRules);
    addRoute("POST","/rule/add",this::handleAddRule);
    addRoute("POST","/rule/edit",this::handleEditRule);
@@ -225,7 +224,7 @@ public CatserveServer(CatreController cc)
 
    http_server.createContext("/", new CatreHandler());
 
-   http_server.setExecutor(new ServerExecutor());
+   http_server.setExecutor(request_executor);
 
    cc.register(new SessionTable());
 }
@@ -234,14 +233,7 @@ public CatserveServer(CatreController cc)
 private class CatreHandler implements HttpHandler {
 
    @Override public void handle(HttpExchange e) throws IOException {
-      for(Route interceptor : route_interceptors){
-         String resp = interceptor.handle(e);
-         if (resp != null) {
-            sendResponse(e, resp);
-            return;
-          }
-       }
-      String resp = jsonError(null,404,"ILLEGAL - not an endpoint");
+      String resp = route_dispatcher.dispatch(e);
       sendResponse(e, resp);
     }
 
@@ -254,6 +246,51 @@ private String handlePing(HttpExchange e)
 }
 
 
+/**
+ *	Return server and rule engine statistics in Prometheus text format.
+ *	Scrapers have no session, so access requires the metricstoken from
+ *	catre.props as a bearer token, or a request from the local host when
+ *	no token is configured.
+ **/
+
+private String handleMetrics(HttpExchange e)
+{
+   if (!isMetricsAuthorized(e)) {
+      return jsonError(null,401,"Unauthorized access");
+    }
+
+   CatreMetrics m = new CatreMetrics();
+   m.addCounter("catre_http_requests_received_total","Requests accepted by the server",
+	 request_executor.getRequestCount());
+   m.addCounter("catre_http_requests_rejected_total","Requests rejected because the queue was full",
+	 request_executor.getRejectCount());
+   m.addGauge("catre_http_queue_depth","Requests waiting for a thread",
+	 request_executor.getQueueDepth());
+   m.addGauge("catre_http_active_threads","Threads handling requests",
+	 request_executor.getActiveCount());
+
+   route_dispatcher.addMetrics(m);
+   catre_control.addMetrics(m);
+
+   e.getResponseHeaders().set("Content-Type",TEXT_MIME + "; version=0.0.4");
+
+   return m.toPrometheus();
+}
+
+
+private boolean isMetricsAuthorized(HttpExchange e)
+{
+   if (metrics_token != null && !metrics_token.isEmpty()) {
+      String auth = e.getRequestHeaders().getFirst("Authorization");
+      return auth != null && auth.equals("Bearer " + metrics_token);
+    }
+
+   InetSocketAddress addr = e.getRemoteAddress();
+   return addr != null && addr.getAddress() != null &&
+      addr.getAddress().isLoopbackAddress();
+}
+
+
 private String handleStatic(HttpExchange ex)
 {
    URI uri = ex.getRequestURI();
@@ -598,11 +635,11 @@ private String handleGetUniverse(HttpExchange e,CatreSession cs)
    Map<String,Object> unimap = cs.getUniverse(catre_control).toJson();
    //TODO - remove any private information from unimap
    
-   CatreLog.logD("CATSERVE","Return universe map " + unimap);
+   CatreLog.logD("CATSERVE",() -> "Return universe map " + unimap);
    
    JSONObject obj = new JSONObject(unimap);
    
-   CatreLog.logD("CATSERVE","Return universe " + obj.toString(2));
+   CatreLog.logD("CATSERVE",() -> "Return universe " + obj.toString(2));
 
    return jsonResponse(obj);
 }
@@ -617,7 +654,7 @@ private String handleShareCondition(HttpExchange e,CatreSession cs)
    JSONObject jobj = new JSONObject(condtest);
    Map<String,Object> condmap = jobj.toMap();
    
-   CatreLog.logI("CATSERVE","Share condition: " + jobj.toString(2));
+   CatreLog.logI("CATSERVE",() -> "Share condition: " + jobj.toString(2));
    
    CatreCondition cc = cp.createCondition(cu.getCatre().getDatabase(),condmap);
    
@@ -676,6 +713,49 @@ private String handleGetValue(HttpExchange e,CatreSession cs)
 
 
 
+private String handleHistory(HttpExchange e,CatreSession cs)
+{
+   CatreUniverse cu = cs.getUniverse(catre_control);
+   String dnm = getParameter(e,"DEVICE");
+   String pnm = getParameter(e,"PARAMETER");
+
+   CatreDevice cd = cu.findDevice(dnm);
+   if (cd == null) {
+      return jsonError(cs,"Bad device");
+    }
+   CatreParameter cp = cd.findParameter(pnm);
+   if (cp == null) {
+      return jsonError(cs,"Bad parameter");
+    }
+
+   long to = cu.getTime();
+   long from = to - HISTORY_DEFAULT_RANGE;
+   int buckets = 0;
+   try {
+      String s = getParameter(e,"TO");
+      if (s != null) to = Long.parseLong(s);
+      s = getParameter(e,"FROM");
+      if (s != null) from = Long.parseLong(s);
+      else from = to - HISTORY_DEFAULT_RANGE;
+      s = getParameter(e,"BUCKETS");
+      if (s != null) buckets = Integer.parseInt(s);
+    }
+   catch (NumberFormatException err) {
+      return jsonError(cs,"Bad history range");
+    }
+   if (from > to || buckets > MAX_HISTORY_BUCKETS) {
+      return jsonError(cs,"Bad history range");
+    }
+
+   Map<String,Object> hist = cd.getParameterHistory(cp,from,to,buckets);
+   JSONObject obj = new JSONObject(hist);
+   obj.put("DEVICE",dnm);
+
+   return jsonResponse(cs,obj);
+}
+
+
+
 private String handleListRules(HttpExchange e,CatreSession cs)
 {
    CatreUniverse cu = cs.getUniverse(catre_control);
@@ -699,7 +779,7 @@ private String handleAddRule(HttpExchange e,CatreSession cs)
    JSONObject jobj = new JSONObject(ruletext);
    Map<String,Object> rulemap = jobj.toMap();
 
-   CatreLog.logI("CATSERVE","Create rule: " + jobj.toString(2));
+   CatreLog.logI("CATSERVE",() -> "Create rule: " + jobj.toString(2));
 
    CatreRule cr = cp.createRule(cu.getCatre().getDatabase(),rulemap);
 
@@ -722,7 +802,7 @@ private String handleValidateRule(HttpExchange e,CatreSession cs)
    String ruletext = getParameter(e,"RULE");
    JSONObject jobj = new JSONObject(ruletext);
    Map<String,Object> rulemap = jobj.toMap();
-   CatreLog.logI("CATSERVER","Validate rule: " + jobj.toString(2));
+   CatreLog.logI("CATSERVER",() -> "Validate rule: " + jobj.toString(2));
    CatreRule cr = cp.createRule(cu.getCatre().getDatabase(),rulemap);
    
    if (cr == null) {
@@ -807,7 +887,7 @@ static void sendResponse(HttpExchange exchange,String response)
 
 static void sendResponse(HttpExchange exchange, String response,int rcode)
 {
-   CatreLog.logD("CATSERVE","Sending response: " + response);
+   CatreLog.logD("CATSERVE",() -> "Sending response: " + response);
    
    try{
       exchange.sendResponseHeaders(rcode, response.getBytes().length);
@@ -893,178 +973,41 @@ static String errorResponse(int status,String msg)
 
 public void addRoute(String method,String url,IHandler<HttpExchange,String> h)
 {
-   addHTTPInterceptor(new Route(method,url,h));
+   route_dispatcher.addRoute(method,url,h::handle);
 }
 
 
 public void addRoute(String method,IHandler<HttpExchange,String> h)
 {
-   addHTTPInterceptor(new Route(method,null,h));
+   route_dispatcher.addRoute(method,null,h::handle);
 }
 
 
 public void addRoute(String method,String url,
       BiFunction<HttpExchange,CatreSession,String> h)
 {
-   addHTTPInterceptor(new Route(method,url,h));
+   route_dispatcher.addRoute(method,url,h);
 }
 
 
 public void addPreRoute(String method,String url,
       BiFunction<HttpExchange,CatreSession,String> h)
 {
-   route_interceptors.add(preroute_index++,new Route(method,url,h));
+   route_dispatcher.addPreRoute(method,url,h);
 }
 
 
 public void addRoute(String method,
       BiFunction<HttpExchange,CatreSession,String> h)
 {
-   addHTTPInterceptor(new Route(method,null,h));
-}
-
-public void addHTTPInterceptor(Route r)
-{
-   route_interceptors.add(r);
+   route_dispatcher.addRoute(method,null,h);
 }
 
 
-/********************************************************************************/
-/*										*/
-/*	Handle Routing implementation						*/
-/*										*/
-/********************************************************************************/
-
 private interface IHandler<I, O> {
    O handle(I input);
 }
 
-private class Route {
-
-   private int check_method;
-   private String check_url;
-   private Pattern check_pattern;
-   private List<String> check_names;
-   private IHandler<HttpExchange,String> route_handle;
-   private BiFunction<HttpExchange,CatreSession,String> route_function;
-
-   Route(String method,String url,IHandler<HttpExchange,String> handler) {
-      this(method,url);
-      route_handle = handler;
-    }
-
-   Route(String method,String url,
-	 BiFunction<HttpExchange,CatreSession,String> handler) {
-      this(method,url);
-      route_function = handler;
-    }
-
-   private Route(String method,String url) {
-      if (method == null || method.equals("ALL")) check_method = -1;
-      else {
-	 check_method = 0;
-	 String[] ms = method.split(" ,;");
-	 for (String mm : ms) {
-	    int ordinal = getHttpMethodOrdinal(mm);
-	    if (ordinal >= 0) check_method |= (1 << ordinal);
-	  }
-       }
-      check_url = url;
-      route_handle = null;
-      route_function = null;
-      check_pattern = null;
-      check_names = null;
-      setupPatterns();
-    }
-
-   public String handle(HttpExchange exchange) {
-      int ordinal = getHttpMethodOrdinal(exchange.getRequestMethod());
-      int v = 1 << ordinal;
-   
-      if ((v & check_method) == 0) return null;
-   
-      if (check_pattern != null) {
-         Matcher m = check_pattern.matcher(exchange.getRequestURI().toString());
-         if (!m.matches()) return null;
-        
-         int idx = 1;
-         for (String s : check_names) {
-            @Tainted String p = m.group(idx++);
-            setParameter(exchange,s,p);
-          }
-       }
-      else if (check_url != null && !exchange.getRequestURI().toString().startsWith(check_url)) return null;	
-   
-   
-      try {
-         if (route_handle != null) {
-            return route_handle.handle(exchange);
-          }
-         else if (route_function != null) {
-            CatreSession cs = session_manager.findSession(exchange);
-            return route_function.apply(exchange,cs);
-          }
-       }
-      catch (Throwable t) {
-         CatreLog.logE("CATSERVE","Problem handling input",t);
-         return jsonError(null,500,"Problem handling input: " + t);
-       }
-   
-      return null;
-    }
-
-   private void setupPatterns() {
-      if (check_url == null || !check_url.contains(":")) return;
-      check_names = new ArrayList<>();
-      String u = check_url;
-      String pat = "";
-      for (int i = u.indexOf(":"); i >= 0; i = u.indexOf(":")) {
-	 int j = u.indexOf("/",i);
-	 pat += u.substring(0,i);
-	 pat += "([A-Za-z_]+)";
-	 String nm = null;
-	 if (j < 0) {
-	    nm = u.substring(i+1);
-	    u = "";
-	  }
-	 else {
-	    nm = u.substring(i+1,j);
-	    u = u.substring(j);
-	  }
-	 check_names.add(nm);
-       }
-      pat += u;
-      check_pattern = Pattern.compile(pat);
-    }
-
-   //gets the ordinal value for a given HTTP string;
-   private int getHttpMethodOrdinal(String method) {
-      switch (method) {
-	 case "GET":
-	    return 0;
-	 case "POST":
-	    return 1;
-	 case "PUT":
-	    return 2;
-	 case "DELETE":
-	    return 3;
-	 case "HEAD":
-	    return 4;
-	 case "OPTIONS":
-	    return 5;
-	 case "TRACE":
-	    return 6;
-	 case "CONNECT":
-	    return 7;
-	 case "PATCH":
-	    return 8;
-	 default:
-	    return -1;
-       }
-    }
-
-}  // end of inner class Route
-
 
 
 /********************************************************************************/
@@ -1278,13 +1221,28 @@ static @Tainted JSONObject getJson(HttpExchange exchange,String fld)
 /*										*/
 /********************************************************************************/
 
-private class ServerExecutor implements Executor {
+/**
+ *	Requests are run on their own executor, not the controller's pool used
+ *	for rules and timers.  Properties httpthreads, httpqueue, httpreject
+ *	(caller or abort) and httpvirtual control it.
+ **/
 
-   @Override public void execute(Runnable r) {
-      catre_control.submit(r);
+private CatserveExecutor setupExecutor(Properties p)
+{
+   int nth = HTTP_THREADS;
+   int qsz = HTTP_QUEUE_SIZE;
+   try {
+      nth = Integer.parseInt(p.getProperty("httpthreads",Integer.toString(nth)));
+      qsz = Integer.parseInt(p.getProperty("httpqueue",Integer.toString(qsz)));
     }
+   catch (NumberFormatException e) {
+      CatreLog.logE("CATSERVE","Bad http executor property",e);
+    }
+   boolean caller = !p.getProperty("httpreject","caller").equals("abort");
+   boolean virt = Boolean.parseBoolean(p.getProperty("httpvirtual","false"));
 
-}	// end of inner class ServerExecutor
+   return new CatserveExecutor(nth,qsz,caller,virt);
+}
 
 
 /********************************************************************************/
@@ -68,6 +68,9 @@ private String		universe_id;
 private Date		last_used;
 private long		expires_at;
 private Map<String,String> value_map;
+private volatile boolean is_dirty;
+private long		last_saved;
+private volatile long	last_access;
 
 private static final long EXPIRE_DELTA = 1000*60*60*24*4;
 
@@ -89,12 +92,17 @@ CatserveSessionImpl()
    last_used = new Date();
    expires_at = 0;
    value_map = new HashMap<>();
+   is_dirty = true;
+   last_saved = 0;
+   last_access = System.currentTimeMillis();
 }
 
 
 CatserveSessionImpl(CatreStore store,Map<String,Object> data)
 {
    super(store,data);
+
+   last_access = System.currentTimeMillis();
 }
 
 
@@ -134,7 +142,10 @@ public CatreUniverse getUniverse(CatreController cc)
 
    if (universe_id == null || expires_at == 0) return null;
 
-   return (CatreUniverse) cc.getDatabase().loadObject(universe_id);
+   CatreUniverse cu = (CatreUniverse) cc.getDatabase().loadObject(universe_id);
+   if (cu != null) cc.activateUniverse(cu);
+
+   return cu;
 }
 
 
@@ -146,6 +157,11 @@ public String getSessionId()
 }
 
 
+long getLastAccess()			{ return last_access; }
+
+void noteAccess()			{ last_access = System.currentTimeMillis(); }
+
+
 
 @Override
 public void setupSession(CatreUser user)
@@ -155,6 +171,7 @@ public void setupSession(CatreUser user)
    universe_id = (univ == null ? null : univ.getDataUID());
    last_used = new Date();
    expires_at = last_used.getTime() + EXPIRE_DELTA;
+   is_dirty = true;
 
    CatreLog.logD("CATSERVE","Setup session " + user_id + " " + universe_id);
 }
@@ -193,7 +210,7 @@ public Map<String,Object> toJson()
    Map<String,Object> rslt = super.toJson();
    rslt.put("USER_ID",user_id);
    rslt.put("UNIVERSE_ID",universe_id);
-   rslt.put("LAST_USED", new Date());
+   rslt.put("LAST_USED",last_used);
    for (Map.Entry<String,String> ent : value_map.entrySet()) {
       rslt.put("VALUE_" + ent.getKey(),ent.getValue());
     }
@@ -208,9 +225,11 @@ public void fromJson(CatreStore cs,Map<String,Object> map)
 {
    super.fromJson(cs,map);
    user_id = getSavedString(map,"USER_ID",user_id);
-   universe_id = getSavedString(map,"universe_id",universe_id);
+   universe_id = getSavedString(map,"UNIVERSE_ID",universe_id);
    last_used = getSavedDate(map,"LAST_USED",last_used);
    expires_at = last_used.getTime() + EXPIRE_DELTA;
+   last_saved = last_used.getTime();
+   is_dirty = false;
    if (value_map == null) value_map = new HashMap<>();
    for (String k : map.keySet()) {
       if (k.startsWith("VALUE_")) {
@@ -240,6 +259,7 @@ void removeSession(CatreController cc)
 @Override public void setValue(String key,String val)
 {
    value_map.put(key,val);
+   is_dirty = true;
 }
 
 @Override public @Tainted String getValue(String key)
@@ -249,11 +269,23 @@ void removeSession(CatreController cc)
 
 
 
+/**
+ *      Note the session was used and persist it if needed.  Unchanged sessions
+ *      are only written when the last write is older than SESSION_TOUCH_INTERVAL;
+ *      writes are done in the background and coalesced by the store.
+ **/
+
 @Override public void saveSession(CatreController cc)
 {
    if (expires_at == 0) return;
-   last_used = new Date();
-   cc.getDatabase().saveObject(this);
+
+   long now = System.currentTimeMillis();
+   last_used = new Date(now);
+   if (!is_dirty && now - last_saved < SESSION_TOUCH_INTERVAL) return;
+
+   is_dirty = false;
+   last_saved = now;
+   cc.getDatabase().saveObjectLater(this);
 }
 
 
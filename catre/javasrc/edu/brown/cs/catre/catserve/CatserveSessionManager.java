@@ -37,15 +37,19 @@
 package edu.brown.cs.catre.catserve;
 
 import java.net.HttpCookie;
+import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import com.sun.net.httpserver.HttpExchange;
 import com.sun.net.httpserver.Headers;
 
 import edu.brown.cs.catre.catre.CatreController;
 import edu.brown.cs.catre.catre.CatreLog;
+import edu.brown.cs.catre.catre.CatreSavable;
 import edu.brown.cs.catre.catre.CatreSession;
 
 class CatserveSessionManager implements CatserveConstants
@@ -70,8 +74,10 @@ private CatreController catre_control;
 
 CatserveSessionManager(CatreController cc)
 {
-   session_set = new HashMap<>();
+   session_set = new ConcurrentHashMap<>();
    catre_control = cc;
+
+   cc.schedule(new SessionSweeper(),SESSION_SWEEP_INTERVAL,SESSION_SWEEP_INTERVAL);
 }
 
 
@@ -112,12 +118,15 @@ String setupSession(HttpExchange e)
       CatserveServer.setParameter(e,SESSION_PARAMETER,sessionid);
    }
 
-   CatreSession cs = null;
+   CatserveSessionImpl cs = null;
    if (sessionid != null) cs = findSession(sessionid);
    if (cs != null && !cs.isValid()) cs = null;
    if (cs == null) cs = beginSession(e);
 
-   if (cs != null) cs.saveSession(catre_control);
+   if (cs != null) {
+      cs.noteAccess();
+      cs.saveSession(catre_control);
+    }
 
    return null;
 }
@@ -154,19 +163,18 @@ private static Map<String, HttpCookie> parseCookies(List<String> cookieHeaders){
 /*										*/
 /********************************************************************************/
 
-CatreSession beginSession(HttpExchange e)
+CatserveSessionImpl beginSession(HttpExchange e)
 {
    CatserveSessionImpl cs = new CatserveSessionImpl();
    String sid = cs.getDataUID();
    session_set.put(sid,cs);
+   if (session_set.size() > MAX_SESSIONS) removeOldestSessions();
    CatserveServer.setParameter(e,SESSION_PARAMETER,sid);
 
    int maxAge = 31536000; // Set the cookie to expire in one year
    String cookie = String.format("%s=%s; Path=%s; Max-Age=%d", SESSION_COOKIE, sid, "/", maxAge);
    e.getResponseHeaders().add("Set-Cookie", cookie);
 
-   cs.saveSession(catre_control);
-
    return cs;
 }
 
@@ -204,12 +212,88 @@ private CatserveSessionImpl findSession(String sid)
    CatserveSessionImpl csi = session_set.get(sid);
    if (csi != null) return csi;
 
-   csi = (CatserveSessionImpl) catre_control.getDatabase().loadObject(sid);
+   // session was dropped from memory or server restarted -- reload it
+   CatreSavable obj = catre_control.getDatabase().loadObject(sid);
+   if (!(obj instanceof CatserveSessionImpl)) return null;
+
+   csi = (CatserveSessionImpl) obj;
+   CatserveSessionImpl oldcsi = session_set.putIfAbsent(sid,csi);
+   if (oldcsi != null) return oldcsi;
+   if (session_set.size() > MAX_SESSIONS) removeOldestSessions();
+
    return csi;
 }
 
 
 
+/********************************************************************************/
+/*										*/
+/*	Session cleanup methods 						*/
+/*										*/
+/********************************************************************************/
+
+private void removeIdleSessions()
+{
+   long now = System.currentTimeMillis();
+   int ct = 0;
+
+   for (CatserveSessionImpl csi : session_set.values()) {
+      if (!csi.isValid()) {
+	 endSession(csi.getSessionId());
+	 ++ct;
+       }
+      else if (now - csi.getLastAccess() > SESSION_IDLE_TIME) {
+	 // saved sessions can be reloaded from the database on demand
+	 session_set.remove(csi.getSessionId(),csi);
+	 ++ct;
+       }
+    }
+
+   if (ct > 0) {
+      CatreLog.logD("CATSERVE","Removed " + ct + " idle sessions; " +
+	    session_set.size() + " remain");
+    }
+}
+
+
+/**
+ *	When there are too many sessions, drop the least recently used tenth
+ *	of them at once so this isn't done for every new session.
+ **/
+
+private synchronized void removeOldestSessions()
+{
+   int sz = session_set.size();
+   if (sz <= MAX_SESSIONS) return;
+
+   List<CatserveSessionImpl> all = new ArrayList<>(session_set.values());
+   all.sort(Comparator.comparingLong(CatserveSessionImpl::getLastAccess));
+   int ct = sz - MAX_SESSIONS + MAX_SESSIONS/10;
+   for (int i = 0; i < ct && i < all.size(); ++i) {
+      CatserveSessionImpl csi = all.get(i);
+      session_set.remove(csi.getSessionId(),csi);
+    }
+
+   CatreLog.logD("CATSERVE","Evicted " + ct + " least recently used sessions");
+}
+
+
+
+private class SessionSweeper implements Runnable {
+
+   @Override public void run() {
+      try {
+	 removeIdleSessions();
+       }
+      catch (Throwable t) {
+	 CatreLog.logE("CATSERVE","Problem removing idle sessions",t);
+       }
+    }
+
+}	// end of inner class SessionSweeper
+
+
+
 }	// end of class CatserveSessionManager
 
 
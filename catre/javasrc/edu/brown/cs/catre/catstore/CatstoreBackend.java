@@ -0,0 +1,85 @@
+/********************************************************************************/
+/*										*/
+/*		CatstoreBackend.java						*/
+/*										*/
+/*	Internal interface shared by the store implementations			*/
+/*										*/
+/********************************************************************************/
+/*	Copyright 2023 Brown University -- Steven P. Reiss			*/
+/*********************************************************************************
+ *  Copyright 2023, Brown University, Providence, RI.				 *
+ *										 *
+ *			  All Rights Reserved					 *
+ *										 *
+ *  Permission to use, copy, modify, and distribute this software and its	 *
+ *  documentation for any purpose other than its incorporation into a		 *
+ *  commercial product is hereby granted without fee, provided that the 	 *
+ *  above copyright notice appear in all copies and that both that		 *
+ *  copyright notice and this permission notice appear in supporting		 *
+ *  documentation, and that the name of Brown University not be used in 	 *
+ *  advertising or publicity pertaining to distribution of the software 	 *
+ *  without specific, written prior permission. 				 *
+ *										 *
+ *  BROWN UNIVERSITY DISCLAIMS ALL WARRANTIES WITH REGARD TO THIS		 *
+ *  SOFTWARE, INCLUDING ALL IMPLIED WARRANTIES OF MERCHANTABILITY AND		 *
+ *  FITNESS FOR ANY PARTICULAR PURPOSE.  IN NO EVENT SHALL BROWN UNIVERSITY	 *
+ *  BE LIABLE FOR ANY SPECIAL, INDIRECT OR CONSEQUENTIAL DAMAGES OR ANY 	 *
+ *  DAMAGES WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS,		 *
+ *  WHETHER IN AN ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS		 *
+ *  ACTION, ARISING OUT OF OR IN CONNECTION WITH THE USE OR PERFORMANCE 	 *
+ *  OF THIS SOFTWARE.								 *
+ *										 *
+ ********************************************************************************/
+
+
+
+
+
+
+
+
+
+
+
+package edu.brown.cs.catre.catstore;
+
+import edu.brown.cs.catre.catre.CatreSavable;
+import edu.brown.cs.catre.catre.CatreStore;
+
+/**
+ *      Operations the write-behind queue and the oauth tables need from
+ *      whichever store (Mongo, embedded, memory) is in use.
+ **/
+
+interface CatstoreBackend extends CatreStore
+{
+
+
+/**
+ *      Write an object now (called from the write-behind queue)
+ **/
+
+String storeObject(CatreSavable obj);
+
+
+/**
+ *      Find the first object in a collection whose field has the given value
+ **/
+
+<T extends CatreSavable> T findOne(String collection,String fld,String val,T dflt);
+
+
+/**
+ *      Remove all objects in a collection whose field has the given value
+ **/
+
+void deleteFrom(String collection,String fld,String val);
+
+
+
+}       // end of interface CatstoreBackend
+
+
+
+
+/* end of CatstoreBackend.java */
@@ -0,0 +1,313 @@
+/********************************************************************************/
+/*										*/
+/*		CatstoreCache.java						*/
+/*										*/
+/*	Thread-safe object cache with pinning and LRU/TTL eviction		*/
+/*										*/
+/********************************************************************************/
+/*	Copyright 2023 Brown University -- Steven P. Reiss			*/
+/*********************************************************************************
+ *  Copyright 2023, Brown University, Providence, RI.				 *
+ *										 *
+ *			  All Rights Reserved					 *
+ *										 *
+ *  Permission to use, copy, modify, and distribute this software and its	 *
+ *  documentation for any purpose other than its incorporation into a		 *
+ *  commercial product is hereby granted without fee, provided that the 	 *
+ *  above copyright notice appear in all copies and that both that		 *
+ *  copyright notice and this permission notice appear in supporting		 *
+ *  documentation, and that the name of Brown University not be used in 	 *
+ *  advertising or publicity pertaining to distribution of the software 	 *
+ *  without specific, written prior permission. 				 *
+ *										 *
+ *  BROWN UNIVERSITY DISCLAIMS ALL WARRANTIES WITH REGARD TO THIS		 *
+ *  SOFTWARE, INCLUDING ALL IMPLIED WARRANTIES OF MERCHANTABILITY AND		 *
+ *  FITNESS FOR ANY PARTICULAR PURPOSE.  IN NO EVENT SHALL BROWN UNIVERSITY	 *
+ *  BE LIABLE FOR ANY SPECIAL, INDIRECT OR CONSEQUENTIAL DAMAGES OR ANY 	 *
+ *  DAMAGES WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS,		 *
+ *  WHETHER IN AN ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS		 *
+ *  ACTION, ARISING OUT OF OR IN CONNECTION WITH THE USE OR PERFORMANCE 	 *
+ *  OF THIS SOFTWARE.								 *
+ *										 *
+ ********************************************************************************/
+
+
+
+
+
+
+
+package edu.brown.cs.catre.catstore;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.bson.Document;
+
+import edu.brown.cs.catre.catre.CatreSavable;
+
+/**
+ *      Cache of loaded objects by UID.  Long-lived objects (users and
+ *      universes) are pinned and stay until removed.  Everything else
+ *      (sessions, oauth tokens, ...) is kept in an access-ordered LRU map
+ *      bounded by size and by time since last use.  Each entry also holds
+ *      the document last written for the object so that saves can send
+ *      only the changed fields; the document goes when the object does.
+ **/
+
+class CatstoreCache implements CatstoreConstants
+{
+
+
+/********************************************************************************/
+/*										*/
+/*	Private Storage 							*/
+/*										*/
+/********************************************************************************/
+
+private Map<String,CacheEntry> pinned_objects;
+private LinkedHashMap<String,CacheEntry> lru_objects;
+private int		max_size;
+private long		max_age;
+private AtomicLong	hit_count;
+private AtomicLong	miss_count;
+private AtomicLong	eviction_count;
+
+
+
+/********************************************************************************/
+/*										*/
+/*	Constructors								*/
+/*										*/
+/********************************************************************************/
+
+CatstoreCache(int size,long age)
+{
+   pinned_objects = new ConcurrentHashMap<>();
+   lru_objects = new LinkedHashMap<>(64,0.75f,true);
+   max_size = size;
+   max_age = age;
+   hit_count = new AtomicLong();
+   miss_count = new AtomicLong();
+   eviction_count = new AtomicLong();
+}
+
+
+
+/********************************************************************************/
+/*										*/
+/*	Access methods								*/
+/*										*/
+/********************************************************************************/
+
+CatreSavable get(String uid)
+{
+   if (uid == null) return null;
+
+   CatreSavable rslt = null;
+   CacheEntry pe = pinned_objects.get(uid);
+   if (pe != null) rslt = pe.getObject();
+   else {
+      synchronized (lru_objects) {
+	 CacheEntry ce = lru_objects.get(uid);
+	 if (ce != null) {
+	    long now = System.currentTimeMillis();
+	    if (ce.isExpired(now)) {
+	       lru_objects.remove(uid);
+	       eviction_count.incrementAndGet();
+	     }
+	    else {
+	       ce.touch(now);
+	       rslt = ce.getObject();
+	     }
+	  }
+       }
+    }
+
+   if (rslt == null) miss_count.incrementAndGet();
+   else hit_count.incrementAndGet();
+
+   return rslt;
+}
+
+
+void put(CatreSavable obj,boolean pin)
+{
+   String uid = obj.getDataUID();
+   if (uid == null) return;
+
+   if (pin || pinned_objects.containsKey(uid)) {
+      CacheEntry old = pinned_objects.get(uid);
+      synchronized (lru_objects) {
+	 CacheEntry ce = lru_objects.remove(uid);
+	 if (old == null) old = ce;
+       }
+      pinned_objects.put(uid,new CacheEntry(obj,old));
+      return;
+    }
+
+   synchronized (lru_objects) {
+      CacheEntry old = lru_objects.get(uid);
+      lru_objects.put(uid,new CacheEntry(obj,old));
+      trim();
+    }
+}
+
+
+CatreSavable remove(String uid)
+{
+   if (uid == null) return null;
+
+   CacheEntry ce = pinned_objects.remove(uid);
+   synchronized (lru_objects) {
+      CacheEntry le = lru_objects.remove(uid);
+      if (ce == null) ce = le;
+    }
+
+   return (ce == null ? null : ce.getObject());
+}
+
+
+void pin(CatreSavable obj)
+{
+   put(obj,true);
+}
+
+
+void unpin(String uid)
+{
+   CacheEntry ce = pinned_objects.remove(uid);
+   if (ce == null) return;
+
+   synchronized (lru_objects) {
+      ce.touch(System.currentTimeMillis());
+      lru_objects.put(uid,ce);
+      trim();
+    }
+}
+
+
+
+/********************************************************************************/
+/*										*/
+/*	Saved document methods							*/
+/*										*/
+/********************************************************************************/
+
+/**
+ *	Return the document last saved for the object, or null if the
+ *	object isn't cached or hasn't been saved since it was loaded.
+ **/
+
+Document getSavedDocument(CatreSavable obj)
+{
+   CacheEntry ce = findEntry(obj.getDataUID());
+   if (ce == null || ce.getObject() != obj) return null;
+
+   return ce.getSavedDocument();
+}
+
+
+void setSavedDocument(CatreSavable obj,Document doc)
+{
+   CacheEntry ce = findEntry(obj.getDataUID());
+   if (ce != null && ce.getObject() == obj) ce.setSavedDocument(doc);
+}
+
+
+private CacheEntry findEntry(String uid)
+{
+   if (uid == null) return null;
+
+   CacheEntry ce = pinned_objects.get(uid);
+   if (ce != null) return ce;
+
+   synchronized (lru_objects) {
+      return lru_objects.get(uid);
+    }
+}
+
+
+
+/********************************************************************************/
+/*										*/
+/*	Statistics methods							*/
+/*										*/
+/********************************************************************************/
+
+long getHitCount()			{ return hit_count.get(); }
+
+long getMissCount()			{ return miss_count.get(); }
+
+long getEvictionCount() 		{ return eviction_count.get(); }
+
+int getPinnedCount()			{ return pinned_objects.size(); }
+
+int getSize()
+{
+   synchronized (lru_objects) {
+      return pinned_objects.size() + lru_objects.size();
+    }
+}
+
+
+
+/********************************************************************************/
+/*										*/
+/*	Eviction methods							*/
+/*										*/
+/********************************************************************************/
+
+private void trim()
+{
+   long now = System.currentTimeMillis();
+
+   // entries are in access order, so oldest ones come first
+   for (Iterator<CacheEntry> it = lru_objects.values().iterator(); it.hasNext(); ) {
+      CacheEntry ce = it.next();
+      if (lru_objects.size() <= max_size && !ce.isExpired(now)) break;
+      it.remove();
+      eviction_count.incrementAndGet();
+    }
+}
+
+
+
+private class CacheEntry {
+
+   private CatreSavable for_object;
+   private long last_used;
+   private volatile Document saved_document;
+
+   CacheEntry(CatreSavable obj,CacheEntry prior) {
+      for_object = obj;
+      last_used = System.currentTimeMillis();
+      saved_document = null;
+      if (prior != null && prior.for_object == obj) saved_document = prior.saved_document;
+    }
+
+   CatreSavable getObject()			{ return for_object; }
+
+   Document getSavedDocument()			{ return saved_document; }
+
+   void setSavedDocument(Document d)		{ saved_document = d; }
+
+   void touch(long now) 			{ last_used = now; }
+
+   boolean isExpired(long now) {
+      return max_age > 0 && now - last_used > max_age;
+    }
+
+}	// end of inner class CacheEntry
+
+
+
+}	// end of class CatstoreCache
+
+
+
+
+/* end of CatstoreCache.java */
@@ -42,6 +42,36 @@ public interface CatstoreConstants
 {
 
 String  USERS_PREFIX = "USER_";
+String  USERS_TABLE = "CatreUsers";
+
+
+/**
+ *      Default delay (ms) before deferred saves are written.  Can be set
+ *      with the savedelay property in catre.props.
+ **/
+
+long    SAVE_DELAY = 2000;
+
+
+/**
+ *      Default bounds for unpinned objects (sessions, tokens) in the object
+ *      cache.  Can be set with cachesize and cacheage in catre.props.
+ **/
+
+int     CACHE_SIZE = 1024;
+long    CACHE_AGE = 60*60*1000;
+
+
+/**
+ *      Files for the embedded store (store=embedded in catre.props).  The
+ *      directory can be set with storedir; the log is folded into a new
+ *      snapshot after storecompact records.
+ **/
+
+String  STORE_DIRECTORY = "store";
+String  SNAPSHOT_FILE = "catre.snapshot";
+String  LOG_FILE = "catre.log";
+int     LOG_COMPACT_SIZE = 1000;
 
 
 
@@ -0,0 +1,390 @@
+/********************************************************************************/
+/*										*/
+/*		CatstoreEmbedded.java						*/
+/*										*/
+/*	Embedded store using a snapshot and an append-only log			*/
+/*										*/
+/********************************************************************************/
+/*	Copyright 2023 Brown University -- Steven P. Reiss			*/
+/*********************************************************************************
+ *  Copyright 2023, Brown University, Providence, RI.				 *
+ *										 *
+ *			  All Rights Reserved					 *
+ *										 *
+ *  Permission to use, copy, modify, and distribute this software and its	 *
+ *  documentation for any purpose other than its incorporation into a		 *
+ *  commercial product is hereby granted without fee, provided that the 	 *
+ *  above copyright notice appear in all copies and that both that		 *
+ *  copyright notice and this permission notice appear in supporting		 *
+ *  documentation, and that the name of Brown University not be used in 	 *
+ *  advertising or publicity pertaining to distribution of the software 	 *
+ *  without specific, written prior permission. 				 *
+ *										 *
+ *  BROWN UNIVERSITY DISCLAIMS ALL WARRANTIES WITH REGARD TO THIS		 *
+ *  SOFTWARE, INCLUDING ALL IMPLIED WARRANTIES OF MERCHANTABILITY AND		 *
+ *  FITNESS FOR ANY PARTICULAR PURPOSE.  IN NO EVENT SHALL BROWN UNIVERSITY	 *
+ *  BE LIABLE FOR ANY SPECIAL, INDIRECT OR CONSEQUENTIAL DAMAGES OR ANY 	 *
+ *  DAMAGES WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS,		 *
+ *  WHETHER IN AN ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS		 *
+ *  ACTION, ARISING OUT OF OR IN CONNECTION WITH THE USE OR PERFORMANCE 	 *
+ *  OF THIS SOFTWARE.								 *
+ *										 *
+ ********************************************************************************/
+
+
+
+
+
+
+
+
+
+
+
+package edu.brown.cs.catre.catstore;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import edu.brown.cs.catre.catre.CatreController;
+import edu.brown.cs.catre.catre.CatreLog;
+
+/**
+ *      Store for single-home deployments that don't run Mongo.  The documents
+ *      are kept in memory as in CatstoreMemory.  Every change is appended to
+ *      a log file; on startup the last snapshot is loaded and the log is
+ *      replayed.  When the log gets long its contents are folded into a new
+ *      snapshot, which is written to a temporary file and renamed so a crash
+ *      never leaves a partial snapshot.
+ **/
+
+class CatstoreEmbedded extends CatstoreMemory
+{
+
+
+/********************************************************************************/
+/*										*/
+/*	Private Storage 							*/
+/*										*/
+/********************************************************************************/
+
+private File		snapshot_file;
+private File		log_file;
+private FileOutputStream log_stream;
+private Writer		log_writer;
+private int		log_count;
+private int		compact_size;
+
+
+
+/********************************************************************************/
+/*										*/
+/*	Constructors								*/
+/*										*/
+/********************************************************************************/
+
+CatstoreEmbedded(CatreController cc,long delay,File dir,int compact)
+{
+   super(cc,delay);
+
+   dir.mkdirs();
+   snapshot_file = new File(dir,SNAPSHOT_FILE);
+   log_file = new File(dir,LOG_FILE);
+   compact_size = Math.max(compact,1);
+   log_count = 0;
+
+   loadSnapshot();
+   int ct = replayLog();
+
+   synchronized (this) {
+      if (ct > 0) compact();
+      else openLog(true);
+    }
+
+   CatreLog.logI("CATSTORE","Embedded store loaded from " + dir + " (" + ct +
+	 " log records)");
+}
+
+
+
+/********************************************************************************/
+/*										*/
+/*	Change recording							*/
+/*										*/
+/********************************************************************************/
+
+@Override synchronized void documentSaved(String table,String uid,Map<String,Object> doc)
+{
+   JSONObject rec = new JSONObject();
+   rec.put("OP","SAVE");
+   rec.put("TABLE",table);
+   rec.put("DOC",encode(doc));
+   appendRecord(rec);
+}
+
+
+@Override synchronized void documentRemoved(String table,String uid)
+{
+   JSONObject rec = new JSONObject();
+   rec.put("OP","REMOVE");
+   rec.put("TABLE",table);
+   rec.put("ID",uid);
+   appendRecord(rec);
+}
+
+
+@Override public void flush()
+{
+   super.flush();
+
+   synchronized (this) {
+      try {
+	 if (log_writer != null) {
+	    log_writer.flush();
+	    log_stream.getFD().sync();
+	  }
+       }
+      catch (IOException e) {
+	 CatreLog.logE("CATSTORE","Problem syncing store log",e);
+       }
+    }
+}
+
+
+private void appendRecord(JSONObject rec)
+{
+   try {
+      log_writer.write(rec.toString());
+      log_writer.write("\n");
+      log_writer.flush();
+    }
+   catch (IOException e) {
+      CatreLog.logE("CATSTORE","Problem writing store log",e);
+    }
+
+   if (++log_count >= compact_size) compact();
+}
+
+
+
+/********************************************************************************/
+/*										*/
+/*	Snapshot and log management						*/
+/*										*/
+/********************************************************************************/
+
+private void loadSnapshot()
+{
+   if (!snapshot_file.exists()) return;
+
+   try (BufferedReader br = new BufferedReader(new FileReader(snapshot_file,
+	 StandardCharsets.UTF_8))) {
+      for ( ; ; ) {
+	 String ln = br.readLine();
+	 if (ln == null) break;
+	 if (ln.isBlank()) continue;
+	 JSONObject rec = new JSONObject(ln);
+	 loadDocument(rec.getString("TABLE"),decodeMap(rec.getJSONObject("DOC")));
+       }
+    }
+   catch (IOException | JSONException e) {
+      CatreLog.logE("CATSTORE","Problem reading store snapshot " + snapshot_file,e);
+    }
+}
+
+
+private int replayLog()
+{
+   int ct = 0;
+   if (!log_file.exists()) return ct;
+
+   try (BufferedReader br = new BufferedReader(new FileReader(log_file,
+	 StandardCharsets.UTF_8))) {
+      for ( ; ; ) {
+	 String ln = br.readLine();
+	 if (ln == null) break;
+	 if (ln.isBlank()) continue;
+	 JSONObject rec = null;
+	 try {
+	    rec = new JSONObject(ln);
+	  }
+	 catch (JSONException e) {
+	    // a partial last record from a crash; everything before it is good
+	    CatreLog.logE("CATSTORE","Ignoring bad store log record " + (ct+1));
+	    break;
+	  }
+	 String tbl = rec.getString("TABLE");
+	 switch (rec.getString("OP")) {
+	    case "SAVE" :
+	       loadDocument(tbl,decodeMap(rec.getJSONObject("DOC")));
+	       break;
+	    case "REMOVE" :
+	       unloadDocument(tbl,rec.getString("ID"));
+	       break;
+	  }
+	 ++ct;
+       }
+    }
+   catch (IOException e) {
+      CatreLog.logE("CATSTORE","Problem reading store log " + log_file,e);
+    }
+
+   return ct;
+}
+
+
+/**
+ *	Write all documents to a new snapshot and start an empty log.  Called
+ *	with the lock held so no records are appended meanwhile.
+ **/
+
+private void compact()
+{
+   File tmp = new File(snapshot_file.getPath() + ".tmp");
+
+   try (FileOutputStream fos = new FileOutputStream(tmp);
+	 Writer w = new BufferedWriter(new OutputStreamWriter(fos,StandardCharsets.UTF_8))) {
+      for (Map.Entry<String,Map<String,Map<String,Object>>> ent :
+	    getAllDocuments().entrySet()) {
+	 for (Map<String,Object> doc : ent.getValue().values()) {
+	    JSONObject rec = new JSONObject();
+	    rec.put("TABLE",ent.getKey());
+	    rec.put("DOC",encode(doc));
+	    w.write(rec.toString());
+	    w.write("\n");
+	  }
+       }
+      w.flush();
+      fos.getFD().sync();
+    }
+   catch (IOException e) {
+      CatreLog.logE("CATSTORE","Problem writing store snapshot",e);
+      if (log_writer == null) openLog(true);
+      return;
+    }
+
+   try {
+      Files.move(tmp.toPath(),snapshot_file.toPath(),
+	    StandardCopyOption.REPLACE_EXISTING,StandardCopyOption.ATOMIC_MOVE);
+    }
+   catch (IOException e) {
+      CatreLog.logE("CATSTORE","Problem replacing store snapshot",e);
+      if (log_writer == null) openLog(true);
+      return;
+    }
+
+   openLog(false);
+   log_count = 0;
+}
+
+
+private void openLog(boolean append)
+{
+   try {
+      if (log_writer != null) log_writer.close();
+      log_stream = new FileOutputStream(log_file,append);
+      log_writer = new BufferedWriter(new OutputStreamWriter(log_stream,
+	    StandardCharsets.UTF_8));
+    }
+   catch (IOException e) {
+      CatreLog.logE("CATSTORE","Problem opening store log " + log_file,e);
+    }
+}
+
+
+
+/********************************************************************************/
+/*										*/
+/*	JSON encoding								*/
+/*										*/
+/********************************************************************************/
+
+/**
+ *	Dates are written as { "$date" : ms } (as in Mongo's extended JSON)
+ *	so they come back as Dates rather than strings.
+ **/
+
+private static Object encode(Object val)
+{
+   if (val instanceof Map) {
+      JSONObject rslt = new JSONObject();
+      for (Map.Entry<?,?> ent : ((Map<?,?>) val).entrySet()) {
+	 Object v = ent.getValue();
+	 rslt.put(ent.getKey().toString(),(v == null ? JSONObject.NULL : encode(v)));
+       }
+      return rslt;
+    }
+   else if (val instanceof List) {
+      JSONArray rslt = new JSONArray();
+      for (Object o : (List<?>) val) {
+	 rslt.put(o == null ? JSONObject.NULL : encode(o));
+       }
+      return rslt;
+    }
+   else if (val instanceof Date) {
+      JSONObject rslt = new JSONObject();
+      rslt.put("$date",((Date) val).getTime());
+      return rslt;
+    }
+
+   return val;
+}
+
+
+private static Map<String,Object> decodeMap(JSONObject obj)
+{
+   Map<String,Object> rslt = new HashMap<>();
+   for (String k : obj.keySet()) {
+      rslt.put(k,decode(obj.get(k)));
+    }
+   return rslt;
+}
+
+
+private static Object decode(Object val)
+{
+   if (val == JSONObject.NULL) return null;
+   else if (val instanceof JSONObject) {
+      JSONObject obj = (JSONObject) val;
+      if (obj.length() == 1 && obj.has("$date")) return new Date(obj.getLong("$date"));
+      return decodeMap(obj);
+    }
+   else if (val instanceof JSONArray) {
+      List<Object> rslt = new ArrayList<>();
+      for (Object o : (JSONArray) val) rslt.add(decode(o));
+      return rslt;
+    }
+   else if (val instanceof BigDecimal) {
+      return ((BigDecimal) val).doubleValue();
+    }
+
+   return val;
+}
+
+
+
+}	// end of class CatstoreEmbedded
+
+
+
+
+/* end of CatstoreEmbedded.java */
@@ -36,12 +36,16 @@
 
 package edu.brown.cs.catre.catstore;
 
+import java.io.File;
 import java.util.Map;
+import java.util.Properties;
 
 import edu.brown.cs.catre.catre.CatreController;
+import edu.brown.cs.catre.catre.CatreLog;
 import edu.brown.cs.catre.catre.CatreSavable;
 import edu.brown.cs.catre.catre.CatreStore;
 import edu.brown.cs.catre.catre.CatreTable;
+import edu.brown.cs.catre.catre.CatreUtil;
 
 
 public class CatstoreFactory implements CatstoreConstants
@@ -54,7 +58,7 @@ public class CatstoreFactory implements CatstoreConstants
 /*										*/
 /********************************************************************************/
 
-private CatstoreMongo mongo_store;
+private CatstoreBackend data_store;
 
 
 
@@ -67,8 +71,47 @@ private CatstoreMongo mongo_store;
 
 public CatstoreFactory(CatreController cc)
 {
-   mongo_store = new CatstoreMongo(cc);
-   mongo_store.register(new UsersTable());
+   this(cc,null);
+}
+
+
+/**
+ *	Create a store of the given kind (memory, embedded or mongo) rather
+ *	than the one named by the store property.
+ **/
+
+public CatstoreFactory(CatreController cc,String kind)
+{
+   Properties p = loadProperties(cc);
+   if (kind != null) p.put("store",kind);
+
+   long delay = SAVE_DELAY;
+   int compact = LOG_COMPACT_SIZE;
+   try {
+      delay = Long.parseLong(p.getProperty("savedelay"));
+      compact = Integer.parseInt(p.getProperty("storecompact"));
+    }
+   catch (NumberFormatException e) { }
+
+   kind = p.getProperty("store");
+   switch (kind) {
+      case "memory" :
+	 data_store = new CatstoreMemory(cc,delay);
+	 break;
+      case "embedded" :
+	 File dir = new File(p.getProperty("storedir"));
+	 if (!dir.isAbsolute()) dir = new File(cc.findBaseDirectory(),dir.getPath());
+	 data_store = new CatstoreEmbedded(cc,delay,dir,compact);
+	 break;
+      default :
+	 if (!kind.equals("mongo")) {
+	    CatreLog.logE("CATSTORE","Unknown store type " + kind + "; using mongo");
+	  }
+	 data_store = new CatstoreMongo(cc);
+	 break;
+    }
+
+   data_store.register(new UsersTable());
 }
 
 
@@ -81,7 +124,26 @@ public CatstoreFactory(CatreController cc)
 
 public CatreStore getStore()
 {
-   return mongo_store;
+   return data_store;
+}
+
+
+
+/********************************************************************************/
+/*										*/
+/*	Property methods							*/
+/*										*/
+/********************************************************************************/
+
+private Properties loadProperties(CatreController cc)
+{
+   Properties p = new Properties();
+   p.put("store","mongo");
+   p.put("storedir",STORE_DIRECTORY);
+   p.put("storecompact",Integer.toString(LOG_COMPACT_SIZE));
+   p.put("savedelay",Long.toString(SAVE_DELAY));
+
+   return CatreUtil.loadProperties(cc,p);
 }
 
 
@@ -94,10 +156,12 @@ public CatreStore getStore()
 
 private static class UsersTable implements CatreTable {
 
-   @Override public String getTableName()		{ return "CatreUsers"; }
+   @Override public String getTableName()		{ return USERS_TABLE; }
 
    @Override public String getTablePrefix()		{ return USERS_PREFIX; }
 
+   @Override public boolean isCachePinned()		{ return true; }
+
    @Override public boolean useFor(CatreSavable cs) {
       return cs instanceof CatstoreUser;
     }
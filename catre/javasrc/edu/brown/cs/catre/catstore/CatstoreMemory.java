@@ -0,0 +1,497 @@
+/********************************************************************************/
+/*										*/
+/*		CatstoreMemory.java						*/
+/*										*/
+/*	In-memory implementation of the CATRE store				*/
+/*										*/
+/********************************************************************************/
+/*	Copyright 2023 Brown University -- Steven P. Reiss			*/
+/*********************************************************************************
+ *  Copyright 2023, Brown University, Providence, RI.				 *
+ *										 *
+ *			  All Rights Reserved					 *
+ *										 *
+ *  Permission to use, copy, modify, and distribute this software and its	 *
+ *  documentation for any purpose other than its incorporation into a		 *
+ *  commercial product is hereby granted without fee, provided that the 	 *
+ *  above copyright notice appear in all copies and that both that		 *
+ *  copyright notice and this permission notice appear in supporting		 *
+ *  documentation, and that the name of Brown University not be used in 	 *
+ *  advertising or publicity pertaining to distribution of the software 	 *
+ *  without specific, written prior permission. 				 *
+ *										 *
+ *  BROWN UNIVERSITY DISCLAIMS ALL WARRANTIES WITH REGARD TO THIS		 *
+ *  SOFTWARE, INCLUDING ALL IMPLIED WARRANTIES OF MERCHANTABILITY AND		 *
+ *  FITNESS FOR ANY PARTICULAR PURPOSE.  IN NO EVENT SHALL BROWN UNIVERSITY	 *
+ *  BE LIABLE FOR ANY SPECIAL, INDIRECT OR CONSEQUENTIAL DAMAGES OR ANY 	 *
+ *  DAMAGES WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS,		 *
+ *  WHETHER IN AN ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS		 *
+ *  ACTION, ARISING OUT OF OR IN CONNECTION WITH THE USE OR PERFORMANCE 	 *
+ *  OF THIS SOFTWARE.								 *
+ *										 *
+ ********************************************************************************/
+
+
+
+
+
+
+
+
+
+
+
+package edu.brown.cs.catre.catstore;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+
+import edu.brown.cs.catre.catre.CatreController;
+import edu.brown.cs.catre.catre.CatreException;
+import edu.brown.cs.catre.catre.CatreLog;
+import edu.brown.cs.catre.catre.CatreOauth;
+import edu.brown.cs.catre.catre.CatreSavable;
+import edu.brown.cs.catre.catre.CatreSavableBase;
+import edu.brown.cs.catre.catre.CatreTable;
+import edu.brown.cs.catre.catre.CatreUser;
+import edu.brown.cs.catre.catre.CatreUtil;
+
+/**
+ *      Store that keeps everything in memory.  Each saved object is kept both
+ *      live and as a copy of its JSON document (one map per table, as with
+ *      the Mongo collections) so queries by field work the same way.  Nothing
+ *      survives a restart; CatstoreEmbedded adds persistence on top of this.
+ **/
+
+class CatstoreMemory implements CatstoreConstants, CatstoreBackend
+{
+
+
+/********************************************************************************/
+/*										*/
+/*	Private Storage 							*/
+/*										*/
+/********************************************************************************/
+
+private CatreController catre_control;
+private CatstoreOauth	oauth_control;
+private Map<String,CatreTable> known_tables;
+private Map<String,Map<String,Map<String,Object>>> table_documents;
+private Map<String,CatreSavable> live_objects;
+private CatstoreWriter	write_queue;
+
+private static final String CALENDAR_TABLE = "CatreCalendars";
+
+
+
+/********************************************************************************/
+/*										*/
+/*	Constructors								*/
+/*										*/
+/********************************************************************************/
+
+CatstoreMemory(CatreController cc,long delay)
+{
+   catre_control = cc;
+   known_tables = new HashMap<>();
+   table_documents = new ConcurrentHashMap<>();
+   live_objects = new ConcurrentHashMap<>();
+   write_queue = new CatstoreWriter(this,delay);
+
+   oauth_control = new CatstoreOauth(this);
+}
+
+
+
+/********************************************************************************/
+/*										*/
+/*	Access methods								*/
+/*										*/
+/********************************************************************************/
+
+@Override public CatreController getCatre()	{ return catre_control; }
+
+@Override public CatreOauth getOauth()		{ return oauth_control; }
+
+
+
+/********************************************************************************/
+/*										*/
+/*	User operations 							*/
+/*										*/
+/********************************************************************************/
+
+@Override public synchronized CatreUser createUser(String name,String email,String pwd)
+	throws CatreException
+{
+   CatreLog.logD("CATSTORE","CREATE USER " + name + " " + email);
+
+   for (Map<String,Object> doc : getDocuments(USERS_TABLE)) {
+      if (name.equals(doc.get("USERNAME")) || email.equals(doc.get("EMAIL"))) {
+	 throw new CatreException("Duplicate user/email/universe");
+       }
+    }
+
+   return new CatstoreUser(this,name,email,pwd);
+}
+
+
+@Override public CatreUser findUser(String name,String pwd,String salt)
+{
+   for (Map<String,Object> doc : getDocuments(USERS_TABLE)) {
+      if (!name.equals(doc.get("USERNAME"))) continue;
+      String p0 = doc.get("PASSWORD").toString().replace(' ','+');
+      if (CatreUtil.secureHash(p0 + salt).equals(pwd)) {
+	 CatreUser cu = (CatreUser) loadObject(doc.get("_id").toString());
+	 cu.setTemporary(false);
+	 return cu;
+       }
+      Object p1 = doc.get("TEMP_PASSWORD");
+      if (p1 != null && CatreUtil.secureHash(p1 + salt).equals(pwd)) {
+	 CatreUser cu = (CatreUser) loadObject(doc.get("_id").toString());
+	 cu.setTemporary(true);
+	 return cu;
+       }
+    }
+
+   return null;
+}
+
+
+@Override public CatreUser findUserByEmail(String email)
+{
+   for (Map<String,Object> doc : getDocuments(USERS_TABLE)) {
+      if (email.equals(doc.get("EMAIL"))) {
+	 return (CatreUser) loadObject(doc.get("_id").toString());
+       }
+    }
+
+   return null;
+}
+
+
+@Override public List<CatreUser> findAllUsers(boolean loaduniverse)
+{
+   List<CatreUser> rslt = new ArrayList<>();
+
+   for (Map<String,Object> doc : getDocuments(USERS_TABLE)) {
+      String id = doc.get("_id").toString();
+      if (id.contains("XXXXXXXX")) continue;
+      CatreUser cu = (CatreUser) loadObject(id);
+      if (cu == null) continue;
+      if (loaduniverse && cu.getUniverse() == null) continue;
+      rslt.add(cu);
+    }
+
+   return rslt;
+}
+
+
+@Override @SuppressWarnings("unchecked")
+public <T extends CatreSavable> T findOne(String collection,String fld,String val,T dflt)
+{
+   for (Map<String,Object> doc : getDocuments(collection)) {
+      if (Objects.equals(val,doc.get(fld))) {
+	 return (T) loadObject(doc.get("_id").toString());
+       }
+    }
+
+   return dflt;
+}
+
+
+@Override public void deleteFrom(String collection,String fld,String val)
+{
+   for (Map<String,Object> doc : getDocuments(collection)) {
+      if (Objects.equals(val,doc.get(fld))) {
+	 removeObject(doc.get("_id").toString());
+       }
+    }
+}
+
+
+
+/********************************************************************************/
+/*										*/
+/*	Calendar methods							*/
+/*										*/
+/********************************************************************************/
+
+@Override public synchronized Boolean validateCalendar(CatreUser cu,String id,String pwd)
+{
+   String key = CatreUtil.secureHash(CatreUtil.secureHash(pwd) + id);
+
+   for (Map<String,Object> doc : getDocuments(CALENDAR_TABLE)) {
+      if (!id.equals(doc.get("ID"))) continue;
+      Object k = doc.get("KEY");
+      if (k == null || k.equals("*") || k.equals(key)) return true;
+      return false;
+    }
+
+   // entry for calendar not found: claim it for this user
+   Map<String,Object> doc = new HashMap<>();
+   String uid = "CAL_" + CatreUtil.randomString(24);
+   doc.put("_id",uid);
+   doc.put("ID",id);
+   doc.put("KEY",key);
+   doc.put("USERNAME",cu.getUserName());
+   doc.put("USER",cu.getDataUID());
+   putDocument(CALENDAR_TABLE,uid,doc);
+
+   return true;
+}
+
+
+
+/********************************************************************************/
+/*										*/
+/*	Generic methods 							*/
+/*										*/
+/********************************************************************************/
+
+@Override public CatreSavable loadObject(String uid)
+{
+   if (uid == null) return null;
+
+   CatreSavable rslt = live_objects.get(uid);
+   if (rslt != null) return rslt;
+
+   CatreTable tbl = getTableForUID(uid);
+   if (tbl == null) return null;
+   Map<String,Object> doc = table_documents.getOrDefault(tbl.getTableName(),
+	 Map.of()).get(uid);
+   if (doc == null) return null;
+
+   rslt = tbl.create(this,copyDocument(doc));
+   if (rslt != null) recordObject(rslt);
+
+   return rslt;
+}
+
+
+@Override public String saveObject(CatreSavable obj)
+{
+   write_queue.remove(obj.getDataUID());
+
+   return storeObject(obj);
+}
+
+
+@Override public void saveObjectLater(CatreSavable obj)
+{
+   CatreSavableBase sobj = (CatreSavableBase) obj;
+   if (!sobj.isStored()) {
+      saveObject(obj);
+      return;
+    }
+
+   recordObject(obj);
+   write_queue.enqueue(obj);
+}
+
+
+@Override public void flush()
+{
+   write_queue.flush();
+}
+
+
+@Override public String storeObject(CatreSavable obj)
+{
+   String uid = obj.getDataUID();
+   CatreTable tbl = getTableForObject(obj);
+   if (uid == null || tbl == null) return null;
+
+   Map<String,Object> doc = null;
+   synchronized (obj) {
+      doc = copyDocument(obj.toJson());
+      doc.put("_id",uid);
+      ((CatreSavableBase) obj).setStored();
+    }
+   putDocument(tbl.getTableName(),uid,doc);
+   recordObject(obj);
+
+   return uid;
+}
+
+
+@Override public void recordObject(CatreSavable obj)
+{
+   if (obj.getDataUID() == null) return;
+
+   live_objects.put(obj.getDataUID(),obj);
+}
+
+
+@Override public void removeObject(String uid)
+{
+   if (uid == null) return;
+
+   write_queue.remove(uid);
+   live_objects.remove(uid);
+
+   CatreTable tbl = getTableForUID(uid);
+   if (tbl == null) return;
+   Map<String,Map<String,Object>> docs = table_documents.get(tbl.getTableName());
+   if (docs == null) return;
+   synchronized (this) {
+      if (docs.remove(uid) != null) documentRemoved(tbl.getTableName(),uid);
+    }
+}
+
+
+
+/********************************************************************************/
+/*										*/
+/*	Document methods							*/
+/*										*/
+/********************************************************************************/
+
+/**
+ *	Add a document without logging it (used when reloading saved state).
+ **/
+
+void loadDocument(String table,Map<String,Object> doc)
+{
+   String uid = doc.get("_id").toString();
+   table_documents.computeIfAbsent(table,(k) -> new ConcurrentHashMap<>()).put(uid,doc);
+}
+
+
+void unloadDocument(String table,String uid)
+{
+   Map<String,Map<String,Object>> docs = table_documents.get(table);
+   if (docs != null) docs.remove(uid);
+}
+
+
+Map<String,Map<String,Map<String,Object>>> getAllDocuments()
+{
+   return table_documents;
+}
+
+
+/**
+ *	Hooks for a persistent subclass to record changes.  They are called
+ *	with the store locked, in the same block that changes the document
+ *	map, so changes are recorded in the order they were made.
+ **/
+
+void documentSaved(String table,String uid,Map<String,Object> doc)	{ }
+
+void documentRemoved(String table,String uid)				{ }
+
+
+private synchronized void putDocument(String table,String uid,Map<String,Object> doc)
+{
+   table_documents.computeIfAbsent(table,(k) -> new ConcurrentHashMap<>()).put(uid,doc);
+   documentSaved(table,uid,doc);
+}
+
+
+private Collection<Map<String,Object>> getDocuments(String table)
+{
+   Map<String,Map<String,Object>> docs = table_documents.get(table);
+   if (docs == null) return List.of();
+
+   return new ArrayList<>(docs.values());
+}
+
+
+/**
+ *	Copy a JSON map so the stored document doesn't share live structures.
+ *	Arrays become lists so the document has only maps, lists and scalars.
+ **/
+
+@SuppressWarnings("unchecked")
+static Map<String,Object> copyDocument(Map<String,Object> map)
+{
+   return (Map<String,Object>) copyValue(map);
+}
+
+
+private static Object copyValue(Object val)
+{
+   if (val instanceof Map) {
+      Map<String,Object> rslt = new HashMap<>();
+      for (Map.Entry<?,?> ent : ((Map<?,?>) val).entrySet()) {
+	 rslt.put(ent.getKey().toString(),copyValue(ent.getValue()));
+       }
+      return rslt;
+    }
+   else if (val instanceof Collection) {
+      List<Object> rslt = new ArrayList<>();
+      for (Object o : (Collection<?>) val) rslt.add(copyValue(o));
+      return rslt;
+    }
+   else if (val instanceof Object []) {
+      List<Object> rslt = new ArrayList<>();
+      for (Object o : (Object []) val) rslt.add(copyValue(o));
+      return rslt;
+    }
+   else if (val instanceof Date) {
+      return new Date(((Date) val).getTime());
+    }
+   else if (val instanceof Enum) {
+      return ((Enum<?>) val).name();
+    }
+
+   return val;
+}
+
+
+
+/********************************************************************************/
+/*										*/
+/*	Table management methods						*/
+/*										*/
+/********************************************************************************/
+
+@Override public void register(CatreTable tbl)
+{
+   known_tables.put(tbl.getTablePrefix(),tbl);
+}
+
+
+private CatreTable getTableForObject(CatreSavable cs)
+{
+   CatreTable tbl = getTableForUID(cs.getDataUID());
+   if (tbl != null) return tbl;
+
+   for (CatreTable ct : known_tables.values()) {
+      if (ct.useFor(cs)) return ct;
+    }
+
+   return null;
+}
+
+
+private CatreTable getTableForUID(String uid)
+{
+   int idx = uid.indexOf("_");
+   if (idx > 0) {
+      CatreTable tbl = known_tables.get(uid.substring(0,idx+1));
+      if (tbl != null) return tbl;
+    }
+
+   for (CatreTable ct : known_tables.values()) {
+      if (uid.startsWith(ct.getTablePrefix())) return ct;
+    }
+
+   return null;
+}
+
+
+
+}	// end of class CatstoreMemory
+
+
+
+
+/* end of CatstoreMemory.java */
@@ -36,16 +36,15 @@
 
 package edu.brown.cs.catre.catstore;
 
-import java.io.File;
-import java.io.FileInputStream;
-import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Properties;
-import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.bson.BsonArray;
 import org.bson.BsonDateTime;
@@ -54,24 +53,30 @@ import org.bson.BsonString;
 import org.bson.Document;
 import org.bson.conversions.Bson;
 
+import com.mongodb.MongoException;
 import com.mongodb.client.MongoClient;
 import com.mongodb.client.MongoClients;
 import com.mongodb.client.MongoCollection;
 import com.mongodb.client.MongoDatabase;
 import com.mongodb.client.ClientSession;
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.IndexOptions;
+import com.mongodb.client.model.Indexes;
+import com.mongodb.client.model.Projections;
+import com.mongodb.client.result.UpdateResult;
 
 import edu.brown.cs.catre.catre.CatreController;
 import edu.brown.cs.catre.catre.CatreException;
 import edu.brown.cs.catre.catre.CatreLog;
+import edu.brown.cs.catre.catre.CatreMetrics;
 import edu.brown.cs.catre.catre.CatreOauth;
 import edu.brown.cs.catre.catre.CatreSavable;
 import edu.brown.cs.catre.catre.CatreSavableBase;
-import edu.brown.cs.catre.catre.CatreStore;
 import edu.brown.cs.catre.catre.CatreTable;
 import edu.brown.cs.catre.catre.CatreUser;
 import edu.brown.cs.catre.catre.CatreUtil;
 
-public class CatstoreMongo implements CatstoreConstants, CatreStore
+public class CatstoreMongo implements CatstoreConstants, CatstoreBackend
 {
 
 
@@ -87,7 +92,9 @@ private MongoClient	mongo_client;
 private MongoDatabase	catre_database;
 private Map<String,CatreTable> known_tables;
 
-private Map<String,CatreSavable> object_cache;
+private CatstoreCache	object_cache;
+private CatstoreWriter	write_queue;
+private Map<String,String> user_index;
 
 
 
@@ -109,11 +116,10 @@ public CatstoreMongo(CatreController cc)
    p.put("mongoport","27017");
    p.put("mongouser","sherpa");
    p.put("mongopass","XXX");
-
-   File f1 = cc.findBaseDirectory();
-   File f2 = new File(f1,"secret");
-   File f3 = new File(f2,"catre.props");
-   setProperties(p,f3);
+   p.put("savedelay",Long.toString(SAVE_DELAY));
+   p.put("cachesize",Integer.toString(CACHE_SIZE));
+   p.put("cacheage",Long.toString(CACHE_AGE));
+   CatreUtil.loadProperties(cc,p);
 
    con = con.replace("USER",p.getProperty("mongouser"));
    con = con.replace("PASS",p.getProperty("mongopass"));
@@ -123,11 +129,28 @@ public CatstoreMongo(CatreController cc)
    mongo_client = MongoClients.create(con);
    catre_database = mongo_client.getDatabase("catre");
 
-   object_cache = new WeakHashMap<>();
+   int csize = CACHE_SIZE;
+   long cage = CACHE_AGE;
+   try {
+      csize = Integer.parseInt(p.getProperty("cachesize"));
+      cage = Long.parseLong(p.getProperty("cacheage"));
+    }
+   catch (NumberFormatException e) { }
+   object_cache = new CatstoreCache(csize,cage);
+
+   long delay = SAVE_DELAY;
+   try {
+      delay = Long.parseLong(p.getProperty("savedelay"));
+    }
+   catch (NumberFormatException e) { }
+   write_queue = new CatstoreWriter(this,delay);
 
    known_tables = new HashMap<>();
+   user_index = new ConcurrentHashMap<>();
 
    oauth_control = new CatstoreOauth(this);
+
+   setupIndexes();
 }
 
 
@@ -143,6 +166,21 @@ public CatstoreMongo(CatreController cc)
 @Override public CatreOauth getOauth()		{ return oauth_control; }
 
 
+@Override public void addMetrics(CatreMetrics m)
+{
+   m.addCounter("catre_store_cache_hits_total","Object cache hits",
+	 object_cache.getHitCount());
+   m.addCounter("catre_store_cache_misses_total","Object cache misses",
+	 object_cache.getMissCount());
+   m.addCounter("catre_store_cache_evictions_total","Objects evicted from the cache",
+	 object_cache.getEvictionCount());
+   m.addGauge("catre_store_cache_objects","Objects in the cache",
+	 object_cache.getSize());
+   m.addGauge("catre_store_cache_pinned","Pinned objects in the cache",
+	 object_cache.getPinnedCount());
+}
+
+
 
 /********************************************************************************/
 /*										*/
@@ -153,20 +191,12 @@ public CatstoreMongo(CatreController cc)
 @Override public CatreUser createUser(String name,String email,String pwd)
 	throws CatreException
 {
-   CatreLog.logD("CATSTORE","CREATE USER " + name + " " + email + " " + pwd);
-
-   ClientSession sess = mongo_client.startSession();
+   CatreLog.logD("CATSTORE","CREATE USER " + name + " " + email);
 
    try {
-      MongoCollection<Document> uc = catre_database.getCollection("CatreUsers");
-      Document userdoc = new Document();
-      userdoc.put("USERNAME",name);    // has to be unique
-      CatreUser u1 = findUserByEmail(email);
-      if (u1 != null) {
-         throw new CatreException("Duplicate user/email/universe");
-       }
-      for (Document doc : uc.find(sess,(Bson) userdoc)) {
-         CatreLog.logD("CATSTORE","Duplicate user found " + doc.getString("_id"));
+      // the unique indexes catch any race with a concurrent registration
+      if (findUserId("USERNAME",name) != null || findUserId("EMAIL",email) != null) {
+	 CatreLog.logD("CATSTORE","Duplicate user found " + name + " " + email);
 	 throw new CatreException("Duplicate user/email/universe");
        }
 
@@ -181,47 +211,36 @@ public CatstoreMongo(CatreController cc)
       CatreLog.logE("CATSTORE","Problem creating user",t);
       throw new CatreException("Problem creating user",t);
     }
-   finally {
-      sess.close();
-    }
 }
 
 
 @Override public CatreUser findUser(String name,String pwd,String salt)
 {
-   MongoCollection<Document> uc = catre_database.getCollection("CatreUsers");
-   Document userdoc = new Document();
-   
-   ClientSession sess = mongo_client.startSession();
-   try {
-      userdoc.put("USERNAME",name);
-      for (Document doc : uc.find(sess,userdoc)) {
-         String p0 = doc.getString("PASSWORD");
-         p0 = p0.replace(' ','+');
-         String p1 = p0 + salt;
-         String p2 = CatreUtil.secureHash(p1);
-         CatreLog.logD("CATSTORE","Password check: " + p0 + " " + p1 + " " +
-               p2 + " " + salt);
-         CatreLog.logD("CATSTORE","MATCH " + pwd + " " + p2);
-         if (p2.equals(pwd)) {
-            CatreUser cu = (CatreUser) loadObject(sess,doc.getString("_id"));
-            cu.setTemporary(false);
-            return cu;
-          }
-         p0 = doc.getString("TEMP_PASSWORD");
-         if (p0 != null) {
-            p1 = p0 + salt;
-            p2 = CatreUtil.secureHash(p1);
-            if (p2.equals(pwd)) {
-               CatreUser cu = (CatreUser) loadObject(sess,doc.getString("_id"));
-               cu.setTemporary(true);
-               return cu;
-             }
-          }
+   String uid = findUserId("USERNAME",name);
+   if (uid == null) return null;
+
+   CatstoreUser cu = (CatstoreUser) loadObject(uid);
+   if (cu == null) return null;
+
+   String p0 = cu.getPassword();
+   if (p0 != null) {
+      p0 = p0.replace(' ','+');
+      String p1 = p0 + salt;
+      String p2 = CatreUtil.secureHash(p1);
+      if (p2.equals(pwd)) {
+	 cu.setTemporary(false);
+	 return cu;
        }
     }
-   finally {
-      sess.close();
+
+   p0 = cu.getTemporaryPassword();
+   if (p0 != null) {
+      String p1 = p0 + salt;
+      String p2 = CatreUtil.secureHash(p1);
+      if (p2.equals(pwd)) {
+	 cu.setTemporary(true);
+	 return cu;
+       }
     }
 
    return null;
@@ -231,27 +250,82 @@ public CatstoreMongo(CatreController cc)
 
 @Override public CatreUser findUserByEmail(String email)
 {
-   MongoCollection<Document> uc = catre_database.getCollection("CatreUsers");
-   Document userdoc = new Document();
-   
-   ClientSession sess = mongo_client.startSession();
-   try {
-      userdoc.put("EMAIL",email);
-      for (Document doc : uc.find(sess,userdoc)) {
-         CatreUser cu = (CatreUser) loadObject(sess,doc.getString("_id"));
-         return cu;
-       }
+   String uid = findUserId("EMAIL",email);
+   if (uid == null) return null;
+
+   return (CatreUser) loadObject(uid);
+}
+
+
+/**
+ *	Map a user name or email to the user's id.  Hits come from user_index;
+ *	misses use the unique index on the field and fetch only the id.
+ **/
+
+private String findUserId(String fld,String val)
+{
+   if (val == null) return null;
+
+   String key = fld + ":" + val;
+   String uid = user_index.get(key);
+   if (uid != null) return uid;
+
+   MongoCollection<Document> uc = catre_database.getCollection(USERS_TABLE);
+   Document doc = uc.find(Filters.eq(fld,val)).projection(Projections.include("_id")).first();
+   if (doc == null) return null;
+
+   uid = doc.getString("_id");
+   user_index.put(key,uid);
+
+   return uid;
+}
+
+
+/**
+ *	Update the name/email index after a user document is written or removed.
+ *	The keys for the previously saved document are dropped first.
+ **/
+
+private void updateUserIndex(String uid,Document olddoc,Document doc)
+{
+   if (olddoc != null) {
+      user_index.remove("USERNAME:" + olddoc.get("USERNAME"),uid);
+      user_index.remove("EMAIL:" + olddoc.get("EMAIL"),uid);
     }
-   finally {
-      sess.close();
+
+   if (doc != null) {
+      Object name = doc.get("USERNAME");
+      Object email = doc.get("EMAIL");
+      if (name != null) user_index.put("USERNAME:" + name,uid);
+      if (email != null) user_index.put("EMAIL:" + email,uid);
     }
-   
-   return null;
 }
 
 
-@SuppressWarnings("unchecked")
-<T extends CatreSavable> T findOne(String collection,String fld,String val,T dflt)
+private void setupIndexes()
+{
+   MongoCollection<Document> uc = catre_database.getCollection(USERS_TABLE);
+
+   for (String fld : new String [] { "USERNAME", "EMAIL" }) {
+      try {
+	 uc.createIndex(Indexes.ascending(fld),new IndexOptions().unique(true));
+       }
+      catch (MongoException e) {
+	 // existing duplicates (or an old non-unique index) prevent this
+	 CatreLog.logE("CATSTORE","Can't create unique index on " + fld,e);
+	 try {
+	    uc.createIndex(Indexes.ascending(fld));
+	  }
+	 catch (MongoException e1) {
+	    CatreLog.logE("CATSTORE","Can't create index on " + fld,e1);
+	  }
+       }
+    }
+}
+
+
+@Override @SuppressWarnings("unchecked")
+public <T extends CatreSavable> T findOne(String collection,String fld,String val,T dflt)
 {
    MongoCollection<Document> uc = catre_database.getCollection(collection);
    Document querydoc = new Document();
@@ -270,7 +344,7 @@ public CatstoreMongo(CatreController cc)
 }
 
 
-void deleteFrom(String collection,String fld,String val)
+@Override public void deleteFrom(String collection,String fld,String val)
 {
    MongoCollection<Document> uc = catre_database.getCollection(collection);
    Document querydoc = new Document();
@@ -282,18 +356,19 @@ void deleteFrom(String collection,String fld,String val)
    sess.close();
 }
 
-@Override public List<CatreUser> findAllUsers()
+@Override public List<CatreUser> findAllUsers(boolean loaduniverse)
 {
    List<CatreUser> rslt = new ArrayList<>();
 
-   MongoCollection<Document> uc = catre_database.getCollection("CatreUsers");
+   MongoCollection<Document> uc = catre_database.getCollection(USERS_TABLE);
    ClientSession sess = mongo_client.startSession();
 
-   for (Document doc : uc.find(sess)) {
+   for (Document doc : uc.find(sess).projection(Projections.include("_id"))) {
       String id = doc.getString("_id");
       if (id.contains("XXXXXXXX")) continue;
       CatreUser cu = (CatreUser) loadObject(sess,id);
-      if (cu.getUniverse() == null) continue;
+      if (cu == null) continue;
+      if (loaduniverse && cu.getUniverse() == null) continue;
       rslt.add(cu);
     }
 
@@ -383,7 +458,7 @@ private String computeKeyPasscode(CatreUser cu,String id,String pwd)
    if (rslt != null) return rslt;
 
    ClientSession sess = mongo_client.startSession();
-   rslt = loadObject(sess,uid);
+   rslt = loadFromDatabase(sess,uid);
    sess.close();
 
    return rslt;
@@ -393,6 +468,34 @@ private String computeKeyPasscode(CatreUser cu,String id,String pwd)
 
 
 @Override public String saveObject(CatreSavable obj)
+{
+   write_queue.remove(obj.getDataUID());
+
+   return storeObject(obj);
+}
+
+
+@Override public void saveObjectLater(CatreSavable obj)
+{
+   CatreSavableBase sobj = (CatreSavableBase) obj;
+   if (!sobj.isStored()) {
+      // new objects are inserted immediately so they can be found
+      saveObject(obj);
+      return;
+    }
+
+   recordObject(obj);
+   write_queue.enqueue(obj);
+}
+
+
+@Override public void flush()
+{
+   write_queue.flush();
+}
+
+
+@Override public String storeObject(CatreSavable obj)
 {
    ClientSession sess = mongo_client.startSession();
    String rslt = saveObject(sess,(CatreSavableBase) obj);
@@ -413,18 +516,30 @@ private String saveObject(ClientSession sess,CatreSavable obj0)
     MongoCollection<Document> uc = catre_database.getCollection(tbl.getTableName());
     Document userdoc = createDocument(obj);
 
-    if (obj.isStored()) {
-       Document finddoc = new Document();
-       finddoc.put("_id",uid);
-       uc.replaceOne(sess,finddoc,userdoc);
-     }
-    else {
-       uc.insertOne(sess,userdoc);
-       obj.setStored();
+    synchronized (obj) {
+       Document olddoc = object_cache.getSavedDocument(obj);
+       if (obj.isStored()) {
+          Document finddoc = new Document();
+          finddoc.put("_id",uid);
+          Document upd = null;
+          if (olddoc != null) upd = createUpdate(olddoc,userdoc);
+          if (upd == null) {
+             uc.replaceOne(sess,finddoc,userdoc);
+           }
+          else if (!upd.isEmpty()) {
+             UpdateResult ur = uc.updateOne(sess,finddoc,upd);
+             if (ur.getMatchedCount() == 0) uc.replaceOne(sess,finddoc,userdoc);
+           }
+        }
+       else {
+          uc.insertOne(sess,userdoc);
+          obj.setStored();
+        }
+       recordObject(obj);
+       object_cache.setSavedDocument(obj,userdoc);
+       if (tbl.getTableName().equals(USERS_TABLE)) updateUserIndex(uid,olddoc,userdoc);
      }
 
-    recordObject(obj);
-
     return uid;
 }
 
@@ -435,6 +550,12 @@ private CatreSavable loadObject(ClientSession sess,String uid)
    CatreSavable rslt = object_cache.get(uid);
    if (rslt != null) return rslt;
 
+   return loadFromDatabase(sess,uid);
+}
+
+
+private CatreSavable loadFromDatabase(ClientSession sess,String uid)
+{
    CatreTable tbl = getTableForUID(uid);
    if (tbl == null) return null;
 
@@ -444,8 +565,12 @@ private CatreSavable loadObject(ClientSession sess,String uid)
    MongoCollection<Document> uc = catre_database.getCollection(tbl.getTableName());
    for (Document doc : uc.find(sess,(Bson) finddoc)) {
       CatreSavable obj = tbl.create(this,doc);
-      recordObject(obj);
-      if (obj != null) return obj;
+      if (obj != null) {
+	 recordObject(obj);
+	 // what is in the database is the baseline for the next save
+	 object_cache.setSavedDocument(obj,doc);
+	 return obj;
+       }
     }
 
    return null;
@@ -454,14 +579,16 @@ private CatreSavable loadObject(ClientSession sess,String uid)
 
 @Override public void recordObject(CatreSavable obj)
 {
-   String uid = obj.getDataUID();
-   object_cache.put(uid,obj);
+   CatreTable tbl = getTableForObject(obj);
+   boolean pin = tbl != null && tbl.isCachePinned();
+   object_cache.put(obj,pin);
 }
 
 
 @Override public void removeObject(String uid)
 {
    if (uid == null) return;
+   write_queue.remove(uid);
    CatreSavableBase os = (CatreSavableBase) object_cache.remove(uid);
    if (os != null && !os.isStored()) return;
 
@@ -473,7 +600,13 @@ private CatreSavable loadObject(ClientSession sess,String uid)
    MongoCollection<Document> uc = catre_database.getCollection(tbl.getTableName());
    Document finddoc = new Document();
    finddoc.put("_id",uid);
-   uc.deleteOne(sess,finddoc);
+   if (tbl.getTableName().equals(USERS_TABLE)) {
+      Document olddoc = uc.findOneAndDelete(sess,finddoc);
+      updateUserIndex(uid,olddoc,null);
+    }
+   else {
+      uc.deleteOne(sess,finddoc);
+    }
 
    sess.close();
 }
@@ -540,19 +673,6 @@ private CatreTable getTableForUID(String uid)
 /*										*/
 /********************************************************************************/
 
-private void setProperties(Properties p,File dbf)
-{
-   if (dbf.exists()) {
-      try (FileInputStream fis = new FileInputStream(dbf)) {
-	 p.loadFromXML(fis);
-       }
-      catch (IOException e) {
-	 // handle or ignore error
-       }
-    }
-}
-
-
 private Document createDocument(CatreSavableBase obj)
 {
    Map<String,Object> jobj = obj.toJson();
@@ -578,6 +698,10 @@ private Document createDocument(CatreSavableBase obj)
 	  }
 	 ent.setValue(barr);
        }
+      else if (val instanceof Map || val instanceof Collection) {
+	 // copy so the saved document doesn't share live structures
+	 ent.setValue(copyValue(val));
+       }
     }
 
    jobj.put("_id",uid);
@@ -587,6 +711,133 @@ private Document createDocument(CatreSavableBase obj)
 }
 
 
+private Object copyValue(Object val)
+{
+   if (val instanceof Map) {
+      Document rslt = new Document();
+      for (Map.Entry<?,?> ent : ((Map<?,?>) val).entrySet()) {
+	 rslt.put(ent.getKey().toString(),copyValue(ent.getValue()));
+       }
+      return rslt;
+    }
+   else if (val instanceof Collection) {
+      List<Object> rslt = new ArrayList<>();
+      for (Object o : (Collection<?>) val) {
+	 rslt.add(copyValue(o));
+       }
+      return rslt;
+    }
+
+   return val;
+}
+
+
+
+/********************************************************************************/
+/*										*/
+/*	Delta update methods							*/
+/*										*/
+/********************************************************************************/
+
+/**
+ *	Compute a $set/$unset update that takes the last saved document to the
+ *	new one.  Returns null if a full replace should be used instead (e.g.
+ *	the difference is as large as the document itself).
+ **/
+
+private Document createUpdate(Document olddoc,Document newdoc)
+{
+   Document sets = new Document();
+   Document unsets = new Document();
+
+   if (!addDifferences(null,olddoc,newdoc,sets,unsets)) return null;
+   sets.remove("_id");
+
+   int size = unsets.size();
+   for (Object v : sets.values()) {
+      size += countValues(v);
+    }
+   if (size >= countValues(newdoc)) return null;
+
+   Document rslt = new Document();
+   if (!sets.isEmpty()) rslt.put("$set",sets);
+   if (!unsets.isEmpty()) rslt.put("$unset",unsets);
+
+   return rslt;
+}
+
+
+private boolean addDifferences(String path,Object ov,Object nv,Document sets,Document unsets)
+{
+   if (ov instanceof Map && nv instanceof Map) {
+      Map<?,?> om = (Map<?,?>) ov;
+      Map<?,?> nm = (Map<?,?>) nv;
+      if (useKeys(om) && useKeys(nm)) {
+	 for (Map.Entry<?,?> ent : nm.entrySet()) {
+	    String p = extendPath(path,ent.getKey());
+	    if (!om.containsKey(ent.getKey())) sets.put(p,ent.getValue());
+	    else addDifferences(p,om.get(ent.getKey()),ent.getValue(),sets,unsets);
+	  }
+	 for (Object k : om.keySet()) {
+	    if (!nm.containsKey(k)) unsets.put(extendPath(path,k),"");
+	  }
+	 return true;
+       }
+    }
+   else if (ov instanceof List && nv instanceof List && path != null) {
+      List<?> ol = (List<?>) ov;
+      List<?> nl = (List<?>) nv;
+      if (ol.size() == nl.size()) {
+	 for (int i = 0; i < nl.size(); ++i) {
+	    addDifferences(extendPath(path,i),ol.get(i),nl.get(i),sets,unsets);
+	  }
+	 return true;
+       }
+    }
+
+   if (Objects.equals(ov,nv)) return true;
+   if (path == null) return false;
+
+   sets.put(path,nv);
+
+   return true;
+}
+
+
+private static String extendPath(String path,Object key)
+{
+   if (path == null) return key.toString();
+
+   return path + "." + key;
+}
+
+
+private static boolean useKeys(Map<?,?> map)
+{
+   for (Object k : map.keySet()) {
+      String s = k.toString();
+      if (s.length() == 0 || s.contains(".") || s.startsWith("$")) return false;
+    }
+
+   return true;
+}
+
+
+private static int countValues(Object val)
+{
+   int ct = 1;
+
+   if (val instanceof Map) {
+      for (Object o : ((Map<?,?>) val).values()) ct += countValues(o);
+    }
+   else if (val instanceof Collection) {
+      for (Object o : (Collection<?>) val) ct += countValues(o);
+    }
+
+   return ct;
+}
+
+
 
 
 
@@ -62,7 +62,7 @@ class CatstoreOauth implements CatreOauth, CatstoreConstants, CatreJson
 /*                                                                              */
 /********************************************************************************/
 
-private CatstoreMongo   use_store;
+private CatstoreBackend use_store;
 
 
 
@@ -72,7 +72,7 @@ private CatstoreMongo   use_store;
 /*                                                                              */
 /********************************************************************************/
 
-CatstoreOauth(CatstoreMongo store)
+CatstoreOauth(CatstoreBackend store)
 {
    use_store = store;
    use_store.register(new TokensTable());
@@ -113,7 +113,7 @@ CatstoreUser(CatreStore store,Map<String,Object> doc)
 /*										*/
 /********************************************************************************/
 
-@Override public CatreUniverse getUniverse()
+@Override public synchronized CatreUniverse getUniverse()
 {
    if (user_universe == null && universe_id != null) {
       user_universe = (CatreUniverse) catre_store.loadObject(universe_id);
@@ -141,6 +141,12 @@ CatstoreUser(CatreStore store,Map<String,Object> doc)
    return user_name;
 }
 
+String getEmail()                               { return user_email; }
+
+String getPassword()                            { return user_password; }
+
+String getTemporaryPassword()                   { return temp_password; }
+
 @Override public CatreBridgeAuthorization getAuthorization(String name)
 {
    return bridge_auths.get(name);
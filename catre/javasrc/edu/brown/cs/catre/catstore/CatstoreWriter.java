@@ -0,0 +1,197 @@
+/********************************************************************************/
+/*										*/
+/*		CatstoreWriter.java						*/
+/*										*/
+/*	Write-behind queue for deferred, coalesced saves			*/
+/*										*/
+/********************************************************************************/
+/*	Copyright 2023 Brown University -- Steven P. Reiss			*/
+/*********************************************************************************
+ *  Copyright 2023, Brown University, Providence, RI.				 *
+ *										 *
+ *			  All Rights Reserved					 *
+ *										 *
+ *  Permission to use, copy, modify, and distribute this software and its	 *
+ *  documentation for any purpose other than its incorporation into a		 *
+ *  commercial product is hereby granted without fee, provided that the 	 *
+ *  above copyright notice appear in all copies and that both that		 *
+ *  copyright notice and this permission notice appear in supporting		 *
+ *  documentation, and that the name of Brown University not be used in 	 *
+ *  advertising or publicity pertaining to distribution of the software 	 *
+ *  without specific, written prior permission. 				 *
+ *										 *
+ *  BROWN UNIVERSITY DISCLAIMS ALL WARRANTIES WITH REGARD TO THIS		 *
+ *  SOFTWARE, INCLUDING ALL IMPLIED WARRANTIES OF MERCHANTABILITY AND		 *
+ *  FITNESS FOR ANY PARTICULAR PURPOSE.  IN NO EVENT SHALL BROWN UNIVERSITY	 *
+ *  BE LIABLE FOR ANY SPECIAL, INDIRECT OR CONSEQUENTIAL DAMAGES OR ANY 	 *
+ *  DAMAGES WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS,		 *
+ *  WHETHER IN AN ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS		 *
+ *  ACTION, ARISING OUT OF OR IN CONNECTION WITH THE USE OR PERFORMANCE 	 *
+ *  OF THIS SOFTWARE.								 *
+ *										 *
+ ********************************************************************************/
+
+
+
+
+
+
+
+package edu.brown.cs.catre.catstore;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ScheduledFuture;
+
+import edu.brown.cs.catre.catre.CatreLog;
+import edu.brown.cs.catre.catre.CatreSavable;
+
+/**
+ *      Objects that change often (e.g. universes when rules are edited) are
+ *      queued here rather than being written immediately.  Saves of the same
+ *      object within the delay window are coalesced into a single write which
+ *      is done on a background thread.  A save that fails is queued again
+ *      unless the object was removed or re-queued in the meantime.
+ **/
+
+class CatstoreWriter implements CatstoreConstants
+{
+
+
+/********************************************************************************/
+/*										*/
+/*	Private Storage 							*/
+/*										*/
+/********************************************************************************/
+
+private CatstoreBackend for_store;
+private long		save_delay;
+private Map<String,CatreSavable> pending_saves;
+private Set<String>	active_saves;
+private ScheduledFuture<?> flush_task;
+
+
+
+/********************************************************************************/
+/*										*/
+/*	Constructors								*/
+/*										*/
+/********************************************************************************/
+
+CatstoreWriter(CatstoreBackend store,long delay)
+{
+   for_store = store;
+   save_delay = delay;
+   pending_saves = new LinkedHashMap<>();
+   active_saves = new HashSet<>();
+   flush_task = null;
+}
+
+
+
+/********************************************************************************/
+/*										*/
+/*	Queue methods								*/
+/*										*/
+/********************************************************************************/
+
+void enqueue(CatreSavable obj)
+{
+   String uid = obj.getDataUID();
+   if (uid == null) return;
+
+   synchronized (this) {
+      pending_saves.put(uid,obj);
+      if (flush_task == null) {
+	 flush_task = for_store.getCatre().schedule(new Flusher(),save_delay);
+       }
+    }
+}
+
+
+synchronized void remove(String uid)
+{
+   if (uid == null) return;
+
+   pending_saves.remove(uid);
+   active_saves.remove(uid);
+}
+
+
+
+/********************************************************************************/
+/*										*/
+/*	Flush methods								*/
+/*										*/
+/********************************************************************************/
+
+void flush()
+{
+   List<CatreSavable> work = null;
+
+   synchronized (this) {
+      if (flush_task != null) {
+	 flush_task.cancel(false);
+	 flush_task = null;
+       }
+      if (pending_saves.isEmpty()) return;
+      work = new ArrayList<>(pending_saves.values());
+      pending_saves.clear();
+      for (CatreSavable obj : work) active_saves.add(obj.getDataUID());
+    }
+
+   CatreLog.logD("CATSTORE","Flush " + work.size() + " pending saves");
+
+   for (CatreSavable obj : work) {
+      String uid = obj.getDataUID();
+      boolean ok = false;
+      try {
+	 for_store.storeObject(obj);
+	 ok = true;
+       }
+      catch (Throwable t) {
+	 CatreLog.logE("CATSTORE","Problem with deferred save of " + uid,t);
+       }
+      synchronized (this) {
+	 if (active_saves.remove(uid) && !ok) retry(obj);
+       }
+    }
+}
+
+
+
+private void retry(CatreSavable obj)
+{
+   CatreLog.logW("CATSTORE","Retry deferred save of " + obj.getDataUID());
+
+   pending_saves.putIfAbsent(obj.getDataUID(),obj);
+   if (flush_task == null) {
+      flush_task = for_store.getCatre().schedule(new Flusher(),save_delay);
+    }
+}
+
+
+
+private class Flusher implements Runnable {
+
+   @Override public void run() {
+      synchronized (CatstoreWriter.this) {
+	 flush_task = null;
+       }
+      flush();
+    }
+
+}	// end of inner class Flusher
+
+
+
+}	// end of class CatstoreWriter
+
+
+
+
+/* end of CatstoreWriter.java */
@@ -0,0 +1,217 @@
+/********************************************************************************/
+/*										*/
+/*		CattestDateFormat.java						*/
+/*										*/
+/*	Tests for date parameter parsing					*/
+/*										*/
+/********************************************************************************/
+/*	Copyright 2023 Brown University -- Steven P. Reiss			*/
+/*********************************************************************************
+ *  Copyright 2023, Brown University, Providence, RI.				 *
+ *										 *
+ *			  All Rights Reserved					 *
+ *										 *
+ *  Permission to use, copy, modify, and distribute this software and its	 *
+ *  documentation for any purpose other than its incorporation into a		 *
+ *  commercial product is hereby granted without fee, provided that the 	 *
+ *  above copyright notice appear in all copies and that both that		 *
+ *  copyright notice and this permission notice appear in supporting		 *
+ *  documentation, and that the name of Brown University not be used in 	 *
+ *  advertising or publicity pertaining to distribution of the software 	 *
+ *  without specific, written prior permission. 				 *
+ *										 *
+ *  BROWN UNIVERSITY DISCLAIMS ALL WARRANTIES WITH REGARD TO THIS		 *
+ *  SOFTWARE, INCLUDING ALL IMPLIED WARRANTIES OF MERCHANTABILITY AND		 *
+ *  FITNESS FOR ANY PARTICULAR PURPOSE.  IN NO EVENT SHALL BROWN UNIVERSITY	 *
+ *  BE LIABLE FOR ANY SPECIAL, INDIRECT OR CONSEQUENTIAL DAMAGES OR ANY 	 *
+ *  DAMAGES WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS,		 *
+ *  WHETHER IN AN ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS		 *
+ *  ACTION, ARISING OUT OF OR IN CONNECTION WITH THE USE OR PERFORMANCE 	 *
+ *  OF THIS SOFTWARE.								 *
+ *										 *
+ ********************************************************************************/
+
+
+
+
+package edu.brown.cs.catre.cattest;
+
+import java.text.DateFormat;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.util.Calendar;
+import java.util.Date;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import edu.brown.cs.catre.catmodel.CatmodelDateFormat;
+
+public class CattestDateFormat implements CattestConstants
+{
+
+
+
+/********************************************************************************/
+/*										*/
+/*	Private Storage 							*/
+/*										*/
+/********************************************************************************/
+
+private static final String [] SAME_INPUTS = {
+   "2024-01-05T10:30:00",
+   "2024-01-05T10:30:00Z",
+   "2024-01-05T10:30:00.000Z",
+   "2024-01-05T10:30:00-05:00",
+   "2024-01-05T10:30:00+01:00",
+   "Jan 5, 2024",
+   "January 5, 2024",
+   "1/5/2024",
+   "1/5/24",
+   "1/5/24, 10:30 AM",
+   "10:30",
+   "10:30AM",
+   "10:30 AM",
+   "10:30:15",
+};
+
+private static final String [] BAD_INPUTS = {
+   "", "garbage", "NOW+1",
+};
+
+
+
+/********************************************************************************/
+/*										*/
+/*	Constructors								*/
+/*										*/
+/********************************************************************************/
+
+public CattestDateFormat()
+{ }
+
+
+
+/********************************************************************************/
+/*										*/
+/*	Comparison with the SimpleDateFormat list				*/
+/*										*/
+/********************************************************************************/
+
+/**
+ *	Every input the old format list accepted parses to the same wall
+ *	clock time.  The old parser ignored seconds and zones, so the
+ *	comparison is to the minute in the parsed zone.
+ **/
+
+@Test
+public void testSameAsOldFormats()
+{
+   for (String s : SAME_INPUTS) {
+      Date d = parseOld(s);
+      Assert.assertNotNull("old parse of " + s,d);
+      ZonedDateTime zdt = CatmodelDateFormat.parse(s);
+      Assert.assertNotNull("new parse of " + s,zdt);
+
+      Calendar c = Calendar.getInstance();
+      c.setTime(d);
+      Assert.assertEquals(s,c.get(Calendar.YEAR),zdt.getYear());
+      Assert.assertEquals(s,c.get(Calendar.MONTH)+1,zdt.getMonthValue());
+      Assert.assertEquals(s,c.get(Calendar.DAY_OF_MONTH),zdt.getDayOfMonth());
+      Assert.assertEquals(s,c.get(Calendar.HOUR_OF_DAY),zdt.getHour());
+      Assert.assertEquals(s,c.get(Calendar.MINUTE),zdt.getMinute());
+    }
+}
+
+
+@Test
+public void testRejected()
+{
+   for (String s : BAD_INPUTS) {
+      Assert.assertNull(s,parseOld(s));
+      Assert.assertNull(s,CatmodelDateFormat.parse(s));
+    }
+}
+
+
+/**
+ *	Cases where the old list stopped at a prefix and dropped part of
+ *	the input.
+ **/
+
+@Test
+public void testFullInputUsed()
+{
+   ZonedDateTime z1 = CatmodelDateFormat.parse("10:30:15");
+   Assert.assertEquals(15,z1.getSecond());
+
+   ZonedDateTime z2 = CatmodelDateFormat.parse("1/5/2024 10:30AM");
+   Assert.assertEquals(10,z2.getHour());
+   Assert.assertEquals(30,z2.getMinute());
+
+   ZonedDateTime z3 = CatmodelDateFormat.parse("12/31/2023 11:59PM");
+   Assert.assertEquals(23,z3.getHour());
+
+   ZonedDateTime z4 = CatmodelDateFormat.parse("1/5/2024 17:45");
+   Assert.assertEquals(17,z4.getHour());
+}
+
+
+@Test
+public void testZoneKept()
+{
+   ZonedDateTime z1 = CatmodelDateFormat.parse("2024-01-05T10:30:00Z");
+   Assert.assertEquals(ZoneOffset.UTC,z1.getOffset());
+
+   ZonedDateTime z2 = CatmodelDateFormat.parse("2024-01-05T10:30:00-05:00");
+   Assert.assertEquals(ZoneOffset.ofHours(-5),z2.getOffset());
+
+   Calendar c = CatmodelDateFormat.parseCalendar("2024-01-05T10:30:00-05:00");
+   Assert.assertEquals(z2.toInstant().toEpochMilli(),c.getTimeInMillis());
+}
+
+
+
+/********************************************************************************/
+/*										*/
+/*	The format list used before java.time					*/
+/*										*/
+/********************************************************************************/
+
+private static Date parseOld(String s)
+{
+   DateFormat [] formats = new DateFormat [] {
+      DateFormat.getDateTimeInstance(DateFormat.LONG,DateFormat.LONG),
+      DateFormat.getDateTimeInstance(DateFormat.SHORT,DateFormat.SHORT),
+      DateFormat.getDateInstance(DateFormat.LONG),
+      DateFormat.getDateInstance(DateFormat.SHORT),
+      DateFormat.getTimeInstance(DateFormat.LONG),
+      DateFormat.getTimeInstance(DateFormat.SHORT),
+      new SimpleDateFormat("MM/dd/yyyy hh:mma"),
+      new SimpleDateFormat("MM/dd/yyyy HH:mm"),
+      new SimpleDateFormat("MM/dd/yyyy"),
+      new SimpleDateFormat("h:mma"),
+      new SimpleDateFormat("H:mm"),
+      new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss"),
+   };
+
+   for (DateFormat df : formats) {
+      try {
+	 return df.parse(s);
+       }
+      catch (ParseException e) { }
+    }
+
+   return null;
+}
+
+
+
+}	// end of class CattestDateFormat
+
+
+
+
+/* end of CattestDateFormat.java */
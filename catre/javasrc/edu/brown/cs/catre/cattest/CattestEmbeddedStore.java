@@ -0,0 +1,357 @@
+/********************************************************************************/
+/*										*/
+/*		CattestEmbeddedStore.java					*/
+/*										*/
+/*	Tests for the embedded file-backed store				*/
+/*										*/
+/********************************************************************************/
+/*	Copyright 2023 Brown University -- Steven P. Reiss			*/
+/*********************************************************************************
+ *  Copyright 2023, Brown University, Providence, RI.				 *
+ *										 *
+ *			  All Rights Reserved					 *
+ *										 *
+ *  Permission to use, copy, modify, and distribute this software and its	 *
+ *  documentation for any purpose other than its incorporation into a		 *
+ *  commercial product is hereby granted without fee, provided that the 	 *
+ *  above copyright notice appear in all copies and that both that		 *
+ *  copyright notice and this permission notice appear in supporting		 *
+ *  documentation, and that the name of Brown University not be used in 	 *
+ *  advertising or publicity pertaining to distribution of the software 	 *
+ *  without specific, written prior permission. 				 *
+ *										 *
+ *  BROWN UNIVERSITY DISCLAIMS ALL WARRANTIES WITH REGARD TO THIS		 *
+ *  SOFTWARE, INCLUDING ALL IMPLIED WARRANTIES OF MERCHANTABILITY AND		 *
+ *  FITNESS FOR ANY PARTICULAR PURPOSE.  IN NO EVENT SHALL BROWN UNIVERSITY	 *
+ *  BE LIABLE FOR ANY SPECIAL, INDIRECT OR CONSEQUENTIAL DAMAGES OR ANY 	 *
+ *  DAMAGES WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS,		 *
+ *  WHETHER IN AN ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS		 *
+ *  ACTION, ARISING OUT OF OR IN CONNECTION WITH THE USE OR PERFORMANCE 	 *
+ *  OF THIS SOFTWARE.								 *
+ *										 *
+ ********************************************************************************/
+
+
+
+
+package edu.brown.cs.catre.cattest;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.lang.reflect.Constructor;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import edu.brown.cs.catre.catre.CatreController;
+import edu.brown.cs.catre.catre.CatreSavable;
+import edu.brown.cs.catre.catre.CatreSavableBase;
+import edu.brown.cs.catre.catre.CatreStore;
+import edu.brown.cs.catre.catre.CatreTable;
+
+/**
+ *	Check that the embedded store reloads its documents from the snapshot
+ *	and the log, ignores a torn last log record, and compacts the log.
+ *	The store class is package private so it is created through
+ *	reflection; saves go straight through, so no controller is needed.
+ **/
+
+public class CattestEmbeddedStore implements CattestConstants
+{
+
+
+
+/********************************************************************************/
+/*										*/
+/*	Private Storage 							*/
+/*										*/
+/********************************************************************************/
+
+private static final String	STORE_CLASS = "edu.brown.cs.catre.catstore.CatstoreEmbedded";
+private static final String	SNAPSHOT_NAME = "catre.snapshot";
+private static final String	LOG_NAME = "catre.log";
+private static final String	ITEM_PREFIX = "ITEM_";
+
+private Constructor<?>	store_constructor;
+private File		store_directory;
+
+
+
+/********************************************************************************/
+/*										*/
+/*	Constructors								*/
+/*										*/
+/********************************************************************************/
+
+public CattestEmbeddedStore() throws Exception
+{
+   Class<?> c = Class.forName(STORE_CLASS);
+   store_constructor = c.getDeclaredConstructor(CatreController.class,long.class,
+	 File.class,int.class);
+   store_constructor.setAccessible(true);
+}
+
+
+@Before
+public void setup() throws IOException
+{
+   store_directory = Files.createTempDirectory("cattest").toFile();
+}
+
+
+@After
+public void cleanup()
+{
+   File [] fs = store_directory.listFiles();
+   if (fs != null) {
+      for (File f : fs) f.delete();
+    }
+   store_directory.delete();
+}
+
+
+
+/********************************************************************************/
+/*										*/
+/*	Tests									*/
+/*										*/
+/********************************************************************************/
+
+@Test
+public void testLogReplay() throws Exception
+{
+   CatreStore cs = openStore(1000);
+   TestItem i1 = new TestItem("one",1);
+   TestItem i2 = new TestItem("two",2);
+   TestItem i3 = new TestItem("three",3);
+   cs.saveObject(i1);
+   cs.saveObject(i2);
+   cs.saveObject(i3);
+   i2.item_count = 22;
+   i2.item_tags.add("changed");
+   cs.saveObject(i2);
+   cs.removeObject(i3.getDataUID());
+   cs.flush();
+
+   Assert.assertFalse(new File(store_directory,SNAPSHOT_NAME).exists());
+   Assert.assertEquals(5,countLines(LOG_NAME));
+
+   CatreStore cs1 = openStore(1000);
+   checkItem(cs1,i1);
+   checkItem(cs1,i2);
+   Assert.assertNull(cs1.loadObject(i3.getDataUID()));
+   Assert.assertEquals(List.of("a","b","changed"),
+	 ((TestItem) cs1.loadObject(i2.getDataUID())).item_tags);
+
+   // replayed records are folded into a snapshot when the store opens
+   Assert.assertEquals(2,countLines(SNAPSHOT_NAME));
+   Assert.assertEquals(0,countLines(LOG_NAME));
+}
+
+
+@Test
+public void testSnapshotLoad() throws Exception
+{
+   CatreStore cs = openStore(1000);
+   TestItem i1 = new TestItem("one",1);
+   TestItem i2 = new TestItem("two",2);
+   cs.saveObject(i1);
+   cs.saveObject(i2);
+   cs.flush();
+
+   openStore(1000);			// compacts the log into the snapshot
+   Assert.assertEquals(0,countLines(LOG_NAME));
+
+   CatreStore cs2 = openStore(1000);
+   checkItem(cs2,i1);
+   checkItem(cs2,i2);
+
+   // changes after a snapshot are replayed over it
+   TestItem i3 = new TestItem("three",3);
+   cs2.saveObject(i3);
+   cs2.removeObject(i1.getDataUID());
+   cs2.flush();
+   CatreStore cs3 = openStore(1000);
+   Assert.assertNull(cs3.loadObject(i1.getDataUID()));
+   checkItem(cs3,i2);
+   checkItem(cs3,i3);
+}
+
+
+@Test
+public void testTornRecord() throws Exception
+{
+   CatreStore cs = openStore(1000);
+   TestItem i1 = new TestItem("one",1);
+   TestItem i2 = new TestItem("two",2);
+   cs.saveObject(i1);
+   cs.saveObject(i2);
+   cs.flush();
+
+   try (FileWriter fw = new FileWriter(new File(store_directory,LOG_NAME),true)) {
+      fw.write("{\"OP\":\"SAVE\",\"TABLE\":\"TestItems\",\"DOC\":{\"_id\":\"ITEM_");
+    }
+
+   CatreStore cs1 = openStore(1000);
+   checkItem(cs1,i1);
+   checkItem(cs1,i2);
+
+   // the store keeps working and the torn record is gone after reopening
+   TestItem i3 = new TestItem("three",3);
+   cs1.saveObject(i3);
+   cs1.flush();
+   CatreStore cs2 = openStore(1000);
+   checkItem(cs2,i1);
+   checkItem(cs2,i2);
+   checkItem(cs2,i3);
+   Assert.assertEquals(3,countLines(SNAPSHOT_NAME));
+}
+
+
+@Test
+public void testCompaction() throws Exception
+{
+   CatreStore cs = openStore(5);
+   List<TestItem> items = new ArrayList<>();
+   for (int i = 0; i < 12; ++i) {
+      TestItem ti = new TestItem("item" + i,i);
+      cs.saveObject(ti);
+      items.add(ti);
+    }
+   cs.flush();
+
+   // compacted after records 5 and 10, leaving two in the log
+   Assert.assertEquals(10,countLines(SNAPSHOT_NAME));
+   Assert.assertEquals(2,countLines(LOG_NAME));
+
+   CatreStore cs1 = openStore(5);
+   for (TestItem ti : items) checkItem(cs1,ti);
+}
+
+
+
+/********************************************************************************/
+/*										*/
+/*	Helper methods								*/
+/*										*/
+/********************************************************************************/
+
+private CatreStore openStore(int compact) throws Exception
+{
+   CatreStore cs = (CatreStore) store_constructor.newInstance(null,0L,
+	 store_directory,compact);
+   cs.register(new TestTable());
+   return cs;
+}
+
+
+private void checkItem(CatreStore cs,TestItem expect)
+{
+   TestItem ti = (TestItem) cs.loadObject(expect.getDataUID());
+   Assert.assertNotNull(ti);
+   Assert.assertNotSame(expect,ti);
+   Assert.assertEquals(expect.item_name,ti.item_name);
+   Assert.assertEquals(expect.item_count,ti.item_count);
+   Assert.assertEquals(expect.item_date,ti.item_date);
+   Assert.assertEquals(expect.item_tags,ti.item_tags);
+}
+
+
+private int countLines(String name) throws IOException
+{
+   File f = new File(store_directory,name);
+   if (!f.exists()) return 0;
+
+   int ct = 0;
+   try (BufferedReader br = new BufferedReader(new FileReader(f))) {
+      for ( ; ; ) {
+	 String ln = br.readLine();
+	 if (ln == null) break;
+	 if (!ln.isBlank()) ++ct;
+       }
+    }
+   return ct;
+}
+
+
+
+/********************************************************************************/
+/*										*/
+/*	Saved item and its table						*/
+/*										*/
+/********************************************************************************/
+
+private static class TestItem extends CatreSavableBase {
+
+   private String item_name;
+   private int item_count;
+   private Date item_date;
+   private List<String> item_tags;
+
+   TestItem(String name,int ct) {
+      super(ITEM_PREFIX);
+      item_name = name;
+      item_count = ct;
+      item_date = new Date(1700000000000L + ct * 1000L);
+      item_tags = new ArrayList<>(List.of("a","b"));
+    }
+
+   TestItem(CatreStore cs,Map<String,Object> map) {
+      super(cs,map);
+    }
+
+   @Override public Map<String,Object> toJson() {
+      Map<String,Object> rslt = super.toJson();
+      rslt.put("NAME",item_name);
+      rslt.put("COUNT",item_count);
+      rslt.put("DATE",item_date);
+      rslt.put("TAGS",item_tags);
+      return rslt;
+    }
+
+   @Override public void fromJson(CatreStore cs,Map<String,Object> map) {
+      super.fromJson(cs,map);
+      item_name = map.get("NAME").toString();
+      item_count = ((Number) map.get("COUNT")).intValue();
+      item_date = (Date) map.get("DATE");
+      item_tags = new ArrayList<>();
+      for (Object o : (List<?>) map.get("TAGS")) item_tags.add(o.toString());
+    }
+
+}	// end of inner class TestItem
+
+
+private static class TestTable implements CatreTable {
+
+   @Override public String getTableName()		{ return "TestItems"; }
+
+   @Override public String getTablePrefix()		{ return ITEM_PREFIX; }
+
+   @Override public boolean useFor(CatreSavable cs) {
+      return cs instanceof TestItem;
+    }
+
+   @Override public CatreSavable create(CatreStore cs,Map<String,Object> data) {
+      return new TestItem(cs,data);
+    }
+
+}	// end of inner class TestTable
+
+
+
+}	// end of class CattestEmbeddedStore
+
+
+
+
+/* end of CattestEmbeddedStore.java */
@@ -0,0 +1,310 @@
+/********************************************************************************/
+/*										*/
+/*		CattestHistory.java						*/
+/*										*/
+/*	Tests for device parameter history					*/
+/*										*/
+/********************************************************************************/
+/*	Copyright 2023 Brown University -- Steven P. Reiss			*/
+/*********************************************************************************
+ *  Copyright 2023, Brown University, Providence, RI.				 *
+ *										 *
+ *			  All Rights Reserved					 *
+ *										 *
+ *  Permission to use, copy, modify, and distribute this software and its	 *
+ *  documentation for any purpose other than its incorporation into a		 *
+ *  commercial product is hereby granted without fee, provided that the 	 *
+ *  above copyright notice appear in all copies and that both that		 *
+ *  copyright notice and this permission notice appear in supporting		 *
+ *  documentation, and that the name of Brown University not be used in 	 *
+ *  advertising or publicity pertaining to distribution of the software 	 *
+ *  without specific, written prior permission. 				 *
+ *										 *
+ *  BROWN UNIVERSITY DISCLAIMS ALL WARRANTIES WITH REGARD TO THIS		 *
+ *  SOFTWARE, INCLUDING ALL IMPLIED WARRANTIES OF MERCHANTABILITY AND		 *
+ *  FITNESS FOR ANY PARTICULAR PURPOSE.  IN NO EVENT SHALL BROWN UNIVERSITY	 *
+ *  BE LIABLE FOR ANY SPECIAL, INDIRECT OR CONSEQUENTIAL DAMAGES OR ANY 	 *
+ *  DAMAGES WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS,		 *
+ *  WHETHER IN AN ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS		 *
+ *  ACTION, ARISING OUT OF OR IN CONNECTION WITH THE USE OR PERFORMANCE 	 *
+ *  OF THIS SOFTWARE.								 *
+ *										 *
+ ********************************************************************************/
+
+
+
+
+package edu.brown.cs.catre.cattest;
+
+import java.io.File;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Method;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import edu.brown.cs.catre.catdev.CatdevConstants;
+import edu.brown.cs.catre.catre.CatreController;
+import edu.brown.cs.catre.catre.CatreParameter;
+import edu.brown.cs.catre.catre.CatreUniverse;
+
+/**
+ *	Check ring wraparound, bucketing, and segment rollover and readback
+ *	for CatdevHistory.  The history class is package private, so it is
+ *	created and called through reflection.  With no controller, segment
+ *	files are written in the recording thread.
+ **/
+
+public class CattestHistory implements CattestConstants
+{
+
+
+
+/********************************************************************************/
+/*										*/
+/*	Private Storage 							*/
+/*										*/
+/********************************************************************************/
+
+private static final String	HISTORY_CLASS = "edu.brown.cs.catre.catdev.CatdevHistory";
+private static final String	PARAMETER_CLASS = "edu.brown.cs.catre.catmodel.CatmodelParameter";
+
+private static final int	SIZE = CatdevConstants.HISTORY_SIZE;
+
+private Constructor<?>	history_constructor;
+private Method		record_method;
+private Method		history_method;
+private CatreParameter	real_parameter;
+private CatreParameter	enum_parameter;
+
+
+
+/********************************************************************************/
+/*										*/
+/*	Constructors								*/
+/*										*/
+/********************************************************************************/
+
+public CattestHistory() throws Exception
+{
+   Class<?> c = Class.forName(HISTORY_CLASS);
+   history_constructor = c.getDeclaredConstructor(CatreParameter.class,File.class,
+	 CatreController.class);
+   history_constructor.setAccessible(true);
+   record_method = c.getDeclaredMethod("record",long.class,Object.class);
+   record_method.setAccessible(true);
+   history_method = c.getDeclaredMethod("getHistory",long.class,long.class,int.class);
+   history_method.setAccessible(true);
+
+   Class<?> pc = Class.forName(PARAMETER_CLASS);
+   Method m1 = pc.getDeclaredMethod("createRealParameter",CatreUniverse.class,String.class);
+   m1.setAccessible(true);
+   real_parameter = (CatreParameter) m1.invoke(null,null,"Temperature");
+   Method m2 = pc.getDeclaredMethod("createEnumParameter",CatreUniverse.class,
+	 String.class,String [].class);
+   m2.setAccessible(true);
+   enum_parameter = (CatreParameter) m2.invoke(null,null,"Mode",
+	 new String [] { "OFF", "LOW", "HIGH" });
+}
+
+
+
+/********************************************************************************/
+/*										*/
+/*	Tests									*/
+/*										*/
+/********************************************************************************/
+
+@Test
+public void testWraparound() throws Exception
+{
+   Object hist = history_constructor.newInstance(real_parameter,null,null);
+   int n = 2 * SIZE + 10;
+   for (int i = 1; i <= n; ++i) record(hist,i,i);
+
+   List<Map<String,Object>> pts = getPoints(hist,0,Long.MAX_VALUE);
+   Assert.assertEquals(SIZE,pts.size());
+   for (int i = 0; i < SIZE; ++i) {
+      long t = n - SIZE + 1 + i;
+      Assert.assertEquals(t,pts.get(i).get("TIME"));
+      Assert.assertEquals((double) t,pts.get(i).get("VALUE"));
+    }
+
+   pts = getPoints(hist,n - 4,n - 2);
+   Assert.assertEquals(3,pts.size());
+   Assert.assertEquals((long) (n - 4),pts.get(0).get("TIME"));
+}
+
+
+@Test
+public void testBuckets() throws Exception
+{
+   Object hist = history_constructor.newInstance(real_parameter,null,null);
+   for (int i = 0; i < 100; ++i) record(hist,i,i);
+   record(hist,150,Boolean.TRUE);
+
+   List<Map<String,Object>> bkts = getBuckets(hist,0,199,20);
+   Assert.assertEquals(20,bkts.size());
+   for (int i = 0; i < 10; ++i) {
+      Map<String,Object> b = bkts.get(i);
+      Assert.assertEquals((long) (10*i),b.get("START"));
+      Assert.assertEquals((long) (10*i+9),b.get("END"));
+      Assert.assertEquals(10,b.get("COUNT"));
+      Assert.assertEquals((double) (10*i),b.get("MIN"));
+      Assert.assertEquals((double) (10*i+9),b.get("MAX"));
+      Assert.assertEquals(10*i+4.5,(Double) b.get("AVG"),1e-9);
+      Assert.assertEquals((double) (10*i+9),b.get("LAST"));
+    }
+   Map<String,Object> b15 = bkts.get(15);
+   Assert.assertEquals(1,b15.get("COUNT"));
+   Assert.assertEquals(1.0,b15.get("LAST"));
+   Map<String,Object> b12 = bkts.get(12);
+   Assert.assertEquals(0,b12.get("COUNT"));
+   Assert.assertNull(b12.get("LAST"));
+   Assert.assertNull(b12.get("AVG"));
+}
+
+
+@Test
+public void testSegmentReadback() throws Exception
+{
+   File dir = Files.createTempDirectory("cattest").toFile();
+   try {
+      Object hist = history_constructor.newInstance(real_parameter,dir,null);
+      int n = 3 * SIZE + 5;
+      for (int i = 0; i < n; ++i) record(hist,1000 + i,i * 0.5);
+
+      Assert.assertEquals(3,countSegments(dir));
+
+      // full range comes from three segments plus the in-memory tail
+      List<Map<String,Object>> pts = getPoints(hist,0,Long.MAX_VALUE);
+      Assert.assertEquals(n,pts.size());
+      for (int i = 0; i < n; ++i) {
+	 Assert.assertEquals((long) (1000 + i),pts.get(i).get("TIME"));
+	 Assert.assertEquals(i * 0.5,pts.get(i).get("VALUE"));
+       }
+
+      // a range crossing a segment boundary
+      pts = getPoints(hist,1000 + SIZE - 3,1000 + SIZE + 2);
+      Assert.assertEquals(6,pts.size());
+      Assert.assertEquals((long) (1000 + SIZE - 3),pts.get(0).get("TIME"));
+
+      // a fresh history finds the segments on disk
+      Object hist1 = history_constructor.newInstance(real_parameter,dir,null);
+      pts = getPoints(hist1,0,Long.MAX_VALUE);
+      Assert.assertEquals(3 * SIZE,pts.size());
+      Assert.assertEquals(1000L,pts.get(0).get("TIME"));
+      Assert.assertEquals((long) (1000 + 3 * SIZE - 1),pts.get(3 * SIZE - 1).get("TIME"));
+    }
+   finally {
+      deleteAll(dir);
+    }
+}
+
+
+@Test
+public void testSegmentLabels() throws Exception
+{
+   File dir = Files.createTempDirectory("cattest").toFile();
+   String [] modes = { "OFF", "LOW", "HIGH" };
+   try {
+      Object hist = history_constructor.newInstance(enum_parameter,dir,null);
+      int n = SIZE + 7;
+      for (int i = 0; i < n; ++i) record(hist,i,modes[i % 3]);
+      Assert.assertEquals(1,countSegments(dir));
+
+      List<Map<String,Object>> pts = getPoints(hist,SIZE - 2,SIZE + 1);
+      Assert.assertEquals(4,pts.size());
+      for (int i = 0; i < 4; ++i) {
+	 Assert.assertEquals(modes[(SIZE - 2 + i) % 3],pts.get(i).get("VALUE"));
+       }
+
+      List<Map<String,Object>> bkts = getBuckets(hist,0,n - 1,1);
+      Assert.assertEquals(n,bkts.get(0).get("COUNT"));
+      Assert.assertEquals(modes[(n - 1) % 3],bkts.get(0).get("LAST"));
+    }
+   finally {
+      deleteAll(dir);
+    }
+}
+
+
+@Test
+public void testSegmentPruning() throws Exception
+{
+   File dir = Files.createTempDirectory("cattest").toFile();
+   try {
+      Object hist = history_constructor.newInstance(real_parameter,dir,null);
+      int nseg = CatdevConstants.HISTORY_MAX_SEGMENTS + 2;
+      int n = nseg * SIZE + 1;
+      for (int i = 0; i < n; ++i) record(hist,i,i);
+
+      Assert.assertEquals(CatdevConstants.HISTORY_MAX_SEGMENTS,countSegments(dir));
+
+      List<Map<String,Object>> pts = getPoints(hist,0,3L * SIZE - 1);
+      Assert.assertEquals(SIZE,pts.size());
+      Assert.assertEquals((long) (2 * SIZE),pts.get(0).get("TIME"));
+    }
+   finally {
+      deleteAll(dir);
+    }
+}
+
+
+
+/********************************************************************************/
+/*										*/
+/*	Helper methods								*/
+/*										*/
+/********************************************************************************/
+
+private void record(Object hist,long when,Object val) throws Exception
+{
+   record_method.invoke(hist,when,val);
+}
+
+
+@SuppressWarnings("unchecked")
+private List<Map<String,Object>> getPoints(Object hist,long from,long to) throws Exception
+{
+   Map<String,Object> rslt = (Map<String,Object>) history_method.invoke(hist,from,to,0);
+   return (List<Map<String,Object>>) rslt.get("POINTS");
+}
+
+
+@SuppressWarnings("unchecked")
+private List<Map<String,Object>> getBuckets(Object hist,long from,long to,int ct)
+	throws Exception
+{
+   Map<String,Object> rslt = (Map<String,Object>) history_method.invoke(hist,from,to,ct);
+   return (List<Map<String,Object>>) rslt.get("BUCKETS");
+}
+
+
+private int countSegments(File dir)
+{
+   File [] fs = dir.listFiles();
+   return (fs == null ? 0 : fs.length);
+}
+
+
+private void deleteAll(File dir)
+{
+   File [] fs = dir.listFiles();
+   if (fs != null) {
+      for (File f : fs) f.delete();
+    }
+   dir.delete();
+}
+
+
+
+}	// end of class CattestHistory
+
+
+
+
+/* end of CattestHistory.java */
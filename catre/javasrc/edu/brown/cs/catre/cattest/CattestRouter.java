@@ -0,0 +1,304 @@
+/********************************************************************************/
+/*										*/
+/*		CattestRouter.java						*/
+/*										*/
+/*	Tests for request routing						*/
+/*										*/
+/********************************************************************************/
+/*	Copyright 2023 Brown University -- Steven P. Reiss			*/
+/*********************************************************************************
+ *  Copyright 2023, Brown University, Providence, RI.				 *
+ *										 *
+ *			  All Rights Reserved					 *
+ *										 *
+ *  Permission to use, copy, modify, and distribute this software and its	 *
+ *  documentation for any purpose other than its incorporation into a		 *
+ *  commercial product is hereby granted without fee, provided that the 	 *
+ *  above copyright notice appear in all copies and that both that		 *
+ *  copyright notice and this permission notice appear in supporting		 *
+ *  documentation, and that the name of Brown University not be used in 	 *
+ *  advertising or publicity pertaining to distribution of the software 	 *
+ *  without specific, written prior permission. 				 *
+ *										 *
+ *  BROWN UNIVERSITY DISCLAIMS ALL WARRANTIES WITH REGARD TO THIS		 *
+ *  SOFTWARE, INCLUDING ALL IMPLIED WARRANTIES OF MERCHANTABILITY AND		 *
+ *  FITNESS FOR ANY PARTICULAR PURPOSE.  IN NO EVENT SHALL BROWN UNIVERSITY	 *
+ *  BE LIABLE FOR ANY SPECIAL, INDIRECT OR CONSEQUENTIAL DAMAGES OR ANY 	 *
+ *  DAMAGES WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS,		 *
+ *  WHETHER IN AN ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS		 *
+ *  ACTION, ARISING OUT OF OR IN CONNECTION WITH THE USE OR PERFORMANCE 	 *
+ *  OF THIS SOFTWARE.								 *
+ *										 *
+ ********************************************************************************/
+
+
+
+
+package edu.brown.cs.catre.cattest;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.sun.net.httpserver.Headers;
+import com.sun.net.httpserver.HttpContext;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpPrincipal;
+
+import edu.brown.cs.catre.catserve.CatserveRouter;
+import edu.brown.cs.catre.catserve.CatserveServer;
+
+/**
+ *	Check CatserveRouter dispatch against the rules of the linear route
+ *	list it replaced: filters run in order up to each route, literal urls
+ *	match whole leading segments, :name segments match anything, a null
+ *	result falls through to the next route, and unmatched requests get
+ *	a 404.
+ **/
+
+public class CattestRouter implements CattestConstants
+{
+
+
+
+/********************************************************************************/
+/*										*/
+/*	Private Storage 							*/
+/*										*/
+/********************************************************************************/
+
+private List<String>	call_trace;
+
+
+
+/********************************************************************************/
+/*										*/
+/*	Constructors								*/
+/*										*/
+/********************************************************************************/
+
+public CattestRouter()
+{
+   call_trace = new ArrayList<>();
+}
+
+
+
+/********************************************************************************/
+/*										*/
+/*	Tests									*/
+/*										*/
+/********************************************************************************/
+
+@Test
+public void testFilterOrder()
+{
+   CatserveRouter rtr = new CatserveRouter((e) -> null);
+   rtr.addRoute("ALL",null,(e,cs) -> trace("F1",null));
+   rtr.addRoute("GET","/a",(e,cs) -> trace("A","A"));
+   rtr.addRoute("ALL",null,(e,cs) -> trace("F2",
+	 e.getRequestURI().getPath().endsWith("/deny") ? "DENIED" : null));
+   rtr.addRoute("GET","/b",(e,cs) -> trace("B","B"));
+   rtr.addPreRoute("ALL",null,(e,cs) -> trace("P",null));
+
+   Assert.assertEquals("A",dispatch(rtr,"GET","/a"));
+   Assert.assertEquals(List.of("P","F1","A"),call_trace);
+
+   Assert.assertEquals("B",dispatch(rtr,"GET","/b"));
+   Assert.assertEquals(List.of("P","F1","F2","B"),call_trace);
+
+   Assert.assertEquals("DENIED",dispatch(rtr,"GET","/b/deny"));
+   Assert.assertEquals(List.of("P","F1","F2"),call_trace);
+
+   // unmatched requests still run every filter
+   String r = dispatch(rtr,"GET","/c");
+   Assert.assertEquals(List.of("P","F1","F2"),call_trace);
+   Assert.assertTrue(r,r.contains("404"));
+}
+
+
+@Test
+public void testLiteralPrefix()
+{
+   CatserveRouter rtr = new CatserveRouter((e) -> null);
+   rtr.addRoute("ALL","/static",(e) -> "STATIC");
+   rtr.addRoute("GET","/universe",(e) -> "UNIVERSE");
+   rtr.addRoute("POST","/universe/discover",(e) -> "DISCOVER");
+
+   Assert.assertEquals("STATIC",dispatch(rtr,"GET","/static"));
+   Assert.assertEquals("STATIC",dispatch(rtr,"POST","/static/css/main.css"));
+   Assert.assertTrue(dispatch(rtr,"GET","/staticfile").contains("404"));
+
+   Assert.assertEquals("UNIVERSE",dispatch(rtr,"GET","/universe/discover"));
+   Assert.assertEquals("DISCOVER",dispatch(rtr,"POST","/universe/discover"));
+   Assert.assertEquals("DISCOVER",dispatch(rtr,"POST","/universe/discover/more"));
+   Assert.assertTrue(dispatch(rtr,"POST","/universe").contains("404"));
+}
+
+
+@Test
+public void testParameters()
+{
+   CatserveRouter rtr = new CatserveRouter((e) -> null);
+   rtr.addRoute("POST","/rule/:ruleid/edit",
+	 (e) -> "EDIT " + CatserveServer.getParameter(e,"ruleid"));
+   rtr.addRoute("GET","/device/:devid/:param",
+	 (e) -> CatserveServer.getParameter(e,"devid") + "|" +
+	    CatserveServer.getParameter(e,"param"));
+
+   Assert.assertEquals("EDIT RULE_x-1.2",dispatch(rtr,"POST","/rule/RULE_x-1.2/edit"));
+   Assert.assertEquals("EDIT a@b:c",dispatch(rtr,"POST","/rule/a@b:c/edit"));
+   Assert.assertEquals("EDIT edit",dispatch(rtr,"POST","/rule/edit/edit"));
+   Assert.assertEquals("d 1|level",dispatch(rtr,"GET","/device/d%201/level"));
+
+   // parameter urls must match the whole path
+   Assert.assertTrue(dispatch(rtr,"POST","/rule/r1/edit/more").contains("404"));
+   Assert.assertTrue(dispatch(rtr,"POST","/rule/r1").contains("404"));
+   Assert.assertTrue(dispatch(rtr,"GET","/device/d1").contains("404"));
+}
+
+
+@Test
+public void testFallThrough()
+{
+   CatserveRouter rtr = new CatserveRouter((e) -> null);
+   rtr.addRoute("POST","/rule/:ruleid/edit",(e,cs) -> trace("PARAM",
+	 CatserveServer.getParameter(e,"ruleid").equals("skip") ? null : "PARAM"));
+   rtr.addRoute("POST","/rule",(e,cs) -> trace("PREFIX",null));
+   rtr.addRoute("ALL",null,(e,cs) -> trace("F",null));
+   rtr.addRoute("POST","/rule/skip/edit",(e,cs) -> trace("LITERAL","LITERAL"));
+
+   Assert.assertEquals("PARAM",dispatch(rtr,"POST","/rule/r1/edit"));
+   Assert.assertEquals(List.of("PARAM"),call_trace);
+
+   // routes are tried in registration order, across literal and parameter urls
+   Assert.assertEquals("LITERAL",dispatch(rtr,"POST","/rule/skip/edit"));
+   Assert.assertEquals(List.of("PARAM","PREFIX","F","LITERAL"),call_trace);
+
+   String r = dispatch(rtr,"POST","/rule/other");
+   Assert.assertTrue(r,r.contains("404"));
+   Assert.assertEquals(List.of("PREFIX","F"),call_trace);
+}
+
+
+@Test
+public void testNotFound()
+{
+   CatserveRouter rtr = new CatserveRouter((e) -> null);
+   rtr.addRoute("POST","/login",(e) -> "LOGIN");
+
+   Assert.assertEquals("LOGIN",dispatch(rtr,"POST","/login"));
+   Assert.assertTrue(dispatch(rtr,"GET","/login").contains("404"));
+   Assert.assertTrue(dispatch(rtr,"BREW","/login").contains("404"));
+   Assert.assertTrue(dispatch(rtr,"POST","/").contains("404"));
+
+   String r = dispatch(rtr,"GET","/nothing");
+   Assert.assertTrue(r,r.contains("\"RETURNCODE\": 404"));
+   Assert.assertTrue(r,r.contains("\"STATUS\": \"ERROR\""));
+}
+
+
+
+/********************************************************************************/
+/*										*/
+/*	Helper methods								*/
+/*										*/
+/********************************************************************************/
+
+private String dispatch(CatserveRouter rtr,String method,String uri)
+{
+   call_trace.clear();
+   TestExchange te = new TestExchange(method,uri);
+   te.setAttribute("paramMap",new HashMap<String,List<String>>());
+   return rtr.dispatch(te);
+}
+
+
+private String trace(String what,String rslt)
+{
+   call_trace.add(what);
+   return rslt;
+}
+
+
+
+/********************************************************************************/
+/*										*/
+/*	Stub exchange								*/
+/*										*/
+/********************************************************************************/
+
+private static class TestExchange extends HttpExchange {
+
+   private String request_method;
+   private URI request_uri;
+   private Headers request_headers;
+   private Headers response_headers;
+   private Map<String,Object> exchange_attributes;
+   private InputStream request_body;
+   private OutputStream response_body;
+   private int response_code;
+
+   TestExchange(String method,String uri) {
+      request_method = method;
+      request_uri = URI.create(uri);
+      request_headers = new Headers();
+      response_headers = new Headers();
+      exchange_attributes = new HashMap<>();
+      request_body = new ByteArrayInputStream(new byte[0]);
+      response_body = new ByteArrayOutputStream();
+      response_code = -1;
+    }
+
+   @Override public Headers getRequestHeaders() 	{ return request_headers; }
+   @Override public Headers getResponseHeaders()	{ return response_headers; }
+   @Override public URI getRequestURI() 		{ return request_uri; }
+   @Override public String getRequestMethod()		{ return request_method; }
+   @Override public HttpContext getHttpContext()	{ return null; }
+   @Override public void close()			{ }
+   @Override public InputStream getRequestBody()	{ return request_body; }
+   @Override public OutputStream getResponseBody()	{ return response_body; }
+   @Override public int getResponseCode()		{ return response_code; }
+   @Override public InetSocketAddress getRemoteAddress() { return null; }
+   @Override public InetSocketAddress getLocalAddress() { return null; }
+   @Override public String getProtocol()		{ return "HTTP/1.1"; }
+   @Override public HttpPrincipal getPrincipal()	{ return null; }
+
+   @Override public void sendResponseHeaders(int code,long len) {
+      response_code = code;
+    }
+
+   @Override public Object getAttribute(String name) {
+      return exchange_attributes.get(name);
+    }
+
+   @Override public void setAttribute(String name,Object value) {
+      if (value == null) exchange_attributes.remove(name);
+      else exchange_attributes.put(name,value);
+    }
+
+   @Override public void setStreams(InputStream i,OutputStream o) {
+      if (i != null) request_body = i;
+      if (o != null) response_body = o;
+    }
+
+}	// end of inner class TestExchange
+
+
+
+}	// end of class CattestRouter
+
+
+
+
+/* end of CattestRouter.java */
@@ -0,0 +1,287 @@
+/********************************************************************************/
+/*										*/
+/*		CattestTriggerTime.java						*/
+/*										*/
+/*	Tests for trigger time schedule computation				*/
+/*										*/
+/********************************************************************************/
+/*	Copyright 2023 Brown University -- Steven P. Reiss			*/
+/*********************************************************************************
+ *  Copyright 2023, Brown University, Providence, RI.				 *
+ *										 *
+ *			  All Rights Reserved					 *
+ *										 *
+ *  Permission to use, copy, modify, and distribute this software and its	 *
+ *  documentation for any purpose other than its incorporation into a		 *
+ *  commercial product is hereby granted without fee, provided that the 	 *
+ *  above copyright notice appear in all copies and that both that		 *
+ *  copyright notice and this permission notice appear in supporting		 *
+ *  documentation, and that the name of Brown University not be used in 	 *
+ *  advertising or publicity pertaining to distribution of the software 	 *
+ *  without specific, written prior permission. 				 *
+ *										 *
+ *  BROWN UNIVERSITY DISCLAIMS ALL WARRANTIES WITH REGARD TO THIS		 *
+ *  SOFTWARE, INCLUDING ALL IMPLIED WARRANTIES OF MERCHANTABILITY AND		 *
+ *  FITNESS FOR ANY PARTICULAR PURPOSE.  IN NO EVENT SHALL BROWN UNIVERSITY	 *
+ *  BE LIABLE FOR ANY SPECIAL, INDIRECT OR CONSEQUENTIAL DAMAGES OR ANY 	 *
+ *  DAMAGES WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS,		 *
+ *  WHETHER IN AN ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS		 *
+ *  ACTION, ARISING OUT OF OR IN CONNECTION WITH THE USE OR PERFORMANCE 	 *
+ *  OF THIS SOFTWARE.								 *
+ *										 *
+ ********************************************************************************/
+
+
+
+
+package edu.brown.cs.catre.cattest;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Method;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.temporal.ChronoUnit;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import edu.brown.cs.catre.catre.CatreStore;
+
+/**
+ *	Compare CatprogConditionTriggerTime.computeNext with a minute by minute
+ *	scan over randomly generated schedules.  The condition class is package
+ *	private and only needs its schedule here, so it is built and called
+ *	through reflection without a program.
+ **/
+
+public class CattestTriggerTime implements CattestConstants
+{
+
+
+
+/********************************************************************************/
+/*										*/
+/*	Private Storage 							*/
+/*										*/
+/********************************************************************************/
+
+private static final String	TRIGGER_CLASS =
+   "edu.brown.cs.catre.catprog.CatprogConditionTriggerTime";
+private static final String	PROGRAM_CLASS = "edu.brown.cs.catre.catprog.CatprogProgram";
+
+private static final int	NUM_SCHEDULES = 300;
+private static final int	STARTS_PER_SCHEDULE = 4;
+private static final int	SCAN_DAYS = 400;
+
+private static final String [] WEEKDAY_NAMES = {
+   "SUN", "MON", "TUE", "WED", "THU", "FRI", "SAT"
+};
+
+private Constructor<?>	trigger_constructor;
+private Method		compute_method;
+private ZoneId		time_zone;
+
+
+
+/********************************************************************************/
+/*										*/
+/*	Constructors								*/
+/*										*/
+/********************************************************************************/
+
+public CattestTriggerTime() throws Exception
+{
+   Class<?> c = Class.forName(TRIGGER_CLASS);
+   trigger_constructor = c.getDeclaredConstructor(Class.forName(PROGRAM_CLASS),
+	 CatreStore.class,Map.class);
+   trigger_constructor.setAccessible(true);
+   compute_method = c.getDeclaredMethod("computeNext",long.class);
+   compute_method.setAccessible(true);
+   time_zone = ZoneId.systemDefault();
+}
+
+
+
+/********************************************************************************/
+/*										*/
+/*	Tests									*/
+/*										*/
+/********************************************************************************/
+
+@Test
+public void testFixedSchedules() throws Exception
+{
+   long start = LocalDateTime.of(2024,1,5,10,30,20).atZone(time_zone)
+      .toInstant().toEpochMilli();
+
+   Assert.assertEquals(at(2024,1,5,10,31),computeNext("* * * * *",start));
+   Assert.assertEquals(at(2024,1,8,9,30),computeNext("30 9 * * MON-FRI",start));
+   Assert.assertEquals(at(2024,2,29,0,0),computeNext("0 0 29 2 *",start));
+   Assert.assertEquals(at(2024,1,5,12,0),computeNext("0 0-23/6 * * *",start));
+   Assert.assertEquals(-1,computeNext("0 0 30 2 *",start));
+}
+
+
+@Test
+public void testRandomSchedules() throws Exception
+{
+   Random r = new Random(20240105);
+   long base = LocalDateTime.of(2024,1,1,0,0).atZone(time_zone)
+      .toInstant().toEpochMilli();
+   long range = 6L * 365 * 24 * 60 * 60 * 1000;
+
+   for (int i = 0; i < NUM_SCHEDULES; ++i) {
+      BitSet [] sets = new BitSet[5];
+      StringBuffer buf = new StringBuffer();
+      buf.append(randomField(r,0,59,sets,0)).append(" ");
+      buf.append(randomField(r,0,23,sets,1)).append(" ");
+      buf.append(randomField(r,1,31,sets,2)).append(" ");
+      buf.append(randomField(r,1,12,sets,3)).append(" ");
+      buf.append(randomField(r,0,6,sets,4));
+      String desc = buf.toString();
+
+      Object cond = createTrigger(desc);
+      for (int j = 0; j < STARTS_PER_SCHEDULE; ++j) {
+	 long start = base + (long) (r.nextDouble() * range);
+	 long expect = scanNext(sets,start);
+	 long found = (Long) compute_method.invoke(cond,start);
+	 if (expect < 0) {
+	    long limit = start + SCAN_DAYS * 24L * 60 * 60 * 1000;
+	    Assert.assertTrue(desc + " from " + Instant.ofEpochMilli(start),
+		  found < 0 || found > limit - 2 * 60 * 60 * 1000);
+	  }
+	 else {
+	    Assert.assertEquals(desc + " from " + Instant.ofEpochMilli(start),
+		  expect,found);
+	  }
+       }
+    }
+}
+
+
+
+/********************************************************************************/
+/*										*/
+/*	Reference implementation						*/
+/*										*/
+/********************************************************************************/
+
+/**
+ *	Step one minute at a time from the first whole minute at or after
+ *	start until every field matches.
+ **/
+
+private long scanNext(BitSet [] sets,long start)
+{
+   LocalDateTime t = LocalDateTime.ofInstant(Instant.ofEpochMilli(start),time_zone);
+   if (t.getSecond() != 0 || t.getNano() != 0) {
+      t = t.truncatedTo(ChronoUnit.MINUTES).plusMinutes(1);
+    }
+   LocalDateTime end = t.plusDays(SCAN_DAYS);
+
+   while (t.isBefore(end)) {
+      if (sets[3].get(t.getMonthValue()) && sets[2].get(t.getDayOfMonth()) &&
+	    sets[4].get(t.getDayOfWeek().getValue() % 7) &&
+	    sets[1].get(t.getHour()) && sets[0].get(t.getMinute())) {
+	 return t.atZone(time_zone).toInstant().toEpochMilli();
+       }
+      t = t.plusMinutes(1);
+    }
+
+   return -1;
+}
+
+
+
+/********************************************************************************/
+/*										*/
+/*	Helper methods								*/
+/*										*/
+/********************************************************************************/
+
+private long computeNext(String desc,long start) throws Exception
+{
+   return (Long) compute_method.invoke(createTrigger(desc),start);
+}
+
+
+private Object createTrigger(String desc) throws Exception
+{
+   Map<String,Object> map = new HashMap<>();
+   map.put("TYPE","TriggerTime");
+   map.put("NAME","TestTrigger");
+   map.put("LABEL","Test trigger");
+   map.put("TIME",desc);
+
+   return trigger_constructor.newInstance(null,null,map);
+}
+
+
+private long at(int yr,int mon,int day,int hr,int min)
+{
+   return LocalDateTime.of(yr,mon,day,hr,min).atZone(time_zone)
+      .toInstant().toEpochMilli();
+}
+
+
+/**
+ *	Generate a field as *, a list, a range or a stepped range, and record
+ *	the values it covers.
+ **/
+
+private String randomField(Random r,int min,int max,BitSet [] sets,int idx)
+{
+   BitSet bs = new BitSet();
+   sets[idx] = bs;
+   int span = max - min + 1;
+   String rslt;
+
+   switch (r.nextInt(4)) {
+      case 0 :
+	 bs.set(min,max+1);
+	 rslt = "*";
+	 break;
+      case 1 :
+	 StringBuffer buf = new StringBuffer();
+	 int ct = 1 + r.nextInt(3);
+	 for (int i = 0; i < ct; ++i) {
+	    int v = min + r.nextInt(span);
+	    bs.set(v);
+	    if (buf.length() > 0) buf.append(",");
+	    if (idx == 4 && r.nextBoolean()) buf.append(WEEKDAY_NAMES[v]);
+	    else buf.append(v);
+	  }
+	 rslt = buf.toString();
+	 break;
+      case 2 :
+	 int from = min + r.nextInt(span);
+	 int to = from + r.nextInt(max - from + 1);
+	 bs.set(from,to+1);
+	 rslt = from + "-" + to;
+	 break;
+      default :
+	 int f0 = min + r.nextInt(span);
+	 int t0 = f0 + 1 + r.nextInt(Math.max(1,max - f0));
+	 if (t0 > max) t0 = max;
+	 int step = 2 + r.nextInt(4);
+	 for (int v = f0; v <= t0; v += step) bs.set(v);
+	 rslt = f0 + "-" + t0 + "/" + step;
+	 break;
+    }
+
+   return rslt;
+}
+
+
+
+}	// end of class CattestTriggerTime
+
+
+
+
+/* end of CattestTriggerTime.java */
@@ -103,6 +103,7 @@ function setup()
     app.all("/catre/*",authenticate);
     app.post("/catre/addbridge",addBridge);
     app.post("/catre/command",bridgeCommand);
+    app.post("/catre/commands",bridgeCommands);
     app.post("/catre/activesensors",bridgeActiveSensors);
     app.post("/catre/parameter",bridgeParameter);
 
@@ -183,35 +184,64 @@ async function bridgeCommand(req,res)
 {
    console.log("CATRE BRIDGE COMMAND",req.body);
 
-   let succ = null;
+   let bridge = findBridge(req.body.bridge);
+   if (bridge == null) {
+      config.handleFail(req,res,"No such bridge");
+      return;
+    }
 
-   switch (req.body.bridge) {
+   let succ = await bridge.handleCommand(req.body.bridgeid,req.body.uid,req.body.deviceid,
+         req.body.command,req.body.values);
+
+   config.handleSuccess(req,res,succ);
+}
+
+
+
+async function bridgeCommands(req,res)
+{
+   console.log("CATRE BRIDGE COMMANDS",req.body);
+
+   let bridge = findBridge(req.body.bridge);
+   if (bridge == null) {
+      config.handleFail(req,res,"No such bridge");
+      return;
+    }
+
+   let results = [];
+   for (let cmd of req.body.commands) {
+      try {
+         await bridge.handleCommand(req.body.bridgeid,req.body.uid,cmd.deviceid,
+               cmd.command,cmd.values);
+         results.push( { id: cmd.id, status: "OK" } );
+       }
+      catch (error) {
+         console.log("CATRE BRIDGE COMMAND FAILED",cmd,error);
+         results.push( { id: cmd.id, status: "ERROR", reason: String(error) } );
+       }
+    }
+
+   config.handleSuccess(req,res,{ results: results });
+}
+
+
+
+function findBridge(name)
+{
+   switch (name) {
       case "generic" :
-         succ = await generic.handleCommand(req.body.bridgeid,req.body.uid,req.body.deviceid,
-               req.body.command,req.body.values);
-         break;
+         return generic;
       case "smartthings" :
-         succ = await smartthings.handleCommand(req.body.bridgeid,req.body.uid,req.body.deviceid,
-               req.body.command,req.body.values);
-         break;
+         return smartthings;
       case "iqsign" :
-         succ = await iqsign.handleCommand(req.body.bridgeid,req.body.uid,req.body.deviceid,
-               req.body.command,req.body.values);
-         break
+         return iqsign;
       case "samsung" :
-         succ = await samsung.handleCommand(req.body.bridgeid,req.body.uid,req.body.deviceid,
-               req.body.command,req.body.values);
-         break;
+         return samsung;
       case "alds" :
-         succ = await alds.handleCommand(req.body.bridgeid,req.body.uid,req.body.deviceid,
-               req.body.command,req.body.values);
-         break;
-      default :
-         config.handleFail(req,res,"No such bridge");
-         return;
+         return alds;
     }
 
-   config.handleSuccess(req,res,succ);
+   return null;
 }
 
 